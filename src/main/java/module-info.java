@@ -17,4 +17,8 @@ module uk.ac.soton.comp1206 {
     exports uk.ac.soton.comp1206.event;
     exports uk.ac.soton.comp1206.component;
     exports uk.ac.soton.comp1206.game;
+    exports uk.ac.soton.comp1206.server;
+    exports uk.ac.soton.comp1206.loadtest;
+    exports uk.ac.soton.comp1206.score;
+    exports uk.ac.soton.comp1206.telemetry;
 }
\ No newline at end of file
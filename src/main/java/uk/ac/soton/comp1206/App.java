@@ -6,7 +6,11 @@ import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import uk.ac.soton.comp1206.score.ScoreStore;
+import uk.ac.soton.comp1206.telemetry.TelemetryLog;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.Music;
+import uk.ac.soton.comp1206.utility.SoundEffects;
 
 /**
  * JavaFX Application class
@@ -45,6 +49,13 @@ public class App extends Application {
         instance = this;
         this.stage = stage;
 
+        //Load the local scores in the background
+        ScoreStore.open();
+        //Decode the sound effects in the background
+        SoundEffects.preload();
+        //Prepare the menu music in the background
+        Music.getInstance().preload("menu.mp3");
+
         //Open game window
         openGame();
     }
@@ -67,6 +78,9 @@ public class App extends Application {
      */
     public void shutdown() {
         logger.info("Shutting down");
+        //wait for every local score to be written
+        ScoreStore.shutdown();
+        TelemetryLog.shutdown();
         System.exit(0);
     }
 
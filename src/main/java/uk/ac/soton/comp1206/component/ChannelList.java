@@ -1,5 +1,7 @@
 package uk.ac.soton.comp1206.component;
 
+import java.util.HashMap;
+import java.util.Map;
 import javafx.beans.property.SimpleSetProperty;
 import javafx.collections.SetChangeListener;
 import javafx.scene.control.Button;
@@ -27,39 +29,43 @@ public class ChannelList extends VBox {
   private ChannelClickedListener channelClickedListener;
 
   /**
-   * Create a new ChannelList which listens to when the set of channels changes amd calls the method
-   * to update the UI display
+   * The button displayed for each channel
+   */
+  private final Map<String, Button> buttons = new HashMap<>();
+
+  /**
+   * Create a new ChannelList which listens to when the set of channels changes and updates the UI
+   * display
    */
   public ChannelList() {
-    //Update score list when score array list is updated
-    channelList.addListener(
-        (SetChangeListener<? super String>) (e) -> updateChannelList((channelList))
-    );
+    //Update only the channel which was added or removed
+    channelList.addListener((SetChangeListener<? super String>) this::updateChannelList);
   }
 
   /**
-   * Updates the UI display with the current channel list, channels are shown as buttons which when
-   * pressed trigger the ChannelClickedListener
+   * Updates the UI display when a channel is added or removed. Channels are shown as buttons which
+   * when pressed trigger the ChannelClickedListener. Only the button for the changed channel is
+   * created or removed.
    *
-   * @param channelList the set of all available channels
+   * @param change the change to the set of available channels
    */
-  private void updateChannelList(SimpleSetProperty<String> channelList) {
-
-    logger.info("Updating channel list");
-    //Remove previous children
-    getChildren().clear();
-
-    //create a button for each channel
-    for (String channel : channelList) {
+  private void updateChannelList(SetChangeListener.Change<? extends String> change) {
+    if (change.wasRemoved()) {
+      logger.info("Removing channel {}", change.getElementRemoved());
+      getChildren().remove(buttons.remove(change.getElementRemoved()));
+    }
+    if (change.wasAdded() && !buttons.containsKey(change.getElementAdded())) {
+      var channel = change.getElementAdded();
+      logger.info("Adding channel {}", channel);
       var channelButton = new Button(channel);
       channelButton.getStyleClass().add("channelItem");
       getChildren().add(channelButton);
+      buttons.put(channel, channelButton);
       //when button is pressed, call listener
       channelButton.setOnAction((e) -> {
         channelClickedListener.channelClicked(channelButton.getText());
       });
     }
-
   }
 
   /**
@@ -0,0 +1,165 @@
+package uk.ac.soton.comp1206.component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.application.Platform;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The ChatLog is a UI component that displays the chat messages received from the server.
+ * <br>
+ * Messages are shown in a ListView, so only the messages which are visible have nodes. The log
+ * keeps at most HISTORY messages; older ones are dropped, or appended to the file named by the
+ * tetrecs.chatSpill system property if it is set.
+ * <br>
+ * Messages can be appended from any thread. Messages which arrive together are added in one batch
+ * on the JavaFX thread, so a burst of messages costs a single update.
+ */
+public class ChatLog extends ListView<String> {
+
+  private static final Logger logger = LogManager.getLogger(ChatLog.class);
+
+  /**
+   * The most messages kept in the log. Set with the tetrecs.chatHistory system property.
+   */
+  public static final int HISTORY = Math.max(1, Integer.getInteger("tetrecs.chatHistory", 200));
+
+  /**
+   * The file older messages are appended to, or null to drop them
+   */
+  private static final String SPILL = System.getProperty("tetrecs.chatSpill");
+
+  private static ExecutorService spiller;
+
+  /**
+   * Whether the first item is still the introduction shown at the top of the log. It is tracked by
+   * position, as a chat message may have the same text.
+   */
+  private boolean introduced = true;
+
+  /**
+   * Messages received since the last batch was added
+   */
+  private final List<String> pending = new ArrayList<>();
+
+  /**
+   * Called on the JavaFX thread after each batch of messages is added
+   */
+  private Runnable onUpdate = () -> { };
+
+  /**
+   * Create a new chat log
+   * @param introduction the message shown at the top of the log
+   */
+  public ChatLog(String introduction) {
+    getStyleClass().add("chatlog");
+    setFocusTraversable(false);
+    setCellFactory(list -> new ListCell<>() {
+      {
+        //wrap messages to the width of the log
+        setWrapText(true);
+        setPrefWidth(0);
+      }
+
+      @Override
+      protected void updateItem(String message, boolean empty) {
+        super.updateItem(message, empty);
+        setText(empty ? null : message);
+        getStyleClass().remove("intro");
+        if (!empty && introduced && getIndex() == 0) {
+          getStyleClass().add("intro");
+        }
+      }
+    });
+    getItems().add(introduction);
+  }
+
+  /**
+   * Add a message to the log with the next batch. May be called from any thread.
+   * @param message the message
+   */
+  public void append(String message) {
+    synchronized (pending) {
+      pending.add(message);
+      if (pending.size() > 1) {
+        //a batch is already scheduled
+        return;
+      }
+    }
+    Platform.runLater(this::addPending);
+  }
+
+  /**
+   * Set a task to run after each batch of messages is added
+   * @param onUpdate the task, run on the JavaFX thread
+   */
+  public void setOnUpdate(Runnable onUpdate) {
+    this.onUpdate = onUpdate;
+  }
+
+  /**
+   * Add the messages received since the last batch, dropping the oldest messages beyond HISTORY,
+   * and scroll to the newest
+   */
+  private void addPending() {
+    List<String> batch;
+    synchronized (pending) {
+      batch = new ArrayList<>(pending);
+      pending.clear();
+    }
+    var items = getItems();
+    items.addAll(batch);
+    var excess = items.size() - HISTORY;
+    if (excess > 0) {
+      var dropped = introduced ? 1 : 0;
+      spill(new ArrayList<>(items.subList(dropped, excess)));
+      items.remove(0, excess);
+      if (introduced) {
+        //restyle the cell which showed the introduction
+        introduced = false;
+        refresh();
+      }
+    }
+    scrollTo(items.size() - 1);
+    logger.debug("Added {} chat messages", batch.size());
+    onUpdate.run();
+  }
+
+  /**
+   * Append messages dropped from the log to the spill file in the background, if there is one
+   * @param messages the messages dropped, without the introduction
+   */
+  private void spill(List<String> messages) {
+    if (SPILL == null || messages.isEmpty()) {
+      return;
+    }
+    synchronized (ChatLog.class) {
+      if (spiller == null) {
+        spiller = Executors.newSingleThreadExecutor(runnable -> {
+          var thread = new Thread(runnable, "chat-spill");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+    }
+    spiller.execute(() -> {
+      try {
+        Files.write(Paths.get(SPILL), messages, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        logger.error("Unable to write chat history to {}: {}", SPILL, e.getMessage());
+      }
+    });
+  }
+
+}
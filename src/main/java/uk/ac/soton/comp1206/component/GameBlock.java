@@ -41,6 +41,11 @@ public class GameBlock extends Canvas {
             Color.PURPLE
     };
 
+    /**
+     * Whether blocks are painted without shading, to save drawing time
+     */
+    private static volatile boolean simpleShading = false;
+
     private final GameBoard gameBoard;
 
     private final double width;
@@ -66,6 +71,16 @@ public class GameBlock extends Canvas {
     private boolean hover = false;
     private boolean indicator = false;
 
+    /**
+     * Whether playing the piece being aimed would clear this block
+     */
+    private boolean pending = false;
+
+    /**
+     * The fade out animation, while it is running
+     */
+    private AnimationTimer fade;
+
     /**
      * Create a new single Game Block
      * @param gameBoard the board this block belongs to
@@ -102,6 +117,15 @@ public class GameBlock extends Canvas {
         paint();
     }
 
+    /**
+     * Set whether blocks are painted without shading. Blocks already painted keep their shading until
+     * they are next painted.
+     * @param simple true to paint blocks without shading
+     */
+    public static void setSimpleShading(boolean simple) {
+        simpleShading = simple;
+    }
+
     /**
      * Handle painting of the block canvas
      */
@@ -138,6 +162,21 @@ public class GameBlock extends Canvas {
             gc.setFill(Color.color(1, 1, 1, 0.5));
             gc.fillRect(0, 0, width, height);
         }
+
+        paintPending();
+    }
+
+    /**
+     * Highlight this block if it would be cleared by the piece being aimed
+     */
+    private void paintPending() {
+        if (pending) {
+            var gc = getGraphicsContext2D();
+            gc.setFill(Color.color(1, 1, 1, 0.3));
+            gc.fillRect(0, 0, width, height);
+            gc.setStroke(Color.GOLD);
+            gc.strokeRect(1, 1, width - 2, height - 2);
+        }
     }
 
     /**
@@ -155,11 +194,14 @@ public class GameBlock extends Canvas {
         gc.setFill(colour);
         gc.fillRect(0,0, width, height);
 
-        gc.setFill(Color.color(0,0,0,0.2));
-        gc.fillPolygon(new double[]{0,width,width},new double[]{0,0,height},3);
+        //Shading
+        if (!simpleShading) {
+            gc.setFill(Color.color(0,0,0,0.2));
+            gc.fillPolygon(new double[]{0,width,width},new double[]{0,0,height},3);
 
-        gc.setFill(Color.color(1,1,1,0.1));
-        gc.fillPolygon(new double[]{0,0,width},new double[]{0,height,height},3);
+            gc.setFill(Color.color(1,1,1,0.1));
+            gc.fillPolygon(new double[]{0,0,width},new double[]{0,height,height},3);
+        }
 
         //Border
         gc.setStroke(Color.WHITE);
@@ -170,6 +212,8 @@ public class GameBlock extends Canvas {
             gc.setFill(Color.color(1,1,1,0.5));
             gc.fillOval(width/4,height/4,width/2,height/2);
         }
+
+        paintPending();
     }
 
     /**
@@ -214,6 +258,8 @@ public class GameBlock extends Canvas {
         Color colour = COLOURS[value.get()];
         logger.debug(colour);
         paintEmpty();
+        //replace any fade still running
+        stopFade();
         //create new animation timer
         AnimationTimer timer = new AnimationTimer() {
             double opacity = 0.3;
@@ -228,14 +274,26 @@ public class GameBlock extends Canvas {
                 opacity-=0.025;
                 if (opacity <= 0) {
                     stop();
+                    fade = null;
                     paintEmpty();
                 }
             }
         };
         //start timer
+        fade = timer;
         timer.start();
     }
 
+    /**
+     * Stop the fade out animation if it is running
+     */
+    public void stopFade() {
+        if (fade != null) {
+            fade.stop();
+            fade = null;
+        }
+    }
+
     /**
      * Set hover attribute to true on block
      */
@@ -253,6 +311,21 @@ public class GameBlock extends Canvas {
         paint();
     }
 
+    /**
+     * Set whether playing the piece being aimed would clear this block, repainting if it changed. A
+     * block which is fading out is left to finish fading.
+     * @param pending true to highlight the block
+     */
+    public void setPending(boolean pending){
+        if (this.pending == pending) {
+            return;
+        }
+        this.pending = pending;
+        if (fade == null) {
+            paint();
+        }
+    }
+
     /**
      * Set indicator attribute to true on block
      */
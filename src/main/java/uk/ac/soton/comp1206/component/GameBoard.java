@@ -233,6 +233,17 @@ public class GameBoard extends GridPane {
         }
     }
 
+    /**
+     * Stop the animations of every block, when the board is no longer shown
+     */
+    public void dispose() {
+        for (GameBlock[] column : blocks) {
+            for (GameBlock block : column) {
+                block.stopFade();
+            }
+        }
+    }
+
 
 
 }
@@ -1,12 +1,8 @@
 package uk.ac.soton.comp1206.component;
 
-import java.util.ArrayList;
 import javafx.beans.property.SimpleListProperty;
 import javafx.collections.ListChangeListener;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.Priority;
 import javafx.scene.text.Text;
-import javafx.scene.text.TextAlignment;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.javatuples.Triplet;
@@ -36,79 +32,59 @@ public class Leaderboard extends ScoresList {
   public Leaderboard() {
     //Update score list when score array list is updated
     multiplayerScores.addListener(
-        (ListChangeListener<? super Triplet<String, Integer, String>>) (e) -> {
-          //check if leaderboard is being used for final scores display or in game display
-          if (!finalScores) {
-            updateScoreList(multiplayerScores);
-          } else {
-            showFinalScores(multiplayerScores);
-          }
-        }
-
+        (ListChangeListener<? super Triplet<String, Integer, String>>) (e) -> updateScoreList()
     );
   }
 
   /**
-   * Update the display of scores received from the server with correct formatting and styling
-   *
-   * @param list the player scores received from the server
+   * Update the display of scores received from the server with correct formatting and styling.
+   * <br>
+   * Only the rows whose text has changed are updated, so the display of players whose score has not
+   * changed is left alone. The final scores fade in; scores during the game change straight away.
    */
-  private void updateScoreList(SimpleListProperty<Triplet<String, Integer, String>> list) {
-    //Remove previous children
-    getChildren().clear();
-    //loop through each score
-    for (Triplet<String, Integer, String> score : list) {
-      logger.info("Showing {} {} {}", score.getValue0(), score.getValue1(), score.getValue2());
-      var name = score.getValue0();
-      var points = String.valueOf(score.getValue1());
-      String lives;
-      if (!score.getValue2().equals("DEAD")) {
-        lives = " (".concat(score.getValue2().concat(" lives)"));
-      } else {
-        lives = " ".concat(score.getValue2());
-      }
-      //create text with name, score and lives
-      var text = new Text(name.concat(": ").concat(points).concat(lives));
-      text.setTextAlignment(TextAlignment.CENTER);
-      text.getStyleClass().add("smallHeading");
-      HBox.setHgrow(text, Priority.ALWAYS);
-      //if player is dead, strikethrough
-      if (score.getValue2().equals("DEAD")) {
-        text.setStrikethrough(true);
-      }
-      //add all scores to display
-      getChildren().add(text);
+  private void updateScoreList() {
+    var list = multiplayerScores;
+    if (finalScores) {
+      showRows(list.size(), index -> {
+        var score = list.get(index);
+        return score.getValue0() + ": " + score.getValue1();
+      }, true);
+    } else {
+      showRows(list.size(), index -> {
+        var score = list.get(index);
+        //show lives, or that the player is dead
+        var lives = isDead(score) ? " DEAD" : " (" + score.getValue2() + " lives)";
+        return score.getValue0() + ": " + score.getValue1() + lives;
+      }, false);
     }
   }
 
   /**
-   * Display the final multiplayer scores for the score scene with the correct formatting and
-   * styling
-   *
-   * @param list the list of player scores recieved from the server
+   * Style a cell for the player score it is showing. During the game, dead players are struck
+   * through.
+   * @param cell the cell
+   * @param index the position of the player score in the list
    */
-  private void showFinalScores(
-      SimpleListProperty<Triplet<String, Integer, String>> list) {
-    getChildren().clear();
-
-    //create an array list of the individual scores to be displayed
-    ArrayList<Text> scoreTexts = new ArrayList<>();
-    var count = 0;
-    //loop through each score
-    for (Triplet<String, Integer, String> score : list) {
-      logger.info("Showing {} {}", score.getValue0(), score.getValue1());
-      count++;
-      //display top 10 scores
-      if (count > 10) {
-        break;
-      }
-      var scoreText = new Text(score.getValue0().concat(": ".concat(score.getValue1().toString())));
-      scoreText.setTextAlignment(TextAlignment.CENTER);
-      HBox.setHgrow(scoreText, Priority.ALWAYS);
-      scoreTexts.add(scoreText);
+  @Override
+  protected void updateCell(Text cell, int index) {
+    if (finalScores) {
+      super.updateCell(cell, index);
+      return;
+    }
+    if (!cell.getStyleClass().contains("smallHeading")) {
+      cell.getStyleClass().add("smallHeading");
     }
-    //use reveal method to show scores one by one
-    reveal(scoreTexts);
+    //if player is dead, strikethrough
+    cell.setStrikethrough(isDead(multiplayerScores.get(index)));
+  }
+
+  /**
+   * Check whether a player is dead
+   * @param score the player score
+   * @return true if the player has no lives left
+   */
+  private static boolean isDead(Triplet<String, Integer, String> score) {
+    return score.getValue2().equals("DEAD");
   }
 
   /**
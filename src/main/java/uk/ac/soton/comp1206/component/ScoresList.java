@@ -1,11 +1,13 @@
 package uk.ac.soton.comp1206.component;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
 import javafx.animation.FadeTransition;
-import javafx.animation.SequentialTransition;
 import javafx.beans.property.SimpleListProperty;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Pos;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
@@ -19,11 +21,26 @@ import org.apache.logging.log4j.Logger;
 
 /**
  * The ScoresList is a UI component that holds and displays a list of names and associated scores
+ * <br>
+ * Only a window of the list is shown, in a fixed set of row cells which are reused as the list
+ * changes or is scrolled with the mouse wheel, so a list of thousands of scores costs no more to
+ * show than a list of ten. When the list changes, only the rows whose text changed are updated, and
+ * only those rows fade in, one after another.
  */
 public class ScoresList extends VBox {
 
   private static final Logger logger = LogManager.getLogger(ScoresList.class);
 
+  /**
+   * The number of rows shown at once
+   */
+  public static final int ROWS = 10;
+
+  /**
+   * How long each changed row takes to fade in
+   */
+  private static final Duration FADE = Duration.millis(1000);
+
   /**
    * The list of local scores
    */
@@ -51,6 +68,29 @@ public class ScoresList extends VBox {
       Color.DEEPPINK,
   };
 
+  /**
+   * The row cells, their fade in animations, and the text each is showing
+   */
+  private final Text[] cells = new Text[ROWS];
+  private final FadeTransition[] fades = new FadeTransition[ROWS];
+  private final String[] shown = new String[ROWS];
+
+  /**
+   * The number of rows in the list shown, and the text of each
+   */
+  private int size = 0;
+  private IntFunction<String> rowText = index -> null;
+
+  /**
+   * The position in the list of the first row shown
+   */
+  private int first = 0;
+
+  /**
+   * Called when the list is scrolled down past its last row, or null
+   */
+  private Runnable onScrolledPastEnd;
+
   /**
    * Create a new ScoresList. Listen to when the local or online scores are changed and update the
    * display of scores.
@@ -62,6 +102,23 @@ public class ScoresList extends VBox {
     setAlignment(Pos.CENTER);
     setSpacing(2);
 
+    //create the row cells, hidden until there is a row to show in them
+    for (var i = 0; i < ROWS; i++) {
+      var cell = new Text();
+      cell.setTextAlignment(TextAlignment.CENTER);
+      HBox.setHgrow(cell, Priority.ALWAYS);
+      cell.setVisible(false);
+      cell.setManaged(false);
+      cells[i] = cell;
+      fades[i] = new FadeTransition(FADE, cell);
+      fades[i].setFromValue(0);
+      fades[i].setToValue(1);
+    }
+    getChildren().addAll(cells);
+
+    //scroll through the list with the mouse wheel
+    setOnScroll(this::handleScroll);
+
     //Update score list when score array list is updated
     scoresList.addListener(
         (ListChangeListener<? super Pair<String, Integer>>) (e) -> updateScoreList(scoresList)
@@ -80,53 +137,101 @@ public class ScoresList extends VBox {
    * Update the display of scores with correct formatting and styling.
    * @param list the list of scores
    */
-  private void updateScoreList(SimpleListProperty<Pair<String,Integer>> list) {
-    //Remove previous children
-    getChildren().clear();
-
-    //create an array list of the individual scores to be displayed
-    ArrayList<Text> scoreTexts = new ArrayList<>();
-    var count = 0;
-    for (Pair<String,Integer> score : list){
-      logger.info("Showing {} {}", score.getKey(),score.getValue());
-      count++;
-      //only add top 10 scores
-      if (count>10)break;
-      //create new text with name and score
-      var scoreText = new Text(score.getKey().concat(": ".concat(score.getValue().toString())));
-      scoreText.setTextAlignment(TextAlignment.CENTER);
-      HBox.setHgrow(scoreText, Priority.ALWAYS);
-
-      scoreTexts.add(scoreText);
+  private void updateScoreList(List<Pair<String,Integer>> list) {
+    showRows(list.size(), index -> {
+      var score = list.get(index);
+      return score.getKey() + ": " + score.getValue();
+    }, true);
+  }
+
+  /**
+   * Show a new list of rows, updating only the cells whose text has changed
+   * @param size the number of rows in the list
+   * @param rowText gives the text of the row at a position in the list
+   * @param animate whether changed rows fade in
+   */
+  protected void showRows(int size, IntFunction<String> rowText, boolean animate) {
+    this.size = size;
+    this.rowText = rowText;
+    first = Math.max(0, Math.min(first, size - ROWS));
+    refresh(animate);
+  }
+
+  /**
+   * Scroll so that a position in the list is the first row shown
+   * @param position the position in the list
+   */
+  public void scrollTo(int position) {
+    var scrolled = Math.max(0, Math.min(position, size - ROWS));
+    if (scrolled != first) {
+      first = scrolled;
+      refresh(false);
     }
+  }
 
-    //reveal each score text one by one
-    reveal(scoreTexts);
+  /**
+   * Scroll by a row for each notch of the mouse wheel
+   * @param event the scroll event
+   */
+  private void handleScroll(ScrollEvent event) {
+    if (event.getDeltaY() == 0) {
+      return;
+    }
+    if (event.getDeltaY() < 0 && first + ROWS >= size && onScrolledPastEnd != null) {
+      onScrolledPastEnd.run();
+    }
+    scrollTo(first + (event.getDeltaY() < 0 ? 1 : -1));
+    event.consume();
+  }
 
+  /**
+   * Set a task to run when the list is scrolled down past its last row, such as loading more rows
+   * @param onScrolledPastEnd the task, or null
+   */
+  public void setOnScrolledPastEnd(Runnable onScrolledPastEnd) {
+    this.onScrolledPastEnd = onScrolledPastEnd;
   }
 
   /**
-   * Reveals each text one by one with rainbow colours
-   * @param scores the scores to display
-   */
-  public void reveal(ArrayList<Text> scores){
-    //create new sequential transition to show scores one by one
-    SequentialTransition seq = new SequentialTransition();
-    var colorNum = 0;
-    //loop through each score
-    for (Text score : scores ){
-      //assign the next colour
-      score.setFill(COLOURS[colorNum]);
-      score.setOpacity(0);
-      getChildren().add(score);
-      //fade in score
-      FadeTransition ft = new FadeTransition(Duration.millis(1000),score);
-      ft.setToValue(1);
-      seq.getChildren().add(ft);
-      colorNum++;
+   * Show the rows of the list in the cells, updating only the cells whose text has changed
+   * @param animate whether changed rows fade in, one after another
+   */
+  private void refresh(boolean animate) {
+    var changed = 0;
+    for (var i = 0; i < ROWS; i++) {
+      var index = first + i;
+      var text = index < size ? rowText.apply(index) : null;
+      if (Objects.equals(text, shown[i])) {
+        continue;
+      }
+      shown[i] = text;
+      var cell = cells[i];
+      fades[i].stop();
+      cell.setVisible(text != null);
+      cell.setManaged(text != null);
+      if (text == null) {
+        continue;
+      }
+      logger.debug("Showing {}", text);
+      cell.setText(text);
+      updateCell(cell, index);
+      if (animate) {
+        cell.setOpacity(0);
+        fades[i].setDelay(FADE.multiply(changed++));
+        fades[i].playFromStart();
+      } else {
+        cell.setOpacity(1);
+      }
     }
-    //play sequence
-    seq.play();
+  }
+
+  /**
+   * Style a cell for the row it is showing. Rows are coloured by their position in the list.
+   * @param cell the cell
+   * @param index the position of the row in the list
+   */
+  protected void updateCell(Text cell, int index) {
+    cell.setFill(COLOURS[index % COLOURS.length]);
   }
 
   /**
@@ -1,5 +1,7 @@
 package uk.ac.soton.comp1206.component;
 
+import java.util.HashMap;
+import java.util.Map;
 import javafx.beans.property.SimpleSetProperty;
 import javafx.collections.SetChangeListener;
 import javafx.geometry.Orientation;
@@ -17,6 +19,11 @@ public class UserList extends FlowPane {
    */
   public SimpleSetProperty<String> userList = new SimpleSetProperty<>();
 
+  /**
+   * The name displayed for each user
+   */
+  private final Map<String, Text> names = new HashMap<>();
+
   /**
    * Create a new UserList. Add a listener to update the list display when the set changes.
    */
@@ -24,30 +31,41 @@ public class UserList extends FlowPane {
     setOrientation(Orientation.HORIZONTAL);
     setHgap(3);
     setVgap(2);
-    userList.addListener(
-        (SetChangeListener<? super String>) (e) -> updateUserList((userList))
-    );
 
+    //add heading
+    var title = new Text("Users: ");
+    title.getStyleClass().add("smallHeading");
+    getChildren().add(title);
+
+    //update only the user who joined or left
+    userList.addListener((SetChangeListener<? super String>) this::updateUserList);
   }
 
   /**
-   * Update the display of users in the channel
-   * @param userList the set of users in the channel
+   * Update the display of users in the channel, adding or removing only the user who changed
+   * @param change the change to the set of users in the channel
    */
-  private void updateUserList(SimpleSetProperty<String> userList) {
-    //remove old names before set was updated
-    getChildren().clear();
+  private void updateUserList(SetChangeListener.Change<? extends String> change) {
+    if (change.wasRemoved()) {
+      getChildren().remove(names.remove(change.getElementRemoved()));
+    }
+    if (change.wasAdded()) {
+      addUser(change.getElementAdded());
+    }
+  }
 
-    //add heading
-    var title = new Text("Users: ");
-    title.getStyleClass().add("smallHeading");
-    getChildren().add(title);
-    //loop through each user in the channel and display
-    for (String user:userList){
-      var username = new Text(user);
-      username.getStyleClass().add("smallHeading");
-      getChildren().add(username);
+  /**
+   * Display a user in the channel
+   * @param user the user's name
+   */
+  private void addUser(String user) {
+    if (names.containsKey(user)) {
+      return;
     }
+    var username = new Text(user);
+    username.getStyleClass().add("smallHeading");
+    getChildren().add(username);
+    names.put(user, username);
   }
 
   /**
@@ -0,0 +1,138 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The BoardStatusEncoder builds the BOARD messages sent to the server during a multiplayer game.
+ * <br>
+ * It remembers the last board that was sent so that an unchanged board is not sent again. When
+ * delta mode is enabled, only the cells that have changed are sent, with a full snapshot sent
+ * periodically (or whenever the delta would be larger than the full board).
+ * <br>
+ * Messages are built in a single reusable buffer so no intermediate Strings are created per cell.
+ */
+public class BoardStatusEncoder {
+
+  private static final Logger logger = LogManager.getLogger(BoardStatusEncoder.class);
+
+  /**
+   * The number of messages sent before a full snapshot is forced again
+   */
+  public static final int FULL_SNAPSHOT_INTERVAL = 10;
+
+  /**
+   * Whether changed cells only should be sent. The public server only accepts full snapshots, so
+   * this is off unless the tetrecs.boardDelta system property is set.
+   */
+  private final boolean deltaEnabled;
+
+  /**
+   * The values of the last board sent, in the same column-major order as the message
+   */
+  private int[] lastSent;
+
+  /**
+   * Whether any board has been sent yet
+   */
+  private boolean hasSent = false;
+
+  /**
+   * Messages sent since the last full snapshot
+   */
+  private int sinceSnapshot = 0;
+
+  /**
+   * Reusable buffer used to build each message
+   */
+  private final StringBuilder buffer = new StringBuilder(64);
+
+  /**
+   * Create a new encoder, using delta mode if the tetrecs.boardDelta system property is set
+   */
+  public BoardStatusEncoder() {
+    this(Boolean.getBoolean("tetrecs.boardDelta"));
+  }
+
+  /**
+   * Create a new encoder
+   * @param deltaEnabled whether only the changed cells should be sent between full snapshots
+   */
+  public BoardStatusEncoder(boolean deltaEnabled) {
+    this.deltaEnabled = deltaEnabled;
+  }
+
+  /**
+   * Build the next BOARD message for the given grid.
+   * @param grid the grid to encode
+   * @return the message to send, or null if the board has not changed since the last message
+   */
+  public String encode(Grid grid) {
+    var cols = grid.getCols();
+    var rows = grid.getRows();
+    var size = cols * rows;
+    //board size changed, start again with a full snapshot
+    if (lastSent == null || lastSent.length != size) {
+      lastSent = new int[size];
+      hasSent = false;
+    }
+
+    //count the cells that are different to the last board sent
+    var changed = 0;
+    for (int x = 0; x < cols; x++) {
+      for (int y = 0; y < rows; y++) {
+        if (grid.get(x, y) != lastSent[x * rows + y]) {
+          changed++;
+        }
+      }
+    }
+
+    //nothing to send
+    if (hasSent && changed == 0) {
+      logger.debug("Board unchanged, skipping board status");
+      return null;
+    }
+
+    buffer.setLength(0);
+    buffer.append("BOARD ");
+    var full = !deltaEnabled || !hasSent || sinceSnapshot >= FULL_SNAPSHOT_INTERVAL
+        || changed * 2 > size;
+    if (full) {
+      //send every value, column by column
+      for (int x = 0; x < cols; x++) {
+        for (int y = 0; y < rows; y++) {
+          var value = grid.get(x, y);
+          lastSent[x * rows + y] = value;
+          buffer.append(value).append(' ');
+        }
+      }
+      sinceSnapshot = 0;
+    } else {
+      //send only the changed cells as index:value pairs
+      buffer.append("DELTA");
+      for (int x = 0; x < cols; x++) {
+        for (int y = 0; y < rows; y++) {
+          var index = x * rows + y;
+          var value = grid.get(x, y);
+          if (value == lastSent[index]) {
+            continue;
+          }
+          lastSent[index] = value;
+          buffer.append(' ').append(index).append(':').append(value);
+        }
+      }
+      sinceSnapshot++;
+    }
+    hasSent = true;
+    return buffer.toString();
+  }
+
+  /**
+   * Forget the last board sent so that the next message is a full snapshot
+   */
+  public void reset() {
+    hasSent = false;
+    sinceSnapshot = 0;
+  }
+
+}
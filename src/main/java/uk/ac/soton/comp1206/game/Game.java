@@ -4,6 +4,7 @@ import java.util.HashSet;
 import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -15,6 +16,8 @@ import uk.ac.soton.comp1206.event.GameLoopListener;
 import uk.ac.soton.comp1206.event.GameOverListener;
 import uk.ac.soton.comp1206.event.LineClearedListener;
 import uk.ac.soton.comp1206.event.NextPieceListener;
+import uk.ac.soton.comp1206.telemetry.GameTelemetry;
+import uk.ac.soton.comp1206.telemetry.TelemetryLog;
 import uk.ac.soton.comp1206.utility.Multimedia;
 
 /**
@@ -82,13 +85,36 @@ public class Game {
     /**
      * Game timer to count down how long is left for piece to be played before a life is lost.
      */
-    private Timer gameTimer = new Timer();
+    private Timer gameTimer = new Timer("game-timer", true);
 
     /**
      * Task for the timer to do once it runs out
      */
     private TimerTask task;
 
+    /**
+     * When the current timer task runs out, and the time it had left when the game was paused, in
+     * milliseconds. Guarded by this.
+     */
+    private long deadline;
+    private long remaining = -1;
+
+    /**
+     * Whether the game has ended, so the timer can no longer be used. Guarded by this.
+     */
+    private boolean over = false;
+
+    /**
+     * Telemetry of every move played, written to the telemetry log when the game ends
+     */
+    private final GameTelemetry telemetry = new GameTelemetry();
+    private final AtomicBoolean telemetryRecorded = new AtomicBoolean();
+
+    /**
+     * Works out what playing the current piece would do, without changing the grid
+     */
+    private final PlacementPreview preview;
+
     /**
      * Create a new game with the specified rows and columns. Creates a corresponding grid model.
      * @param cols number of columns
@@ -100,6 +126,7 @@ public class Game {
 
         //Create a new grid model to represent the game state
         this.grid = new Grid(cols,rows);
+        this.preview = new PlacementPreview(grid);
     }
 
     /**
@@ -135,6 +162,7 @@ public class Game {
         //check if piece was played successfully
         if (piecePlayed) {
             logger.debug("Piece played after clicking block");
+            telemetry.placed(currentPiece.getValue(),x,y,level.get(),getTimerDelay());
             Multimedia.playAudio("place.wav");
             //cancel the current timer task
             task.cancel();
@@ -205,6 +233,7 @@ public class Game {
         //change score and multiplier accordingly
         changeScore(linesCleared,clearedBlocks.size());
         changeMultiplier(linesCleared);
+        telemetry.cleared(linesCleared,clearedBlocks.size(),score.get());
     }
 
     /**
@@ -269,6 +298,7 @@ public class Game {
 
         //reset the timer as the piece has been played
         resetTimer();
+        telemetry.startMove();
 
         return currentPiece;
     }
@@ -277,20 +307,69 @@ public class Game {
      * Resets the game timer countdown by scheduling a new timer task which runs the gameloop with
      * the current timer delay.
      */
-    private void resetTimer() {
+    private synchronized void resetTimer() {
         logger.info("Resetting game timer");
-        //create new timer task
-        task = new TimerTask() {
-            public void run() {
-                gameLoop();
-            }
-        };
         //call the game loop listener with the current timer delay
         Platform.runLater(() ->{
             gameLoopListener.gameLooped(getTimerDelay());
         });
         //schedule game timer
-        gameTimer.schedule(task,getTimerDelay());
+        scheduleTimer(getTimerDelay());
+    }
+
+    /**
+     * Schedule a new timer task which runs the game loop after a delay
+     * @param delay the delay in milliseconds
+     */
+    private synchronized void scheduleTimer(long delay) {
+        //a paused game starts the new piece's countdown when it is resumed
+        if (remaining >= 0) {
+            remaining = delay;
+            return;
+        }
+        task = new TimerTask() {
+            public void run() {
+                gameLoop();
+            }
+        };
+        deadline = System.currentTimeMillis() + delay;
+        gameTimer.schedule(task,delay);
+    }
+
+    /**
+     * Stop the countdown of the current piece, keeping the time it has left
+     */
+    public synchronized void pause() {
+        if (over || remaining >= 0 || task == null || !task.cancel()) {
+            return;
+        }
+        gameTimer.purge();
+        remaining = Math.max(0, deadline - System.currentTimeMillis());
+        logger.info("Game paused with {}ms left", remaining);
+    }
+
+    /**
+     * Carry on the countdown of the current piece from where it was paused
+     */
+    public synchronized void resume() {
+        if (remaining < 0) {
+            return;
+        }
+        var delay = remaining;
+        remaining = -1;
+        if (over) {
+            return;
+        }
+        logger.info("Game resumed with {}ms left", delay);
+        scheduleTimer(delay);
+    }
+
+    /**
+     * Whether the countdown of the current piece is paused
+     * @return true if the game is paused
+     */
+    public synchronized boolean isPaused() {
+        return remaining >= 0;
     }
 
     /**
@@ -430,7 +509,7 @@ public class Game {
      */
     public void changeScore(int lines, int blocks){
         //update the value of the score
-        this.score.set(score.getValue()+(lines*blocks*10*multiplier.getValue()));
+        this.score.set(score.getValue()+score(lines,blocks,multiplier.getValue()));
         logger.info("Updated score to {}",score.getValue());
         //update level and highscore
         updateLevel();
@@ -505,6 +584,29 @@ public class Game {
         this.gameOverListener = listener;
     }
 
+    /**
+     * Calculate the score for clearing lines
+     * @param lines the number of lines cleared
+     * @param blocks the number of blocks cleared
+     * @param multiplier the score multiplier
+     * @return the score gained
+     */
+    public static int score(int lines, int blocks, int multiplier) {
+        return lines*blocks*10*multiplier;
+    }
+
+    /**
+     * Work out what playing the current piece at the given co-ordinates would do, without changing
+     * the grid. The preview returned is reused by the next call.
+     * @param x the x co-ordinate
+     * @param y the y co-ordinate
+     * @return the preview of the placement
+     */
+    public PlacementPreview preview(int x, int y) {
+        preview.evaluate(currentPiece,x,y,multiplier.get());
+        return preview;
+    }
+
     /**
      * Rotate the current piece once
      * @return the current piece after it has been rotated
@@ -512,6 +614,7 @@ public class Game {
     public GamePiece rotateCurrentPiece(){
         logger.info("Rotating piece {}",currentPiece);
         currentPiece.rotate();
+        telemetry.rotated(1);
         return currentPiece;
     }
 
@@ -523,6 +626,7 @@ public class Game {
     public GamePiece rotateCurrentPiece(int num){
         logger.info("Rotating piece {}",currentPiece);
         currentPiece.rotate(num);
+        telemetry.rotated(num);
         return currentPiece;
     }
 
@@ -555,13 +659,18 @@ public class Game {
      * game is ended.
      */
     public void gameLoop(){
+        telemetry.expired(currentPiece.getValue(),level.get(),getTimerDelay(),score.get());
         //check if lives have run out
         if (this.lives.get() == 0){
             logger.info("Lives have run out");
             //cancel timer task and timer
-            task.cancel();
-            gameTimer.purge();
-            gameTimer.cancel();
+            synchronized (this) {
+                over = true;
+                task.cancel();
+                gameTimer.purge();
+                gameTimer.cancel();
+            }
+            recordTelemetry();
             Platform.runLater(()->{
                 //call the listener
                 gameOverListener.gameOver(this);
@@ -584,7 +693,45 @@ public class Game {
      * Cancel the timer at the end of the game
      */
     public void endGame() {
-        gameTimer.cancel();
+        logger.info("Ending game");
+        synchronized (this) {
+            over = true;
+            gameTimer.cancel();
+        }
+        recordTelemetry();
+    }
+
+    /**
+     * Whether the game has ended
+     * @return true if the game is over
+     */
+    public synchronized boolean isOver() {
+        return over;
+    }
+
+    /**
+     * Replace the listeners with ones which do nothing, so the game no longer holds on to the scene
+     * which showed it
+     */
+    public void clearListeners() {
+        nextPieceListener = (current, following) -> { };
+        lineClearedListener = blocks -> { };
+        gameLoopListener = delay -> { };
+        gameOverListener = game -> { };
+    }
+
+    /**
+     * Write the telemetry of the game to the telemetry log, once the game has ended. Called from
+     * both the game timer and the JavaFX thread, so only the first call records the game.
+     */
+    protected void recordTelemetry() {
+        if (!telemetryRecorded.compareAndSet(false, true)) {
+            return;
+        }
+        var log = TelemetryLog.getInstance();
+        if (log != null) {
+            log.record(telemetry,score.get(),level.get());
+        }
     }
 
 }
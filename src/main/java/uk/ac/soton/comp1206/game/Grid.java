@@ -126,7 +126,7 @@ public class Grid {
      * @return whether the piece can be played or not
      */
   public boolean canPlayPiece(GamePiece piece, int x, int y) {
-    logger.info("Checking if {} piece can be played at ({},{})",piece,x,y);
+    logger.debug("Checking if {} piece can be played at ({},{})",piece,x,y);
     //offset co-ordinates so piece is played by centre
     x = x - 1;
     y = y - 1;
@@ -143,7 +143,7 @@ public class Grid {
          //if value of the grid at co-ordinates of that game block is not 0, piece cannot be played
         int gridValue = get(i + x, j + y);
           if (gridValue != 0) {
-            logger.info("{} piece unable to be played due to conflict at {},{}",piece,i+x,j+y);
+            logger.debug("{} piece unable to be played due to conflict at {},{}",piece,i+x,j+y);
             //return false as piece cannot be played
               return false;
           }
@@ -1,12 +1,8 @@
 package uk.ac.soton.comp1206.game;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.LinkedList;
-import javafx.application.Platform;
 import javafx.beans.property.SimpleListProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.ChatReceivedListener;
@@ -32,18 +28,30 @@ public class MultiplayerGame extends Game{
   private LinkedList<GamePiece> queue = new LinkedList<>();
 
   /**
-   * An observable array list of the scores of the players in the game - represented using a Triplet
-   * in the form Name,Score,Lives
+   * An observable list of the scores of the players in the game, highest first - represented using a
+   * Triplet in the form Name,Score,Lives
    */
-
-  private ObservableList<Triplet<String,Integer,String>> scoresList = FXCollections.observableArrayList();
+  private PlayerScores scoresList = new PlayerScores();
 
   /**
    * The ListProperty used as a wrapper for the observable list of scores
    */
   private SimpleListProperty<Triplet<String,Integer,String>> multiplayerScores = new SimpleListProperty<>(scoresList);
 
-  private ChatReceivedListener chatReceivedListener;
+  /**
+   * Set on the JavaFX thread and called on the communicator's thread
+   */
+  private volatile ChatReceivedListener chatReceivedListener;
+
+  /**
+   * Whether the server has been told the player has left the game
+   */
+  private boolean left = false;
+
+  /**
+   * Builds the board status messages, skipping unchanged boards
+   */
+  private final BoardStatusEncoder boardStatusEncoder = new BoardStatusEncoder();
 
 
   /**
@@ -60,9 +68,23 @@ public class MultiplayerGame extends Game{
     super(cols, rows);
     this.communicator = communicator;
     //handle messages from the server
-    communicator.addListener(communication -> Platform.runLater(() ->
-        handleMessage(communication)
-    ));
+    communicator.addListener(communication -> {
+      //chat messages are batched onto the JavaFX thread by the chat display
+      if (communication.startsWith("MSG")) {
+        var listener = chatReceivedListener;
+        if (listener != null) {
+          listener.chatReceived(communication);
+        }
+        return;
+      }
+      //only the newest scores need to be shown
+      var delivery = communicator.getDelivery();
+      if (communication.startsWith("SCORES")) {
+        delivery.postLatest("SCORES", () -> handleMessage(communication));
+      } else {
+        delivery.post(() -> handleMessage(communication));
+      }
+    });
     //queue the initial pieces
     queuePieces();
     //request the initial scores for all players
@@ -83,17 +105,17 @@ public class MultiplayerGame extends Game{
       else if(communication.startsWith("SCORES")){
         updateLeaderboardScore(communication);
       }
-      //listen for chat messages
-      else if(communication.startsWith("MSG")){
-        chatReceivedListener.chatReceived(communication);
-      }
   }
 
   /**
-   * Send message to the server to leave the game (and channel).
+   * Send message to the server to leave the game (and channel), once, and stop the game timer.
    */
   public void endGame(){
-    communicator.send("DIE");
+    if (!left) {
+      left = true;
+      communicator.send("DIE");
+    }
+    super.endGame();
   }
 
   /**
@@ -147,6 +169,16 @@ public class MultiplayerGame extends Game{
     communicator.send("PIECE");
   }
 
+  /**
+   * Start a new game, with a full board as the first board status sent rather than a delta from the
+   * last game
+   */
+  @Override
+  public void initialiseGame() {
+    boardStatusEncoder.reset();
+    super.initialiseGame();
+  }
+
   /**
    * Overrides Game's method of spawning a random piece to instead dequeue a piece from the queue and
    * request a replacement piece so queue size remains the same.
@@ -186,16 +218,13 @@ public class MultiplayerGame extends Game{
   }
 
   /**
-   * Sends the current board values to the server to protect against cheating
+   * Sends the current board values to the server to protect against cheating. Nothing is sent if
+   * the board has not changed since it was last sent.
    */
   private void sendBoardStatus() {
-    String boardValues = "BOARD ";
-    var grid = this.getGrid();
-    for (int x =0; x<grid.getCols();x++){
-      for (int y=0;y<grid.getRows();y++){
-        String blockVal = String.valueOf(grid.get(x,y));
-        boardValues = boardValues.concat(blockVal+" ");
-      }
+    var boardValues = boardStatusEncoder.encode(this.getGrid());
+    if (boardValues == null) {
+      return;
     }
     communicator.send(boardValues);
   }
@@ -203,20 +232,22 @@ public class MultiplayerGame extends Game{
   /**
    * Updates the leaderboard when player scores are received from the server.
    * <br>
-   * Adds name, score and lives to the observable list of scores.
+   * Merges name, score and lives into the observable list of scores, so only players whose score or
+   * lives changed are updated.
    * @param message the scores received from the server
    */
   private void updateLeaderboardScore(String message) {
-   scoresList.clear();
    var allScores = message.replace("SCORES ","").split("\n");
+   var latest = new ArrayList<Triplet<String,Integer,String>>(allScores.length);
    for (String score :allScores){
      var scoreContent = score.split(":");
+     if (scoreContent.length < 3) {
+       continue;
+     }
      logger.debug("Adding {},{},{} to scores",scoreContent[0],scoreContent[1],scoreContent[2]);
-     //add score
-     scoresList.add(new Triplet<>(scoreContent[0],Integer.valueOf(scoreContent[1]),scoreContent[2]));
-     //sort list
-     scoresList.sort(Collections.reverseOrder(Comparator.comparing(Triplet<String,Integer,String>::getValue1)));
+     latest.add(new Triplet<>(scoreContent[0],Integer.valueOf(scoreContent[1]),scoreContent[2]));
    }
+   scoresList.merge(latest);
   }
 
   /**
@@ -228,10 +259,20 @@ public class MultiplayerGame extends Game{
   }
 
   /**
-   * Set the listener to handle an event when a chat message is received from the server
+   * Set the listener to handle an event when a chat message is received from the server. The
+   * listener is called on the communicator's thread, not the JavaFX thread.
    * @param listener the listener to listen for a chat received event
    */
   public void setChatReceivedListener(ChatReceivedListener listener){
     chatReceivedListener = listener;
   }
+
+  /**
+   * Remove the chat listener as well as the game listeners
+   */
+  @Override
+  public void clearListeners() {
+    super.clearListeners();
+    chatReceivedListener = null;
+  }
 }
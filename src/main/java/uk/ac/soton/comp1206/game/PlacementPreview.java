@@ -0,0 +1,186 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.Arrays;
+
+/**
+ * A PlacementPreview works out what would happen if a piece were played on a grid, without changing
+ * the grid: whether it fits, which lines and blocks it would clear, and what that would score.
+ * <br>
+ * The piece is laid over the grid in a separate mask, so the grid is only read and nothing bound
+ * to it is told of any change. A preview is reused for every evaluation and evaluating allocates
+ * nothing, so it can be run every time the aim moves.
+ */
+public class PlacementPreview {
+
+  private final Grid grid;
+  private final int cols;
+  private final int rows;
+
+  /**
+   * The blocks the piece would fill, and the blocks which would be cleared, by x * rows + y
+   */
+  private final boolean[] placed;
+  private final boolean[] cleared;
+
+  private boolean fits;
+  private int lines;
+  private int blocks;
+  private int score;
+
+  /**
+   * Create a preview of placements on a grid
+   * @param grid the grid
+   */
+  public PlacementPreview(Grid grid) {
+    this.grid = grid;
+    this.cols = grid.getCols();
+    this.rows = grid.getRows();
+    placed = new boolean[cols * rows];
+    cleared = new boolean[cols * rows];
+  }
+
+  /**
+   * Work out what playing a piece centred on the given co-ordinates would do
+   * @param piece the piece to play
+   * @param x the x co-ordinate of the centre of the piece
+   * @param y the y co-ordinate of the centre of the piece
+   * @param multiplier the current score multiplier
+   * @return whether the piece fits
+   */
+  public boolean evaluate(GamePiece piece, int x, int y, int multiplier) {
+    Arrays.fill(placed, false);
+    Arrays.fill(cleared, false);
+    lines = 0;
+    blocks = 0;
+    score = 0;
+    fits = piece != null && lay(piece, x - 1, y - 1);
+    if (!fits) {
+      Arrays.fill(placed, false);
+      return false;
+    }
+
+    //full columns
+    for (var i = 0; i < cols; i++) {
+      var full = true;
+      for (var j = 0; j < rows && full; j++) {
+        full = filled(i, j);
+      }
+      if (full) {
+        lines++;
+        for (var j = 0; j < rows; j++) {
+          cleared[i * rows + j] = true;
+        }
+      }
+    }
+
+    //full rows
+    for (var j = 0; j < rows; j++) {
+      var full = true;
+      for (var i = 0; i < cols && full; i++) {
+        full = filled(i, j);
+      }
+      if (full) {
+        lines++;
+        for (var i = 0; i < cols; i++) {
+          cleared[i * rows + j] = true;
+        }
+      }
+    }
+
+    for (boolean block : cleared) {
+      if (block) {
+        blocks++;
+      }
+    }
+    score = Game.score(lines, blocks, multiplier);
+    return true;
+  }
+
+  /**
+   * Mark the blocks a piece would fill, checking each is on the grid and empty
+   * @param piece the piece
+   * @param x the x co-ordinate of the top left of the piece
+   * @param y the y co-ordinate of the top left of the piece
+   * @return whether the piece fits
+   */
+  private boolean lay(GamePiece piece, int x, int y) {
+    var shape = piece.getBlocks();
+    for (var i = 0; i < shape.length; i++) {
+      for (var j = 0; j < shape[i].length; j++) {
+        if (shape[i][j] == 0) {
+          continue;
+        }
+        var bx = x + i;
+        var by = y + j;
+        if (bx < 0 || by < 0 || bx >= cols || by >= rows || grid.get(bx, by) != 0) {
+          return false;
+        }
+        placed[bx * rows + by] = true;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether a block would be filled once the piece is played
+   * @param x column
+   * @param y row
+   * @return true if the block is filled on the grid or by the piece
+   */
+  private boolean filled(int x, int y) {
+    return placed[x * rows + y] || grid.get(x, y) != 0;
+  }
+
+  /**
+   * Whether the last piece evaluated fits
+   * @return true if the piece can be played there
+   */
+  public boolean fits() {
+    return fits;
+  }
+
+  /**
+   * Whether the last piece evaluated would fill a block
+   * @param x column
+   * @param y row
+   * @return true if the piece would fill the block
+   */
+  public boolean isPlaced(int x, int y) {
+    return placed[x * rows + y];
+  }
+
+  /**
+   * Whether the last piece evaluated would clear a block
+   * @param x column
+   * @param y row
+   * @return true if the block would be cleared
+   */
+  public boolean isCleared(int x, int y) {
+    return cleared[x * rows + y];
+  }
+
+  /**
+   * Get the number of lines the last piece evaluated would clear
+   * @return the number of lines
+   */
+  public int getLines() {
+    return lines;
+  }
+
+  /**
+   * Get the number of blocks the last piece evaluated would clear
+   * @return the number of blocks
+   */
+  public int getBlocks() {
+    return blocks;
+  }
+
+  /**
+   * Get the score the last piece evaluated would add
+   * @return the score gained
+   */
+  public int getScore() {
+    return score;
+  }
+
+}
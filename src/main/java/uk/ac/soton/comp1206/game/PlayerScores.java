@@ -0,0 +1,127 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javafx.collections.ObservableListBase;
+import org.javatuples.Triplet;
+
+/**
+ * PlayerScores is an observable list of the scores of the players in a multiplayer game, kept in
+ * order of highest score first. Each score is a Triplet in the form Name,Score,Lives.
+ * <br>
+ * Scores are keyed by player name, so when new scores are merged in only the players whose score or
+ * lives changed are moved, and all the changes from one merge are sent to listeners as a single
+ * change event. The position of a player is found with a binary search rather than by sorting the
+ * whole list again.
+ */
+public class PlayerScores extends ObservableListBase<Triplet<String, Integer, String>> {
+
+  /**
+   * The order of the list: highest score first, then by name so that ties keep a stable order
+   */
+  private static final Comparator<Triplet<String, Integer, String>> ORDER =
+      Comparator.comparing(Triplet<String, Integer, String>::getValue1, Comparator.reverseOrder())
+          .thenComparing(Triplet::getValue0);
+
+  /**
+   * The scores in display order
+   */
+  private final ArrayList<Triplet<String, Integer, String>> scores = new ArrayList<>();
+
+  /**
+   * The current score of each player, by name
+   */
+  private final Map<String, Triplet<String, Integer, String>> players = new HashMap<>();
+
+  /**
+   * Merge the latest scores of every player into the list. Players missing from the given scores
+   * are removed, new players are added and players whose score or lives changed are updated in
+   * place or moved to their new position. Unchanged players are left alone.
+   *
+   * @param latest the latest score of every player
+   */
+  public void merge(Collection<Triplet<String, Integer, String>> latest) {
+    var received = new LinkedHashMap<String, Triplet<String, Integer, String>>();
+    for (Triplet<String, Integer, String> score : latest) {
+      received.put(score.getValue0(), score);
+    }
+
+    beginChange();
+    try {
+      //remove players who have left
+      var iterator = players.values().iterator();
+      while (iterator.hasNext()) {
+        var score = iterator.next();
+        if (!received.containsKey(score.getValue0())) {
+          var index = indexOf(score);
+          scores.remove(index);
+          nextRemove(index, score);
+          iterator.remove();
+        }
+      }
+
+      //add new players and update changed players
+      for (Triplet<String, Integer, String> score : received.values()) {
+        var previous = players.put(score.getValue0(), score);
+        if (score.equals(previous)) {
+          continue;
+        }
+        if (previous != null) {
+          var index = indexOf(previous);
+          scores.remove(index);
+          var position = insertionPoint(score);
+          scores.add(position, score);
+          if (position == index) {
+            nextSet(index, previous);
+          } else {
+            nextRemove(index, previous);
+            nextAdd(position, position + 1);
+          }
+        } else {
+          var position = insertionPoint(score);
+          scores.add(position, score);
+          nextAdd(position, position + 1);
+        }
+      }
+    } finally {
+      endChange();
+    }
+  }
+
+  /**
+   * Find the position of a score currently in the list
+   *
+   * @param score the score
+   * @return its index
+   */
+  private int indexOf(Triplet<String, Integer, String> score) {
+    return Collections.binarySearch(scores, score, ORDER);
+  }
+
+  /**
+   * Find the position a score should be inserted at to keep the list in order
+   *
+   * @param score the score to insert
+   * @return the index to insert at
+   */
+  private int insertionPoint(Triplet<String, Integer, String> score) {
+    var index = Collections.binarySearch(scores, score, ORDER);
+    return index < 0 ? -index - 1 : index;
+  }
+
+  @Override
+  public Triplet<String, Integer, String> get(int index) {
+    return scores.get(index);
+  }
+
+  @Override
+  public int size() {
+    return scores.size();
+  }
+
+}
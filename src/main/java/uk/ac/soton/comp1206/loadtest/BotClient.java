@@ -0,0 +1,319 @@
+package uk.ac.soton.comp1206.loadtest;
+
+import com.neovisionaries.ws.client.WebSocketException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.BoardStatusEncoder;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.NetworkMonitor;
+
+/**
+ * A BotClient is a single headless player used by the LoadGenerator.
+ * <br>
+ * Each bot has its own Communicator and plays a simplified multiplayer game: it joins (or hosts) a
+ * channel, waits for the game to start, places the pieces it is given wherever they fit, reports its
+ * score, lives and board like a MultiplayerGame, chats, and then dies and leaves.
+ */
+public class BotClient implements Runnable {
+
+  private static final Logger logger = LogManager.getLogger(BotClient.class);
+
+  /**
+   * How long to wait for any single reply from the server
+   */
+  private static final long REPLY_TIMEOUT = 10000;
+
+  /**
+   * How long the host waits for the channel to fill before starting anyway
+   */
+  private static final long START_TIMEOUT = 30000;
+
+  private final int id;
+  private final String server;
+  private final String channel;
+  private final boolean host;
+  private final LoadGenerator.Settings settings;
+  private final NetworkMonitor monitor;
+  private final Random random;
+
+  /**
+   * Messages received from the server, waiting to be handled by the bot's own thread
+   */
+  private final BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+
+  /**
+   * Pieces received from the server and not yet played
+   */
+  private final ArrayDeque<Integer> pieces = new ArrayDeque<>();
+
+  private final Grid grid = new Grid(5, 5);
+  private final BoardStatusEncoder boardStatus = new BoardStatusEncoder(true);
+
+  private Communicator communicator;
+  private int users = 0;
+  private boolean started = false;
+  private int score = 0;
+  private int lives = 3;
+  private int multiplier = 1;
+
+  /**
+   * Create a new bot
+   * @param id the bot number
+   * @param server the server to connect to
+   * @param channel the channel to join
+   * @param host whether this bot creates and starts the channel
+   * @param settings the load test settings
+   * @param monitor the shared network monitor to record statistics into
+   */
+  public BotClient(int id, String server, String channel, boolean host,
+      LoadGenerator.Settings settings, NetworkMonitor monitor) {
+    this.id = id;
+    this.server = server;
+    this.channel = channel;
+    this.host = host;
+    this.settings = settings;
+    this.monitor = monitor;
+    this.random = new Random(id);
+  }
+
+  /**
+   * Connect, play a single game and disconnect
+   */
+  @Override
+  public void run() {
+    try {
+      communicator = Communicator.connect(server, monitor);
+      communicator.addListener(inbox::add);
+      send("NICK bot" + id);
+      joinChannel();
+      waitForStart();
+      play();
+      send("DIE");
+      send("HISCORE bot" + id + ":" + score);
+      await(message -> message.startsWith("NEWSCORE"));
+    } catch (IOException | WebSocketException e) {
+      logger.error("Bot {} unable to connect: {}", id, e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IllegalStateException e) {
+      logger.warn("Bot {} stopped: {}", id, e.getMessage());
+    } finally {
+      if (communicator != null) {
+        communicator.send("QUIT");
+        communicator.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Create the channel if this is the host, otherwise wait until it is listed and then join it.
+   * Joining only once the channel exists means every JOIN sent is answered, so none are left
+   * waiting for a reply in the Communicator.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void joinChannel() throws InterruptedException {
+    if (host) {
+      send("CREATE " + channel);
+      await(message -> message.startsWith("JOIN"));
+      return;
+    }
+    for (int attempt = 0; attempt < 100; attempt++) {
+      send("LIST");
+      var channels = await(message -> message.startsWith("CHANNELS"));
+      if (Arrays.asList(channels.substring(8).trim().split("\n")).contains(channel)) {
+        send("JOIN " + channel);
+        await(message -> message.startsWith("JOIN"));
+        return;
+      }
+      Thread.sleep(200);
+    }
+    throw new IllegalStateException("unable to join " + channel);
+  }
+
+  /**
+   * Wait for the game to start. The host starts it once the channel is full.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void waitForStart() throws InterruptedException {
+    if (host) {
+      var deadline = System.currentTimeMillis() + START_TIMEOUT;
+      while (users < settings.channelSize && System.currentTimeMillis() < deadline) {
+        handle(inbox.poll(100, TimeUnit.MILLISECONDS));
+      }
+      send("START");
+    }
+    while (!started) {
+      await(message -> message.equals("START"), START_TIMEOUT + REPLY_TIMEOUT);
+    }
+  }
+
+  /**
+   * Play moves until out of moves or lives
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void play() throws InterruptedException {
+    for (int i = 0; i < 4; i++) {
+      send("PIECE");
+    }
+    send("SCORES");
+    for (int move = 1; move <= settings.moves && lives >= 0; move++) {
+      Thread.sleep(settings.moveDelay / 2 + random.nextInt(settings.moveDelay + 1));
+      while (!inbox.isEmpty()) {
+        handle(inbox.poll());
+      }
+      while (pieces.isEmpty()) {
+        await(message -> message.startsWith("PIECE"));
+      }
+      var piece = GamePiece.createPiece(pieces.poll());
+      piece.rotate(random.nextInt(4));
+      if (place(piece)) {
+        send("SCORE " + score);
+        var board = boardStatus.encode(grid);
+        if (board != null) {
+          send(board);
+        }
+      } else {
+        lives--;
+        multiplier = 1;
+        send("LIVES " + lives);
+      }
+      send("PIECE");
+      if (settings.chatEvery > 0 && move % settings.chatEvery == 0) {
+        send("MSG hello from bot" + id);
+      }
+      if (move % 5 == 0) {
+        send("SCORES");
+      }
+    }
+  }
+
+  /**
+   * Place a piece at the first position it fits, starting from a random cell, then clear lines
+   * @param piece the piece to place
+   * @return whether the piece could be placed
+   */
+  private boolean place(GamePiece piece) {
+    var cols = grid.getCols();
+    var rows = grid.getRows();
+    var start = random.nextInt(cols * rows);
+    for (int i = 0; i < cols * rows; i++) {
+      var cell = (start + i) % (cols * rows);
+      var x = cell % cols;
+      var y = cell / cols;
+      if (grid.canPlayPiece(piece, x, y)) {
+        grid.playPiece(piece, x, y);
+        clearLines();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Clear full rows and columns and update the score using the same rules as the Game
+   */
+  private void clearLines() {
+    var cols = grid.getCols();
+    var rows = grid.getRows();
+    var fullCols = new boolean[cols];
+    var fullRows = new boolean[rows];
+    var lines = 0;
+    for (int x = 0; x < cols; x++) {
+      fullCols[x] = true;
+      for (int y = 0; y < rows && fullCols[x]; y++) {
+        fullCols[x] = grid.get(x, y) != 0;
+      }
+      lines += fullCols[x] ? 1 : 0;
+    }
+    for (int y = 0; y < rows; y++) {
+      fullRows[y] = true;
+      for (int x = 0; x < cols && fullRows[y]; x++) {
+        fullRows[y] = grid.get(x, y) != 0;
+      }
+      lines += fullRows[y] ? 1 : 0;
+    }
+    if (lines == 0) {
+      multiplier = 1;
+      return;
+    }
+    var blocks = 0;
+    for (int x = 0; x < cols; x++) {
+      for (int y = 0; y < rows; y++) {
+        if (fullCols[x] || fullRows[y]) {
+          grid.set(x, y, 0);
+          blocks++;
+        }
+      }
+    }
+    score += lines * blocks * 10 * multiplier;
+    multiplier++;
+  }
+
+  /**
+   * Send a message. The Communicator counts it and times its reply.
+   * @param message the message to send
+   */
+  private void send(String message) {
+    communicator.send(message);
+  }
+
+  /**
+   * Wait for a message matching the given test, handling any other messages received meanwhile
+   * @param match the test for the message to wait for
+   * @return the matching message
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private String await(Predicate<String> match) throws InterruptedException {
+    return await(match, REPLY_TIMEOUT);
+  }
+
+  /**
+   * Wait for a message matching the given test, handling any other messages received meanwhile
+   * @param match the test for the message to wait for
+   * @param timeout how long to wait in milliseconds
+   * @return the matching message
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private String await(Predicate<String> match, long timeout) throws InterruptedException {
+    var deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+      var remaining = deadline - System.currentTimeMillis();
+      var message = remaining > 0 ? inbox.poll(remaining, TimeUnit.MILLISECONDS) : null;
+      if (message == null) {
+        throw new IllegalStateException("timed out waiting for the server");
+      }
+      handle(message);
+      if (match.test(message)) {
+        return message;
+      }
+    }
+  }
+
+  /**
+   * Update the bot's state from a message received from the server
+   * @param message the message, or null
+   */
+  private void handle(String message) {
+    if (message == null) {
+      return;
+    }
+    if (message.startsWith("PIECE ")) {
+      pieces.add(Integer.parseInt(message.substring(6).trim()));
+    } else if (message.startsWith("USERS ")) {
+      users = message.split("\n").length;
+    } else if (message.equals("START")) {
+      started = true;
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+package uk.ac.soton.comp1206.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.NetworkMonitor;
+import uk.ac.soton.comp1206.server.LocalServer;
+import uk.ac.soton.comp1206.utility.Threads;
+
+/**
+ * The LoadGenerator runs many headless BotClients against a TetrECS server and reports the
+ * throughput and reply latency of each message type.
+ * <br>
+ * Options are given as key=value arguments:
+ * <ul>
+ *   <li>server - the server to connect to. If not given, an in-process LocalServer is started</li>
+ *   <li>clients - the number of bots (default 100)</li>
+ *   <li>channelSize - the number of bots in each channel (default 8)</li>
+ *   <li>moveDelay - the average time between moves in milliseconds (default 500)</li>
+ *   <li>moves - the number of moves each bot plays (default 50)</li>
+ *   <li>chatEvery - how many moves between chat messages, 0 for none (default 10)</li>
+ *   <li>rampUp - the time to spread the bot connections over in milliseconds (default 2000)</li>
+ *   <li>report - the time between progress reports in seconds (default 5)</li>
+ * </ul>
+ * Bots run on virtual threads where the runtime supports them. Run with
+ * -Dlog4j2.configurationFile=log4j2-loadtest.xml to keep per-message logging quiet, and with
+ * -Dtetrecs.binary=true or -Dtetrecs.deflate=true to compare the wire encodings. When the local
+ * server is used, the bytes it sends and receives on the wire are reported too.
+ */
+public class LoadGenerator {
+
+  private static final Logger logger = LogManager.getLogger(LoadGenerator.class);
+
+  /**
+   * The settings for a load test run
+   */
+  public static class Settings {
+    String server = null;
+    int clients = 100;
+    int channelSize = 8;
+    int moveDelay = 500;
+    int moves = 50;
+    int chatEvery = 10;
+    int rampUp = 2000;
+    int report = 5;
+
+    /**
+     * Read the settings from key=value arguments
+     * @param args the commandline arguments
+     * @return the settings
+     */
+    public static Settings parse(String[] args) {
+      var settings = new Settings();
+      for (String arg : args) {
+        var parts = arg.replaceFirst("^--", "").split("=", 2);
+        if (parts.length != 2) {
+          throw new IllegalArgumentException("Expected key=value but got " + arg);
+        }
+        switch (parts[0]) {
+          case "server" -> settings.server = parts[1];
+          case "clients" -> settings.clients = Integer.parseInt(parts[1]);
+          case "channelSize" -> settings.channelSize = Math.max(1, Integer.parseInt(parts[1]));
+          case "moveDelay" -> settings.moveDelay = Math.max(0, Integer.parseInt(parts[1]));
+          case "moves" -> settings.moves = Integer.parseInt(parts[1]);
+          case "chatEvery" -> settings.chatEvery = Integer.parseInt(parts[1]);
+          case "rampUp" -> settings.rampUp = Math.max(0, Integer.parseInt(parts[1]));
+          case "report" -> settings.report = Math.max(1, Integer.parseInt(parts[1]));
+          default -> throw new IllegalArgumentException("Unknown option " + parts[0]);
+        }
+      }
+      return settings;
+    }
+  }
+
+  /**
+   * Run a load test
+   * @param args the load test options
+   * @throws IOException if the local server cannot be started
+   * @throws InterruptedException if interrupted while running
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    var settings = Settings.parse(args);
+    var monitor = new NetworkMonitor();
+
+    //start a local server if no server was given
+    LocalServer localServer = null;
+    var server = settings.server;
+    if (server == null) {
+      localServer = new LocalServer(0);
+      localServer.start();
+      server = localServer.getAddress();
+    }
+    logger.info("Running {} bots against {}", settings.clients, server);
+
+    var executor = Threads.newPerTaskExecutor("bot");
+    var bots = new ArrayList<Future<?>>(settings.clients);
+    var started = System.nanoTime();
+    var nextReport = started + TimeUnit.SECONDS.toNanos(settings.report);
+    for (int id = 0; id < settings.clients; id++) {
+      var channel = "load" + (id / settings.channelSize);
+      var host = id % settings.channelSize == 0;
+      bots.add(executor.submit(new BotClient(id, server, channel, host, settings, monitor)));
+      if (settings.rampUp > 0) {
+        Thread.sleep(settings.rampUp / Math.max(1, settings.clients));
+      }
+    }
+
+    //wait for every bot to finish, reporting progress along the way
+    for (Future<?> bot : bots) {
+      while (!bot.isDone()) {
+        Thread.sleep(50);
+        if (System.nanoTime() >= nextReport) {
+          report(monitor, localServer, started);
+          nextReport += TimeUnit.SECONDS.toNanos(settings.report);
+        }
+      }
+    }
+    executor.shutdown();
+
+    logger.info("Final results");
+    report(monitor, localServer, started);
+    if (localServer != null) {
+      localServer.stop();
+    }
+  }
+
+  /**
+   * Log the network statistics shared by every bot
+   * @param monitor the shared network monitor
+   * @param localServer the local server, or null if testing a remote server
+   * @param started the start time from System.nanoTime
+   */
+  private static void report(NetworkMonitor monitor, LocalServer localServer, long started) {
+    logger.info("{}s: {} errors\n{}", String.format("%.1f", seconds(started)),
+        monitor.getReceivedCount("ERROR"), monitor.report());
+    if (localServer != null) {
+      logger.info("Wire: server received {} bytes, sent {} bytes", localServer.getBytesReceived(),
+          localServer.getBytesSent());
+    }
+  }
+
+  /**
+   * Get the seconds elapsed since a given time
+   * @param since the start time from System.nanoTime
+   * @return the elapsed seconds
+   */
+  private static double seconds(long since) {
+    return (System.nanoTime() - since) / 1e9;
+  }
+
+}
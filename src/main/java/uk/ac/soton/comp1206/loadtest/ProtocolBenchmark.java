@@ -0,0 +1,307 @@
+package uk.ac.soton.comp1206.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.BoardStatusEncoder;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.network.BinaryProtocol;
+
+/**
+ * The ProtocolBenchmark measures the size on the wire and the parse cost of the text and binary
+ * encodings, with and without permessage-deflate, for the messages one client sees during an
+ * eight player game.
+ * <br>
+ * The message stream is generated from a fixed seed so results can be compared between runs. Every
+ * binary message is also checked to decode back to the exact text it was encoded from.
+ * <br>
+ * Options are given as key=value arguments: moves - the number of moves to generate (default
+ * 20000), players - the number of players in the game (default 8).
+ */
+public class ProtocolBenchmark {
+
+  private static final Logger logger = LogManager.getLogger(ProtocolBenchmark.class);
+
+  /**
+   * Holds the results of timed work so that it cannot be optimised away
+   */
+  private static volatile int sink;
+
+  /**
+   * Run the benchmark
+   * @param args the benchmark options
+   * @throws IOException if compression fails
+   */
+  public static void main(String[] args) throws IOException {
+    var moves = 20000;
+    var players = 8;
+    for (String arg : args) {
+      var parts = arg.split("=", 2);
+      switch (parts[0]) {
+        case "moves" -> moves = Integer.parseInt(parts[1]);
+        case "players" -> players = Integer.parseInt(parts[1]);
+        default -> throw new IllegalArgumentException("Unknown option " + parts[0]);
+      }
+    }
+
+    var messages = generate(moves, players);
+    var text = new ArrayList<byte[]>(messages.size());
+    var binary = new ArrayList<byte[]>(messages.size());
+    for (String message : messages) {
+      var bytes = message.getBytes(StandardCharsets.UTF_8);
+      text.add(bytes);
+      var encoded = BinaryProtocol.encode(message);
+      if (encoded != null && !BinaryProtocol.decode(encoded).equals(message)) {
+        throw new IllegalStateException("Binary form does not round trip: " + message);
+      }
+      binary.add(encoded != null ? encoded : bytes);
+    }
+
+    logger.info("{} messages ({} moves, {} players)", messages.size(), moves, players);
+    logger.info(String.format("%-16s %12s %10s", "encoding", "bytes", "per msg"));
+    logSize("text", total(text), messages.size());
+    logSize("text+deflate", deflated(text), messages.size());
+    logSize("binary", total(binary), messages.size());
+    logSize("binary+deflate", deflated(binary), messages.size());
+
+    //parse cost of the board messages the server receives
+    var boards = new ArrayList<String>();
+    var boardBinaries = new ArrayList<byte[]>();
+    var encoder = new BoardStatusEncoder(false);
+    var grid = new Grid(5, 5);
+    var random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      grid.set(random.nextInt(5), random.nextInt(5), random.nextInt(16));
+      var board = encoder.encode(grid);
+      if (board != null) {
+        boards.add(board);
+        boardBinaries.add(BinaryProtocol.encode(board));
+      }
+    }
+    var scores = messages.stream().filter(m -> m.startsWith("SCORES ")).toList();
+    var scoreBinaries = scores.stream().map(BinaryProtocol::encode).toList();
+
+    logger.info(String.format("%-24s %10s", "parse", "ns/msg"));
+    for (int round = 0; round < 5; round++) {
+      //earlier rounds warm up the JIT, only the last is reported
+      var last = round == 4;
+      var textBoard = time(boards.size(), () -> {
+        var sum = 0;
+        for (String board : boards) {
+          sum += parseTextBoard(board).length;
+        }
+        return sum;
+      });
+      var binaryBoard = time(boards.size(), () -> {
+        var sum = 0;
+        for (byte[] board : boardBinaries) {
+          sum += BinaryProtocol.applyBoard(board, new int[0]).length;
+        }
+        return sum;
+      });
+      var textScores = time(scores.size(), () -> {
+        var sum = 0;
+        for (String message : scores) {
+          sum += parseTextScores(message);
+        }
+        return sum;
+      });
+      var binaryScores = time(scores.size(), () -> {
+        var sum = 0;
+        for (byte[] message : scoreBinaries) {
+          sum += parseTextScores(BinaryProtocol.decode(message));
+        }
+        return sum;
+      });
+      if (last) {
+        logger.info(String.format("%-24s %10.0f", "BOARD text", textBoard));
+        logger.info(String.format("%-24s %10.0f", "BOARD binary", binaryBoard));
+        logger.info(String.format("%-24s %10.0f", "SCORES text", textScores));
+        logger.info(String.format("%-24s %10.0f", "SCORES binary+text", binaryScores));
+      }
+    }
+  }
+
+  /**
+   * Generate the messages one client sends and receives while playing a game
+   * @param moves the number of moves
+   * @param players the number of players
+   * @return the messages
+   */
+  private static List<String> generate(int moves, int players) {
+    var random = new Random(42);
+    var messages = new ArrayList<String>();
+    var grids = new Grid[players];
+    var encoder = new BoardStatusEncoder(true);
+    var scores = new int[players];
+    var lives = new int[players];
+    for (int i = 0; i < players; i++) {
+      grids[i] = new Grid(5, 5);
+      lives[i] = 3;
+    }
+    for (int move = 0; move < moves; move++) {
+      var player = move % players;
+      var grid = grids[player];
+      //place a few blocks, and sometimes clear a line
+      var value = 1 + random.nextInt(15);
+      for (int i = 0; i < 3; i++) {
+        grid.set(random.nextInt(5), random.nextInt(5), value);
+      }
+      if (random.nextInt(4) == 0) {
+        var row = random.nextInt(5);
+        for (int x = 0; x < 5; x++) {
+          grid.set(x, row, 0);
+        }
+        scores[player] += 50 * (1 + random.nextInt(3));
+      }
+      if (random.nextInt(20) == 0) {
+        lives[player]--;
+      }
+      var name = "player" + player;
+      if (player == 0) {
+        //this client's own messages and replies
+        messages.add("SCORE " + scores[0]);
+        var board = encoder.encode(grid);
+        if (board != null) {
+          messages.add(board);
+        }
+        messages.add("PIECE " + random.nextInt(15));
+      } else {
+        //relayed from the other players, boards always in full
+        messages.add("SCORE " + name + ":" + scores[player]);
+        messages.add("LIVES " + name + ":" + lives[player]);
+        messages.add("BOARD " + name + ":" + fullBoard(grid));
+      }
+      if (move % (players * 5) == 0) {
+        var table = new StringBuilder("SCORES ");
+        for (int i = 0; i < players; i++) {
+          if (i > 0) {
+            table.append('\n');
+          }
+          table.append("player").append(i).append(':').append(scores[i]).append(':')
+              .append(lives[i] < 0 ? "DEAD" : String.valueOf(lives[i]));
+        }
+        messages.add(table.toString());
+      }
+    }
+    var hiscores = new StringBuilder("HISCORES ");
+    for (int i = 0; i < 10; i++) {
+      if (i > 0) {
+        hiscores.append('\n');
+      }
+      hiscores.append("player").append(i).append(':').append(10000 - i * 500);
+    }
+    messages.add(hiscores.toString());
+    return messages;
+  }
+
+  /**
+   * Build the board values the server relays for a grid
+   * @param grid the grid
+   * @return the values, each followed by a space
+   */
+  private static String fullBoard(Grid grid) {
+    var values = new StringBuilder();
+    for (int x = 0; x < grid.getCols(); x++) {
+      for (int y = 0; y < grid.getRows(); y++) {
+        values.append(grid.get(x, y)).append(' ');
+      }
+    }
+    return values.toString();
+  }
+
+  /**
+   * Parse a text board the way the server does
+   * @param message the BOARD message
+   * @return the board values
+   */
+  private static int[] parseTextBoard(String message) {
+    var tokens = message.substring(6).trim().split("\\s+");
+    var board = new int[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      board[i] = Integer.parseInt(tokens[i]);
+    }
+    return board;
+  }
+
+  /**
+   * Parse a SCORES message the way the MultiplayerGame does
+   * @param message the SCORES message
+   * @return the total of the scores, so the work cannot be skipped
+   */
+  private static int parseTextScores(String message) {
+    var sum = 0;
+    for (String score : message.replace("SCORES ", "").split("\n")) {
+      sum += Integer.parseInt(score.split(":")[1]);
+    }
+    return sum;
+  }
+
+  /**
+   * Time a task
+   * @param count the number of messages the task handles
+   * @param task the task, returning a result so its work is not optimised away
+   * @return the time per message in nanoseconds
+   */
+  private static double time(int count, IntSupplier task) {
+    var iterations = 200;
+    var started = System.nanoTime();
+    var result = 0;
+    for (int i = 0; i < iterations; i++) {
+      result += task.getAsInt();
+    }
+    var elapsed = System.nanoTime() - started;
+    sink = result;
+    return (double) elapsed / iterations / Math.max(1, count);
+  }
+
+  /**
+   * Get the total size of some messages
+   * @param messages the messages
+   * @return the total size in bytes
+   */
+  private static long total(List<byte[]> messages) {
+    return messages.stream().mapToLong(message -> message.length).sum();
+  }
+
+  /**
+   * Get the total size of some messages compressed as permessage-deflate with context takeover
+   * @param messages the messages
+   * @return the total compressed size in bytes
+   * @throws IOException if compression fails
+   */
+  private static long deflated(List<byte[]> messages) throws IOException {
+    var out = new ByteArrayOutputStream();
+    var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    var stream = new DeflaterOutputStream(out, deflater, true);
+    long total = 0;
+    for (byte[] message : messages) {
+      var before = out.size();
+      stream.write(message);
+      stream.flush();
+      //each message leaves off the four byte empty block that ends a flush
+      total += out.size() - before - 4;
+    }
+    deflater.end();
+    return total;
+  }
+
+  /**
+   * Log the size of an encoding
+   * @param name the encoding
+   * @param bytes the total size
+   * @param count the number of messages
+   */
+  private static void logSize(String name, long bytes, int count) {
+    logger.info(String.format("%-16s %12d %10.1f", name, bytes, (double) bytes / count));
+  }
+
+}
@@ -0,0 +1,435 @@
+package uk.ac.soton.comp1206.network;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The BinaryProtocol is a compact binary encoding of the highest volume TetrECS messages, used
+ * instead of text when both ends agree on the tetrecs-binary web socket subprotocol.
+ * <br>
+ * Each binary message starts with a single type byte. Numbers are written as variable length
+ * integers, board values are packed two to a byte and names are length prefixed UTF-8. Every binary
+ * message decodes back to exactly the text message it was encoded from, so the rest of the game
+ * only ever sees the text protocol. Messages of any other type, or which are not in the canonical
+ * text form, are not encoded and are sent as text.
+ * <br>
+ * The encoded types are BOARD (full, DELTA and relayed), SCORE, LIVES, PIECE, SCORES and HISCORES.
+ */
+public class BinaryProtocol {
+
+  /**
+   * The web socket subprotocol offered by clients and accepted by servers that speak this encoding
+   */
+  public static final String SUBPROTOCOL = "tetrecs-binary";
+
+  private static final int BOARD = 0x01;
+  private static final int BOARD_DELTA = 0x02;
+  private static final int SCORE = 0x03;
+  private static final int LIVES = 0x04;
+  private static final int PIECE = 0x11;
+  private static final int PLAYER_SCORE = 0x12;
+  private static final int PLAYER_LIVES = 0x13;
+  private static final int PLAYER_BOARD = 0x14;
+  private static final int SCORES = 0x15;
+  private static final int HISCORES = 0x16;
+
+  /**
+   * The largest board value that can be packed into half a byte
+   */
+  private static final int MAX_PACKED = 15;
+
+  /**
+   * Encode a text message
+   * @param message the text message
+   * @return the binary message, or null if this message should be sent as text
+   */
+  public static byte[] encode(String message) {
+    var space = message.indexOf(' ');
+    if (space < 0) {
+      return null;
+    }
+    var args = message.substring(space + 1);
+    var out = new ByteArrayOutputStream(message.length());
+    try {
+      switch (message.substring(0, space)) {
+        case "BOARD" -> {
+          if (args.startsWith("DELTA")) {
+            out.write(BOARD_DELTA);
+            writeDelta(out, args.substring(5));
+          } else if (args.indexOf(':') >= 0) {
+            var colon = args.indexOf(':');
+            out.write(PLAYER_BOARD);
+            writeString(out, args.substring(0, colon));
+            writeCells(out, args.substring(colon + 1));
+          } else {
+            out.write(BOARD);
+            writeCells(out, args);
+          }
+        }
+        case "SCORE", "LIVES" -> {
+          var score = message.startsWith("SCORE");
+          var colon = args.indexOf(':');
+          if (colon < 0) {
+            out.write(score ? SCORE : LIVES);
+          } else {
+            out.write(score ? PLAYER_SCORE : PLAYER_LIVES);
+            writeString(out, args.substring(0, colon));
+          }
+          writeSigned(out, number(args.substring(colon + 1)));
+        }
+        case "PIECE" -> {
+          out.write(PIECE);
+          writeSigned(out, number(args));
+        }
+        case "SCORES" -> {
+          out.write(SCORES);
+          var lines = lines(args);
+          writeVarint(out, lines.length);
+          for (String line : lines) {
+            var parts = line.split(":", -1);
+            if (parts.length != 3) {
+              return null;
+            }
+            writeString(out, parts[0]);
+            writeSigned(out, number(parts[1]));
+            writeString(out, parts[2]);
+          }
+        }
+        case "HISCORES" -> {
+          out.write(HISCORES);
+          var lines = lines(args);
+          writeVarint(out, lines.length);
+          for (String line : lines) {
+            var colon = line.lastIndexOf(':');
+            if (colon < 0) {
+              return null;
+            }
+            writeString(out, line.substring(0, colon));
+            writeSigned(out, number(line.substring(colon + 1)));
+          }
+        }
+        default -> {
+          return null;
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      //not in the canonical form, so it would not decode to the same text
+      return null;
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode a binary message back into its text form
+   * @param data the binary message
+   * @return the text message
+   * @throws IllegalArgumentException if the message is not valid
+   */
+  public static String decode(byte[] data) {
+    var in = new Input(data);
+    var text = new StringBuilder(data.length * 2);
+    var type = in.readByte();
+    switch (type) {
+      case BOARD -> {
+        text.append("BOARD ");
+        for (int value : in.readCells()) {
+          text.append(value).append(' ');
+        }
+      }
+      case BOARD_DELTA -> {
+        text.append("BOARD DELTA");
+        var count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+          text.append(' ').append(in.readVarint()).append(':').append(in.readByte());
+        }
+      }
+      case SCORE -> text.append("SCORE ").append(in.readSigned());
+      case LIVES -> text.append("LIVES ").append(in.readSigned());
+      case PIECE -> text.append("PIECE ").append(in.readSigned());
+      case PLAYER_SCORE, PLAYER_LIVES -> text.append(type == PLAYER_SCORE ? "SCORE " : "LIVES ")
+          .append(in.readString()).append(':').append(in.readSigned());
+      case PLAYER_BOARD -> {
+        text.append("BOARD ").append(in.readString()).append(':');
+        for (int value : in.readCells()) {
+          text.append(value).append(' ');
+        }
+      }
+      case SCORES -> {
+        text.append("SCORES ");
+        var count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+          if (i > 0) {
+            text.append('\n');
+          }
+          text.append(in.readString()).append(':').append(in.readSigned()).append(':')
+              .append(in.readString());
+        }
+      }
+      case HISCORES -> {
+        text.append("HISCORES ");
+        var count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+          if (i > 0) {
+            text.append('\n');
+          }
+          text.append(in.readString()).append(':').append(in.readSigned());
+        }
+      }
+      default -> throw new IllegalArgumentException("Unknown binary message type " + type);
+    }
+    in.finish();
+    return text.toString();
+  }
+
+  /**
+   * Whether a binary message is a full or DELTA board sent by a player
+   * @param data the binary message
+   * @return true if it can be applied with applyBoard
+   */
+  public static boolean isBoard(byte[] data) {
+    return data.length > 0 && (data[0] == BOARD || data[0] == BOARD_DELTA);
+  }
+
+  /**
+   * Apply a binary board message directly to a board, without going through the text form
+   * @param data the binary BOARD or DELTA message
+   * @param board the current board values, column by column
+   * @return the new board values: a new array for a full board, or the updated board for a DELTA
+   * @throws IllegalArgumentException if the message is not a valid board
+   */
+  public static int[] applyBoard(byte[] data, int[] board) {
+    var in = new Input(data);
+    var type = in.readByte();
+    if (type == BOARD) {
+      board = in.readCells();
+    } else if (type == BOARD_DELTA) {
+      var count = in.readVarint();
+      for (int i = 0; i < count; i++) {
+        var index = in.readVarint();
+        var value = in.readByte();
+        if (index >= 0 && index < board.length) {
+          board[index] = value;
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Not a board message");
+    }
+    in.finish();
+    return board;
+  }
+
+  /**
+   * Encode the board relayed to the other players, the binary form of "BOARD nickname:values"
+   * @param nickname the player the board belongs to
+   * @param board the board values, column by column
+   * @return the binary message, or null if the board has values which cannot be packed
+   */
+  public static byte[] encodePlayerBoard(String nickname, int[] board) {
+    var out = new ByteArrayOutputStream(board.length / 2 + nickname.length() + 4);
+    out.write(PLAYER_BOARD);
+    writeString(out, nickname);
+    try {
+      writeCells(out, board);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Write space terminated board values, as sent by the BoardStatusEncoder
+   * @param out the output
+   * @param values the values, each followed by a space
+   */
+  private static void writeCells(ByteArrayOutputStream out, String values) {
+    var cells = new int[values.length() / 2];
+    var count = 0;
+    var start = 0;
+    while (start < values.length()) {
+      var end = values.indexOf(' ', start);
+      if (end < 0) {
+        throw new IllegalArgumentException("Board values must end with a space");
+      }
+      cells[count++] = number(values.substring(start, end));
+      start = end + 1;
+    }
+    var packed = new int[count];
+    System.arraycopy(cells, 0, packed, 0, count);
+    writeCells(out, packed);
+  }
+
+  /**
+   * Write board values packed two to a byte
+   * @param out the output
+   * @param cells the values
+   */
+  private static void writeCells(ByteArrayOutputStream out, int[] cells) {
+    for (int value : cells) {
+      if (value < 0 || value > MAX_PACKED) {
+        throw new IllegalArgumentException("Board value out of range: " + value);
+      }
+    }
+    writeVarint(out, cells.length);
+    for (int i = 0; i < cells.length; i += 2) {
+      var high = cells[i];
+      var low = i + 1 < cells.length ? cells[i + 1] : 0;
+      out.write(high << 4 | low);
+    }
+  }
+
+  /**
+   * Write the changed cells of a DELTA board
+   * @param out the output
+   * @param pairs the index:value pairs, each preceded by a space
+   */
+  private static void writeDelta(ByteArrayOutputStream out, String pairs) {
+    if (pairs.isEmpty()) {
+      writeVarint(out, 0);
+      return;
+    }
+    if (pairs.charAt(0) != ' ') {
+      throw new IllegalArgumentException("Invalid DELTA");
+    }
+    var tokens = pairs.substring(1).split(" ", -1);
+    writeVarint(out, tokens.length);
+    for (String token : tokens) {
+      var colon = token.indexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException("Invalid DELTA cell " + token);
+      }
+      var index = number(token.substring(0, colon));
+      var value = number(token.substring(colon + 1));
+      if (index < 0 || value < 0 || value > 255) {
+        throw new IllegalArgumentException("Invalid DELTA cell " + token);
+      }
+      writeVarint(out, index);
+      out.write(value);
+    }
+  }
+
+  /**
+   * Write a length prefixed UTF-8 string
+   * @param out the output
+   * @param value the string
+   */
+  private static void writeString(ByteArrayOutputStream out, String value) {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarint(out, bytes.length);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Write a signed number, zig-zag encoded so small negative numbers stay small
+   * @param out the output
+   * @param value the number
+   */
+  private static void writeSigned(ByteArrayOutputStream out, int value) {
+    writeVarint(out, (value << 1) ^ (value >> 31));
+  }
+
+  /**
+   * Write an unsigned number seven bits at a time
+   * @param out the output
+   * @param value the number, treated as unsigned
+   */
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Split newline separated table rows. An empty table has no rows.
+   * @param table the rows
+   * @return each row
+   */
+  private static String[] lines(String table) {
+    return table.isEmpty() ? new String[0] : table.split("\n", -1);
+  }
+
+  /**
+   * Parse a number which must be written exactly as Integer.toString would write it, so that it
+   * decodes back to the same text
+   * @param value the text
+   * @return the number
+   * @throws IllegalArgumentException if the number is not in the canonical form
+   */
+  private static int number(String value) {
+    var number = Integer.parseInt(value);
+    if (!Integer.toString(number).equals(value)) {
+      throw new IllegalArgumentException("Not a canonical number: " + value);
+    }
+    return number;
+  }
+
+  /**
+   * Reads the fields of a binary message
+   */
+  private static class Input {
+    private final byte[] data;
+    private int position = 0;
+
+    Input(byte[] data) {
+      this.data = data;
+    }
+
+    int readByte() {
+      if (position >= data.length) {
+        throw new IllegalArgumentException("Binary message is truncated");
+      }
+      return data[position++] & 0xFF;
+    }
+
+    int readVarint() {
+      var value = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        var b = readByte();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Number is too long");
+    }
+
+    int readSigned() {
+      var value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    String readString() {
+      var length = readVarint();
+      if (length < 0 || length > data.length - position) {
+        throw new IllegalArgumentException("Binary message is truncated");
+      }
+      var value = new String(data, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    int[] readCells() {
+      var count = readVarint();
+      if (count < 0 || (count + 1L) / 2 > data.length - position) {
+        throw new IllegalArgumentException("Binary message is truncated");
+      }
+      var cells = new int[count];
+      for (int i = 0; i < count; i += 2) {
+        var packed = readByte();
+        cells[i] = packed >>> 4;
+        if (i + 1 < count) {
+          cells[i + 1] = packed & 0x0F;
+        }
+      }
+      return cells;
+    }
+
+    void finish() {
+      if (position != data.length) {
+        throw new IllegalArgumentException("Unexpected data after binary message");
+      }
+    }
+  }
+
+}
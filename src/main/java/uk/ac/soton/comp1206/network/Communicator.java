@@ -6,8 +6,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.CommunicationsListener;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Uses web sockets to talk to a web socket server and relays communication to attached listeners
@@ -21,57 +27,84 @@ public class Communicator {
     /**
      * Attached communication listeners listening to messages on this Communicator. Each will be sent any messages.
      */
-    private final List<CommunicationsListener> handlers = new ArrayList<>();
+    private final List<CommunicationsListener> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listeners which outlive a scene, such as caches, and so are not removed by clearListeners
+     */
+    private final List<CommunicationsListener> services = new CopyOnWriteArrayList<>();
 
     private WebSocket ws = null;
 
     /**
-     * Create a new communicator to the given web socket server
+     * Collects message counts, byte totals and latencies for this communicator
+     */
+    private final NetworkMonitor monitor;
+
+    /**
+     * Hands updates caused by messages over to the JavaFX thread in batches
+     */
+    private final FxDelivery delivery;
+
+    /**
+     * Requests still waiting for a reply, by the reply type expected. Guarded by itself.
+     */
+    private final Map<String, ArrayDeque<Pending>> pending = new HashMap<>();
+
+    /**
+     * Requests older than this (in milliseconds) are assumed to have been answered with an error
+     */
+    private static final long PENDING_TIMEOUT = 30000;
+
+    /**
+     * The time between ping frames sent to measure the round trip time, in milliseconds
+     */
+    private static final long PING_INTERVAL = Long.getLong("tetrecs.pingInterval", 10000);
+
+    /**
+     * Whether to offer the permessage-deflate extension. Off unless tetrecs.deflate is true.
+     */
+    private static final boolean DEFLATE = Boolean.getBoolean("tetrecs.deflate");
+
+    /**
+     * Whether to offer the tetrecs-binary subprotocol. Off unless tetrecs.binary is true.
+     */
+    private static final boolean BINARY = Boolean.getBoolean("tetrecs.binary");
+
+    /**
+     * Whether the server agreed to the tetrecs-binary subprotocol
+     */
+    private boolean binary = false;
+
+    /**
+     * A request waiting for its reply
+     */
+    private static class Pending {
+        final String request;
+        final long sentAt;
+
+        Pending(String request, long sentAt) {
+            this.request = request;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * Create a new communicator to the given web socket server. If the tetrecs.netstats system
+     * property is set, network statistics are logged every that many seconds.
      *
      * @param server server to connect to
      */
     public Communicator(String server) {
+        this.monitor = new NetworkMonitor();
+        this.delivery = new FxDelivery(monitor);
+        var reportInterval = Integer.getInteger("tetrecs.netstats", 0);
+        if (reportInterval > 0) {
+            monitor.startReporting(reportInterval);
+        }
 
         try {
-            var socketFactory = new WebSocketFactory();
-
-            //Connect to the server
-            ws = socketFactory.createSocket(server);
-            ws.connect();
-            logger.info("Connected to " + server);
-
-            //When a message is received, call the receive method
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    Communicator.this.receive(websocket, message);
-                }
-                @Override
-                public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
-                    logger.info("Ping? Pong!");
-                }
-            });
-
-            //Error handling
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    if(message.startsWith("ERROR")) {
-                        logger.error(message);
-                    }
-                }
-                @Override
-                public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
-                    logger.error("Callback Error:" + throwable.getMessage());
-                    throwable.printStackTrace();
-                }
-                @Override
-                public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
-                    logger.error("Error:" + e.getMessage());
-                    e.printStackTrace();
-                }
-            });
-
+            open(server);
         } catch (Exception e){
             logger.error("Socket error: " + e.getMessage());
             e.printStackTrace();
@@ -82,14 +115,138 @@ public class Communicator {
         }
     }
 
+    /**
+     * Create a communicator which has not yet connected
+     * @param monitor the monitor to record statistics into
+     */
+    private Communicator(NetworkMonitor monitor) {
+        this.monitor = monitor;
+        this.delivery = new FxDelivery(monitor);
+    }
+
+    /**
+     * Create a new communicator to the given web socket server without any user interface. Used by
+     * headless clients, which need to handle a failed connection themselves.
+     *
+     * @param server server to connect to
+     * @return the connected communicator
+     * @throws IOException if the socket cannot be created
+     * @throws WebSocketException if the connection fails
+     */
+    public static Communicator connect(String server) throws IOException, WebSocketException {
+        return connect(server, new NetworkMonitor());
+    }
+
+    /**
+     * Create a new communicator to the given web socket server without any user interface, recording
+     * statistics into the given monitor. A monitor can be shared by many communicators.
+     *
+     * @param server server to connect to
+     * @param monitor the monitor to record statistics into
+     * @return the connected communicator
+     * @throws IOException if the socket cannot be created
+     * @throws WebSocketException if the connection fails
+     */
+    public static Communicator connect(String server, NetworkMonitor monitor)
+        throws IOException, WebSocketException {
+        var communicator = new Communicator(monitor);
+        communicator.open(server);
+        return communicator;
+    }
+
+    /**
+     * Connect to the server and attach the socket listeners
+     *
+     * @param server server to connect to
+     * @throws IOException if the socket cannot be created
+     * @throws WebSocketException if the connection fails
+     */
+    private void open(String server) throws IOException, WebSocketException {
+        var socketFactory = new WebSocketFactory();
+
+        //Connect to the server
+        ws = socketFactory.createSocket(server);
+
+        //Send ping frames carrying the send time, to measure the round trip time from the pongs
+        ws.setPingPayloadGenerator(() ->
+            Long.toString(System.nanoTime()).getBytes(StandardCharsets.US_ASCII));
+        ws.setPingInterval(PING_INTERVAL);
+
+        //Offer compression and the binary encoding. Servers which do not support them ignore them.
+        if (DEFLATE) {
+            ws.addExtension(WebSocketExtension.PERMESSAGE_DEFLATE);
+        }
+        if (BINARY) {
+            ws.addProtocol(BinaryProtocol.SUBPROTOCOL);
+        }
+
+        ws.connect();
+        binary = BinaryProtocol.SUBPROTOCOL.equals(ws.getAgreedProtocol());
+        logger.info("Connected to " + server + (binary ? " using binary messages" : ""));
+
+        //When a message is received, call the receive method
+        ws.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                Communicator.this.receive(websocket, message);
+            }
+            @Override
+            public void onBinaryMessage(WebSocket websocket, byte[] binary) throws Exception {
+                Communicator.this.receive(websocket, binary);
+            }
+            @Override
+            public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
+                logger.debug("Ping? Pong!");
+            }
+            @Override
+            public void onPongFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
+                Communicator.this.pong(webSocketFrame);
+            }
+        });
+
+        //Error handling
+        ws.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                if(message.startsWith("ERROR")) {
+                    logger.error(message);
+                }
+            }
+            @Override
+            public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
+                logger.error("Callback Error:" + throwable.getMessage());
+                throwable.printStackTrace();
+            }
+            @Override
+            public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
+                logger.error("Error:" + e.getMessage());
+                e.printStackTrace();
+            }
+        });
+    }
+
     /** Send a message to the server
      *
      * @param message Message to send
      */
     public void send(String message) {
-        logger.info("Sending message: " + message);
+        logger.debug("Sending message: {}", message);
+
+        var type = NetworkMonitor.type(message);
+        var encoded = binary ? BinaryProtocol.encode(message) : null;
+        monitor.sent(type, encoded != null ? encoded.length : NetworkMonitor.encodedLength(message));
+        var reply = NetworkMonitor.REPLIES.get(type);
+        if (reply != null) {
+            synchronized (pending) {
+                pending.computeIfAbsent(reply, k -> new ArrayDeque<>()).add(new Pending(type, System.nanoTime()));
+            }
+        }
 
-        ws.sendText(message);
+        if (encoded != null) {
+            ws.sendBinary(encoded);
+        } else {
+            ws.sendText(message);
+        }
     }
 
     /**
@@ -101,10 +258,44 @@ public class Communicator {
     }
 
     /**
-     * Clear all current listeners
+     * Add a listener which stays attached when the scene changes
+     * @param listener the listener to add
+     */
+    public void addServiceListener(CommunicationsListener listener) {
+        this.services.add(listener);
+    }
+
+    /**
+     * Get the monitor holding the statistics for this communicator
+     * @return the network monitor
+     */
+    public NetworkMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Get the delivery stage which listeners use to update the user interface
+     * @return the delivery stage
+     */
+    public FxDelivery getDelivery() {
+        return delivery;
+    }
+
+    /**
+     * Disconnect from the server
+     */
+    public void disconnect() {
+        ws.disconnect();
+    }
+
+    /**
+     * Clear all current listeners, and drop the updates they posted which have not yet run
      */
     public void clearListeners() {
-        this.handlers.clear();
+        synchronized (handlers) {
+            this.handlers.clear();
+            delivery.dropSceneUpdates();
+        }
     }
 
     /** Receive a message from the server. Relay to any attached listeners
@@ -113,11 +304,99 @@ public class Communicator {
      * @param message the message that was received
      */
     private void receive(WebSocket websocket, String message) {
-        logger.info("Received: " + message);
+        deliver(message, NetworkMonitor.encodedLength(message));
+    }
 
-        for(CommunicationsListener handler : handlers) {
-            handler.receiveCommunication(message);
+    /** Receive a binary message from the server. Relay its text form to any attached listeners
+     *
+     * @param websocket the socket
+     * @param binary the binary message that was received
+     */
+    private void receive(WebSocket websocket, byte[] binary) {
+        String message;
+        try {
+            message = BinaryProtocol.decode(binary);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid binary message: " + e.getMessage());
+            return;
+        }
+        deliver(message, binary.length);
+    }
+
+    /**
+     * Record a received message and relay it to any attached listeners
+     *
+     * @param message the message that was received
+     * @param bytes the size of the message as received
+     */
+    private void deliver(String message, int bytes) {
+        logger.debug("Received: {}", message);
+
+        var type = NetworkMonitor.type(message);
+        monitor.received(type, bytes);
+        replied(type);
+
+        for(CommunicationsListener service : services) {
+            service.receiveCommunication(message);
+        }
+        //the listeners and the scene generation their updates belong to are taken together, so
+        //updates from a scene cleared while its listeners run are dropped
+        Iterator<CommunicationsListener> scene;
+        int generation;
+        synchronized (handlers) {
+            scene = handlers.iterator();
+            generation = delivery.getGeneration();
+        }
+        delivery.dispatch(generation, () -> scene.forEachRemaining(
+            handler -> handler.receiveCommunication(message)));
+    }
+
+    /**
+     * Time the oldest request waiting for the given reply type, discarding any that have waited so
+     * long they must have been answered with an error instead. An ERROR does not say which request
+     * failed, so every request still waiting is forgotten rather than risk timing the wrong one.
+     *
+     * @param reply the reply type received
+     */
+    private void replied(String reply) {
+        var now = System.nanoTime();
+        Pending request = null;
+        synchronized (pending) {
+            if (reply.equals("ERROR")) {
+                pending.clear();
+                return;
+            }
+            var waiting = pending.get(reply);
+            while (waiting != null && !waiting.isEmpty()) {
+                request = waiting.poll();
+                if ((now - request.sentAt) / 1000000 <= PENDING_TIMEOUT) {
+                    break;
+                }
+                request = null;
+            }
+        }
+        if (request != null) {
+            monitor.latency(request.request, (now - request.sentAt) / 1000);
+        }
+    }
+
+    /**
+     * Record the round trip time of a ping from the send time carried in its pong
+     *
+     * @param frame the pong frame
+     */
+    private void pong(WebSocketFrame frame) {
+        var payload = frame.getPayloadText();
+        if (payload == null) {
+            logger.debug("Unsolicited pong");
+            return;
+        }
+        try {
+            var sentAt = Long.parseLong(payload);
+            monitor.latency(NetworkMonitor.ROUND_TRIP, (System.nanoTime() - sentAt) / 1000);
+        } catch (NumberFormatException e) {
+            logger.debug("Unsolicited pong");
         }
     }
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,232 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.application.Platform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The FxDelivery hands updates caused by messages from the server over to the JavaFX thread.
+ * <br>
+ * Updates posted from any thread are gathered into a batch, which runs as a single task on the
+ * JavaFX thread, so a burst of messages costs one turn of the JavaFX thread rather than one each.
+ * An update which carries the whole of some state, such as the latest SCORES, can be posted with a
+ * key; a later update with the same key in the same batch replaces it, so only the newest runs.
+ * Updates otherwise run in the order they were posted.
+ * <br>
+ * Updates posted by a scene are dropped once the scene's listeners are cleared, even part way
+ * through a batch, so a scene change caused by one update never lets the old scene's remaining
+ * updates run after its cleanup. An update posted by a listener belongs to the scene current when
+ * the Communicator dispatched the message to it, so a listener still running when its scene is
+ * cleared cannot post into the next scene. Updates posted for services, which outlive scenes,
+ * always run.
+ * <br>
+ * The size of each batch, and the number of updates replaced, are counted by the NetworkMonitor.
+ */
+public class FxDelivery {
+
+  private static final Logger logger = LogManager.getLogger(FxDelivery.class);
+
+  private final NetworkMonitor monitor;
+
+  /**
+   * The generation of updates posted for services, which are never dropped
+   */
+  private static final int SERVICE = -1;
+
+  /**
+   * The updates waiting to run, with replaced updates set to null. Guarded by this.
+   */
+  private List<Runnable> batch = new ArrayList<>();
+
+  /**
+   * The scene generation each update in the batch was posted in, or SERVICE. Guarded by this.
+   */
+  private int[] generations = new int[16];
+
+  /**
+   * The current scene generation, moved on each time a scene's updates are dropped
+   */
+  private volatile int generation = 0;
+
+  /**
+   * The scene generation the message whose listeners are running on each thread was dispatched in,
+   * or null when no listeners are running
+   */
+  private final ThreadLocal<Integer> dispatching = new ThreadLocal<>();
+
+  /**
+   * The position in the batch of the latest update posted with each key. Guarded by this.
+   */
+  private final Map<String, Integer> latest = new HashMap<>();
+
+  /**
+   * The number of updates replaced in the batch, and whether the batch is scheduled to run.
+   * Guarded by this.
+   */
+  private int superseded = 0;
+  private boolean scheduled = false;
+
+  /**
+   * Create a delivery stage
+   * @param monitor the monitor to count batches in
+   */
+  public FxDelivery(NetworkMonitor monitor) {
+    this.monitor = monitor;
+  }
+
+  /**
+   * Run an update from the current scene on the JavaFX thread with the next batch, unless the
+   * scene's listeners are cleared first. May be called from any thread.
+   * @param update the update
+   */
+  public void post(Runnable update) {
+    add(null, update, sceneGeneration());
+  }
+
+  /**
+   * Run an update from the current scene on the JavaFX thread with the next batch, in place of any
+   * update with the same key which has not yet run, unless the scene's listeners are cleared first.
+   * May be called from any thread.
+   * @param key what the update replaces, such as the message type
+   * @param update the update
+   */
+  public void postLatest(String key, Runnable update) {
+    add(key, update, sceneGeneration());
+  }
+
+  /**
+   * Run an update from a service on the JavaFX thread with the next batch. May be called from any
+   * thread.
+   * @param update the update
+   */
+  public void postForService(Runnable update) {
+    add(null, update, SERVICE);
+  }
+
+  /**
+   * Run an update from a service on the JavaFX thread with the next batch, in place of any update
+   * with the same key which has not yet run. May be called from any thread.
+   * @param key what the update replaces
+   * @param update the update
+   */
+  public void postLatestForService(String key, Runnable update) {
+    add(key, update, SERVICE);
+  }
+
+  /**
+   * Drop every update posted by the current scene which has not yet run, including the rest of a
+   * batch which is running. Called when the scene's listeners are cleared.
+   */
+  public void dropSceneUpdates() {
+    generation++;
+  }
+
+  /**
+   * Get the current scene generation
+   * @return the generation
+   */
+  int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Run a message's scene listeners, so the updates they post belong to the scene generation the
+   * message was dispatched in, even if the scene is cleared while they run
+   * @param dispatched the scene generation when the message was dispatched
+   * @param listeners runs the listeners
+   */
+  void dispatch(int dispatched, Runnable listeners) {
+    dispatching.set(dispatched);
+    try {
+      listeners.run();
+    } finally {
+      dispatching.remove();
+    }
+  }
+
+  /**
+   * Get the scene generation an update posted now belongs to
+   * @return the generation the running listeners were dispatched in, or else the current one
+   */
+  private int sceneGeneration() {
+    var dispatched = dispatching.get();
+    return dispatched != null ? dispatched : generation;
+  }
+
+  /**
+   * Add an update to the batch, scheduling the batch if it is the first
+   * @param key the key of the update, or null if it never replaces another
+   * @param update the update
+   * @param posted the scene generation the update was posted in, or SERVICE
+   */
+  private void add(String key, Runnable update, int posted) {
+    synchronized (this) {
+      if (key != null) {
+        var replaced = latest.put(key, batch.size());
+        if (replaced != null) {
+          batch.set(replaced, null);
+          superseded++;
+        }
+      }
+      if (batch.size() == generations.length) {
+        generations = Arrays.copyOf(generations, generations.length * 2);
+      }
+      generations[batch.size()] = posted;
+      batch.add(update);
+      if (scheduled) {
+        return;
+      }
+      scheduled = true;
+    }
+    Platform.runLater(this::flush);
+  }
+
+  /**
+   * Run the updates in the batch, in order, skipping those which were replaced and those from a
+   * scene which has since been cleared up
+   */
+  private void flush() {
+    List<Runnable> updates;
+    int[] posted;
+    int replaced;
+    synchronized (this) {
+      updates = batch;
+      posted = generations;
+      replaced = superseded;
+      batch = new ArrayList<>();
+      generations = new int[16];
+      latest.clear();
+      superseded = 0;
+      scheduled = false;
+    }
+    var delivered = 0;
+    var dropped = 0;
+    for (var i = 0; i < updates.size(); i++) {
+      var update = updates.get(i);
+      if (update == null) {
+        continue;
+      }
+      //checked before each update, as the one before may have changed the scene
+      if (posted[i] != SERVICE && posted[i] != generation) {
+        dropped++;
+        continue;
+      }
+      delivered++;
+      try {
+        update.run();
+      } catch (RuntimeException e) {
+        //one failed update does not lose the rest of the batch
+        logger.error("Update from the server failed", e);
+      }
+    }
+    monitor.delivered(delivered, replaced);
+    logger.debug("Delivered {} updates in one batch, {} replaced, {} dropped", delivered, replaced,
+        dropped);
+  }
+
+}
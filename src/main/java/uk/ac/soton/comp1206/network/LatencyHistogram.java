@@ -0,0 +1,141 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, thread safe latency histogram using log-linear buckets, in the style of an HDR
+ * histogram.
+ * <br>
+ * Values are recorded in microseconds. Each power of two is split into 32 sub-buckets, so any
+ * percentile is accurate to within about 3% while the histogram never allocates after creation.
+ */
+public class LatencyHistogram {
+
+  /**
+   * The number of sub-buckets per power of two, as a number of bits
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * Enough buckets to hold any positive long value
+   */
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record a single latency
+   * @param micros the latency in microseconds
+   */
+  public void record(long micros) {
+    if (micros < 0) {
+      micros = 0;
+    }
+    counts.incrementAndGet(index(micros));
+    total.incrementAndGet();
+    sum.addAndGet(micros);
+    max.accumulateAndGet(micros, Math::max);
+  }
+
+  /**
+   * Get the number of latencies recorded
+   * @return the count
+   */
+  public long getCount() {
+    return total.get();
+  }
+
+  /**
+   * Get the largest latency recorded
+   * @return the maximum in microseconds
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Get the mean latency recorded
+   * @return the mean in microseconds
+   */
+  public double getMean() {
+    var count = total.get();
+    return count == 0 ? 0 : (double) sum.get() / count;
+  }
+
+  /**
+   * Get the latency at the given percentile
+   * @param percentile the percentile, from 0 to 100
+   * @return the latency in microseconds, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double percentile) {
+    var count = total.get();
+    if (count == 0) {
+      return 0;
+    }
+    var target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(upperBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Clear every recorded latency
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    total.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  /**
+   * Summarise the histogram in milliseconds
+   * @return the count, p50, p99 and max latency
+   */
+  @Override
+  public String toString() {
+    return String.format("n=%d p50=%.2fms p99=%.2fms max=%.2fms", getCount(),
+        getPercentile(50) / 1000.0, getPercentile(99) / 1000.0, getMax() / 1000.0);
+  }
+
+  /**
+   * Get the bucket a value is counted in
+   * @param value the value
+   * @return the bucket index
+   */
+  private static int index(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    var shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /**
+   * Get the largest value counted in a bucket
+   * @param index the bucket index
+   * @return the upper bound of the bucket
+   */
+  private static long upperBound(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    var shift = index / SUB_BUCKETS - 1;
+    long mantissa = index - (long) shift * SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+}
@@ -0,0 +1,294 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The NetworkMonitor collects statistics about the messages sent and received by one or more
+ * Communicators.
+ * <br>
+ * It counts messages and bytes by message type, times each request against its reply (for example
+ * PIECE against the PIECE reply, or HISCORES against the HISCORES reply), and records the round trip
+ * time of web socket ping frames. A summary can be logged periodically with startReporting.
+ */
+public class NetworkMonitor {
+
+  private static final Logger logger = LogManager.getLogger(NetworkMonitor.class);
+
+  /**
+   * The reply type the server sends for each request type which is timed. Only requests whose reply
+   * is never sent for any other reason are timed: JOIN, NICK, USERS and NEWSCORE are also pushed by
+   * the server when other players act, so they would be matched to the wrong request.
+   */
+  public static final Map<String, String> REPLIES = Map.ofEntries(
+      Map.entry("LIST", "CHANNELS"),
+      Map.entry("PART", "PARTED"),
+      Map.entry("PIECE", "PIECE"),
+      Map.entry("SCORES", "SCORES"),
+      Map.entry("HISCORES", "HISCORES"),
+      Map.entry("HISCOREPAGE", "HISCOREPAGE")
+  );
+
+  /**
+   * The name the round trip time of ping frames is recorded under
+   */
+  public static final String ROUND_TRIP = "PING";
+
+  private final Map<String, Counter> sent = new ConcurrentHashMap<>();
+  private final Map<String, Counter> received = new ConcurrentHashMap<>();
+  private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+  /**
+   * Batches of updates handed to the JavaFX thread by FxDelivery
+   */
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder superseded = new LongAdder();
+  private final LongAccumulator largestBatch = new LongAccumulator(Long::max, 0);
+
+  private ScheduledExecutorService reporter;
+  private long lastReport = System.nanoTime();
+  private long lastSentBytes = 0;
+  private long lastReceivedBytes = 0;
+
+  /**
+   * The number of messages and bytes of a single message type
+   */
+  private static class Counter {
+    final LongAdder messages = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+  }
+
+  /**
+   * Count a message sent
+   * @param type the message type
+   * @param bytes the encoded size of the message
+   */
+  public void sent(String type, int bytes) {
+    var counter = sent.computeIfAbsent(type, k -> new Counter());
+    counter.messages.increment();
+    counter.bytes.add(bytes);
+  }
+
+  /**
+   * Count a message received
+   * @param type the message type
+   * @param bytes the encoded size of the message
+   */
+  public void received(String type, int bytes) {
+    var counter = received.computeIfAbsent(type, k -> new Counter());
+    counter.messages.increment();
+    counter.bytes.add(bytes);
+  }
+
+  /**
+   * Record the time between a request and its reply
+   * @param request the request type
+   * @param micros the latency in microseconds
+   */
+  public void latency(String request, long micros) {
+    latencies.computeIfAbsent(request, k -> new LatencyHistogram()).record(micros);
+  }
+
+  /**
+   * Get the number of messages of a type sent
+   * @param type the message type
+   * @return the number sent
+   */
+  public long getSentCount(String type) {
+    var counter = sent.get(type);
+    return counter == null ? 0 : counter.messages.sum();
+  }
+
+  /**
+   * Get the number of messages of a type received
+   * @param type the message type
+   * @return the number received
+   */
+  public long getReceivedCount(String type) {
+    var counter = received.get(type);
+    return counter == null ? 0 : counter.messages.sum();
+  }
+
+  /**
+   * Get the total number of messages sent
+   * @return the number sent
+   */
+  public long getSentCount() {
+    return sent.values().stream().mapToLong(counter -> counter.messages.sum()).sum();
+  }
+
+  /**
+   * Get the total number of messages received
+   * @return the number received
+   */
+  public long getReceivedCount() {
+    return received.values().stream().mapToLong(counter -> counter.messages.sum()).sum();
+  }
+
+  /**
+   * Get the total number of bytes sent
+   * @return the bytes sent
+   */
+  public long getSentBytes() {
+    return sent.values().stream().mapToLong(counter -> counter.bytes.sum()).sum();
+  }
+
+  /**
+   * Get the total number of bytes received
+   * @return the bytes received
+   */
+  public long getReceivedBytes() {
+    return received.values().stream().mapToLong(counter -> counter.bytes.sum()).sum();
+  }
+
+  /**
+   * Get the request to reply latency of a request type
+   * @param request the request type, or ROUND_TRIP for ping frames
+   * @return the histogram, or null if no replies have been timed
+   */
+  public LatencyHistogram getLatency(String request) {
+    return latencies.get(request);
+  }
+
+  /**
+   * Count a batch of updates delivered to the JavaFX thread
+   * @param updates the number of updates run
+   * @param replaced the number of updates replaced by newer ones before the batch ran
+   */
+  public void delivered(int updates, int replaced) {
+    batches.increment();
+    delivered.add(updates);
+    superseded.add(replaced);
+    largestBatch.accumulate(updates);
+  }
+
+  /**
+   * Get the number of batches of updates delivered to the JavaFX thread
+   * @return the number of batches
+   */
+  public long getDeliveredBatches() {
+    return batches.sum();
+  }
+
+  /**
+   * Get the number of updates delivered to the JavaFX thread
+   * @return the number of updates
+   */
+  public long getDeliveredUpdates() {
+    return delivered.sum();
+  }
+
+  /**
+   * Log a report every given number of seconds until stopReporting is called
+   * @param seconds the time between reports
+   */
+  public synchronized void startReporting(int seconds) {
+    if (reporter != null) {
+      return;
+    }
+    reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      var thread = new Thread(runnable, "network-monitor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    reporter.scheduleAtFixedRate(() -> logger.info(report()), seconds, seconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop logging periodic reports
+   */
+  public synchronized void stopReporting() {
+    if (reporter != null) {
+      reporter.shutdownNow();
+      reporter = null;
+    }
+  }
+
+  /**
+   * Build a report of the messages, bytes and latency of each message type, along with the byte
+   * rates since the previous report
+   * @return the report
+   */
+  public synchronized String report() {
+    var now = System.nanoTime();
+    var seconds = Math.max(0.001, (now - lastReport) / 1e9);
+    var sentBytes = getSentBytes();
+    var receivedBytes = getReceivedBytes();
+    var report = new StringBuilder();
+    report.append(String.format("Network: sent %d msgs/%d bytes (%.0f B/s), received %d msgs/%d"
+            + " bytes (%.0f B/s)", getSentCount(), sentBytes, (sentBytes - lastSentBytes) / seconds,
+        getReceivedCount(), receivedBytes, (receivedBytes - lastReceivedBytes) / seconds));
+    lastReport = now;
+    lastSentBytes = sentBytes;
+    lastReceivedBytes = receivedBytes;
+
+    var deliveredBatches = getDeliveredBatches();
+    if (deliveredBatches > 0) {
+      report.append(String.format("%n  FX delivery: %d updates in %d batches (%.1f per batch, largest"
+              + " %d), %d replaced", getDeliveredUpdates(), deliveredBatches,
+          (double) getDeliveredUpdates() / deliveredBatches, largestBatch.get(), superseded.sum()));
+    }
+
+    var types = new TreeSet<String>();
+    types.addAll(sent.keySet());
+    types.addAll(received.keySet());
+    types.addAll(latencies.keySet());
+    for (String type : types) {
+      var out = sent.get(type);
+      var in = received.get(type);
+      report.append(String.format("%n  %-9s sent %8d (%9d B)  received %8d (%9d B)", type,
+          out == null ? 0 : out.messages.sum(), out == null ? 0 : out.bytes.sum(),
+          in == null ? 0 : in.messages.sum(), in == null ? 0 : in.bytes.sum()));
+      var latency = latencies.get(type);
+      if (latency != null) {
+        report.append("  ").append(latency);
+      }
+    }
+    return report.toString();
+  }
+
+  /**
+   * Get the type of a message, which is its first word
+   * @param message the message
+   * @return the type
+   */
+  public static String type(String message) {
+    var space = message.indexOf(' ');
+    return space < 0 ? message : message.substring(0, space);
+  }
+
+  /**
+   * Get the UTF-8 encoded length of a message without encoding it
+   * @param message the message
+   * @return the length in bytes
+   */
+  public static int encodedLength(String message) {
+    var length = message.length();
+    var bytes = length;
+    for (int i = 0; i < length; i++) {
+      var c = message.charAt(i);
+      if (c >= 0x800) {
+        if (Character.isHighSurrogate(c)) {
+          //a surrogate pair is four bytes in total
+          bytes += 2;
+          i++;
+        } else {
+          bytes += 2;
+        }
+      } else if (c >= 0x80) {
+        bytes += 1;
+      }
+    }
+    return bytes;
+  }
+
+}
@@ -1,6 +1,7 @@
 package uk.ac.soton.comp1206.scene;
 
 import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
@@ -44,11 +45,67 @@ public abstract class BaseScene {
     public abstract void build();
 
     /**
-     * Create a new JavaFX scene using the root contained within this scene
+     * Clean up this scene when it is replaced by another, such as stopping any timers it started.
+     * Does nothing by default.
+     */
+    public void cleanup() {
+    }
+
+    /**
+     * Release everything the scene holds once it will not be shown again, such as game timers,
+     * bindings to longer lived objects and listeners which refer back to the scene. Called after
+     * cleanup when the scene is replaced, unless it is kept to be reused. Does nothing by default.
+     */
+    public void dispose() {
+    }
+
+    /**
+     * Called when the window goes idle, by losing focus or being minimised, so the scene can stop
+     * work nobody is watching. Called again if an idle window is then minimised. Does nothing by
+     * default.
+     * @param hidden true if the window is minimised, false if it is only in the background
+     */
+    public void windowIdle(boolean hidden) {
+    }
+
+    /**
+     * Called when an idle window is focused again, to restart whatever windowIdle stopped. Does
+     * nothing by default.
+     */
+    public void windowActive() {
+    }
+
+    /**
+     * Whether this scene keeps no state between visits, so the GameWindow can build it once and show
+     * it again. A reused scene is reset before it is shown again. False by default.
+     * @return true if the scene can be reused
+     */
+    public boolean isReusable() {
+        return false;
+    }
+
+    /**
+     * Put a reused scene back how it was when it was built, before it is shown again. Called instead
+     * of build, and followed by initialise as usual. Does nothing by default.
+     */
+    public void reset() {
+    }
+
+    /**
+     * Create a new JavaFX scene using the root contained within this scene. A reused scene keeps its
+     * JavaFX scene, unless the window has changed size since it was last shown.
      * @return JavaFX scene
      */
     public Scene setScene() {
         var previous = gameWindow.getScene();
+        if (this.scene != null) {
+            if (this.scene.getWidth() == previous.getWidth()
+                && this.scene.getHeight() == previous.getHeight()) {
+                return this.scene;
+            }
+            //release the root so it can be given to a new scene
+            this.scene.setRoot(new Pane());
+        }
         Scene scene = new Scene(root, previous.getWidth(), previous.getHeight(), Color.BLACK);
         scene.getStylesheets().add(getClass().getResource("/style/game.css").toExternalForm());
         this.scene = scene;
@@ -2,10 +2,8 @@ package uk.ac.soton.comp1206.scene;
 
 import static javafx.scene.input.KeyCode.ESCAPE;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.HashSet;
+import javafx.animation.Animation;
 import javafx.animation.FillTransition;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
@@ -30,8 +28,10 @@ import uk.ac.soton.comp1206.component.PieceBoard;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.GamePiece;
 import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.score.ScoreStore;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.Assets;
 import uk.ac.soton.comp1206.utility.Multimedia;
 
 /**
@@ -42,6 +42,12 @@ public class ChallengeScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(ChallengeScene.class);
 
+    /**
+     * Whether the game is paused while the window is minimised. Set the tetrecs.pauseHidden system
+     * property to false to keep the clock running.
+     */
+    private static final boolean PAUSE_HIDDEN = !"false".equals(System.getProperty("tetrecs.pauseHidden"));
+
     /**
      * The game being played
      */
@@ -72,6 +78,12 @@ public class ChallengeScene extends BaseScene {
      */
     protected GameBlockCoordinate previouslyAimedBlock;
 
+    /**
+     * The animations of the UI timer for the current piece
+     */
+    private Timeline timerAnimation;
+    private SequentialTransition timerFill;
+
     /**
      * UI text representing level - binds to game property
      */
@@ -82,6 +94,11 @@ public class ChallengeScene extends BaseScene {
      */
     protected Text score;
 
+    /**
+     * UI text showing the points playing the current piece at the aimed block would score
+     */
+    protected Text projected;
+
     /**
      * UI text representing the high score - binds to game property
      */
@@ -154,6 +171,7 @@ public class ChallengeScene extends BaseScene {
         challengePane.setMaxWidth(gameWindow.getWidth());
         challengePane.setMaxHeight(gameWindow.getHeight());
         challengePane.getStyleClass().add("menu-background");
+        Assets.setBackground(challengePane, "1.jpg", gameWindow.getWidth());
         root.getChildren().add(challengePane);
 
         challengePane.getChildren().add(mainPane);
@@ -191,7 +209,7 @@ public class ChallengeScene extends BaseScene {
      * Binds game properties to the UI text so that they update accordingly
      */
     protected void bindProperties() {
-        game.setHighscore(getHighScore());
+        loadHighScore();
         score.textProperty().bind(game.scoreProperty().asString());
         level.textProperty().bind(game.levelProperty().asString());
         lives.textProperty().bind(game.livesProperty().asString());
@@ -295,7 +313,9 @@ public class ChallengeScene extends BaseScene {
         scoreHeading.getStyleClass().add("heading");
         score = new Text();
         score.getStyleClass().add("score");
-        scoreInfo.getChildren().addAll(scoreHeading,score);
+        projected = new Text();
+        projected.getStyleClass().add("projected");
+        scoreInfo.getChildren().addAll(scoreHeading,score,projected);
         return scoreInfo;
     }
 
@@ -358,22 +378,13 @@ public class ChallengeScene extends BaseScene {
 
 
     /**
-     * Reads top high score from ordered scores file. Else returns 0.
-     * @return the top high score
+     * Show the top local high score from the score store once it has loaded. Until then the
+     * high score shows 0, or the game's score if that is higher.
      */
-    public Integer getHighScore(){
-        try{
-            //read the first line as file is ordered
-            BufferedReader reader = new BufferedReader(new FileReader("scores.txt"));
-            var line = reader.readLine();
-            var score = line.split(":");
-            //return the score
-            return Integer.valueOf(score[1]);
-        }catch (IOException e) {
-            logger.error(e);
-            //return 0 if file cannot be found or any other IO exception
-            return 0;
-        }
+    protected void loadHighScore(){
+        ScoreStore.whenLoaded().thenAcceptAsync(
+            store -> game.setHighscore(Math.max(game.getHighscore(), store.getHighScore())),
+            Platform::runLater);
     }
 
     /**
@@ -399,6 +410,7 @@ public class ChallengeScene extends BaseScene {
                 var ft3 = new FillTransition(Duration.millis(time/3), timeBar, Color.ORANGE, Color.RED);
                 //play fill transitions one after the other
                 var seq = new SequentialTransition(ft1,ft2,ft3);
+                timerFill = seq;
                 seq.play();
             },new KeyValue(timeBar.widthProperty(), gameWindow.getWidth())),
 
@@ -407,10 +419,68 @@ public class ChallengeScene extends BaseScene {
         );
 
         //play timeline to animate the timer bar
+        timerAnimation = timeline;
+        //the timer bar redraws every frame, so slow frames during a game are always counted
+        gameWindow.getQualityGovernor().addAnimation(timeline);
         timeline.play();
         return timeBar;
     }
 
+    /**
+     * End the game, so its timer stops, and stop it calling back into this scene, as the scores scene
+     * keeps the game after this scene is gone
+     */
+    @Override
+    public void dispose() {
+        game.endGame();
+        game.clearListeners();
+        board.dispose();
+        if (timerAnimation != null) {
+            timerAnimation.stop();
+        }
+        if (timerFill != null) {
+            timerFill.stop();
+        }
+    }
+
+    /**
+     * Pause the game and its UI timer while the window is minimised, so no lives are lost while
+     * nobody is playing
+     * @param hidden whether the window is minimised
+     */
+    @Override
+    public void windowIdle(boolean hidden) {
+        if (!hidden || !PAUSE_HIDDEN) {
+            return;
+        }
+        game.pause();
+        if (game.isPaused()) {
+            if (timerAnimation != null) {
+                timerAnimation.pause();
+            }
+            if (timerFill != null) {
+                timerFill.pause();
+            }
+        }
+    }
+
+    /**
+     * Carry on the game and its UI timer from where they were paused
+     */
+    @Override
+    public void windowActive() {
+        if (!game.isPaused()) {
+            return;
+        }
+        game.resume();
+        if (timerAnimation != null && timerAnimation.getStatus() == Animation.Status.PAUSED) {
+            timerAnimation.play();
+        }
+        if (timerFill != null && timerFill.getStatus() == Animation.Status.PAUSED) {
+            timerFill.play();
+        }
+    }
+
     /**
      * Adds hover effect to current aimed block and removes hover from previously aimed block
      * @param block the game block being aimed at
@@ -421,6 +491,24 @@ public class ChallengeScene extends BaseScene {
         aimedBlock = new GameBlockCoordinate(block.getX(), block.getY());
         //add hover effect
         block.hover();
+        updatePreview();
+    }
+
+    /**
+     * Highlight the blocks which playing the current piece at the aimed block would clear, and show
+     * the points it would score under the score
+     */
+    protected void updatePreview() {
+        if (aimedBlock == null) {
+            return;
+        }
+        var preview = game.preview(aimedBlock.getX(), aimedBlock.getY());
+        for (var x = 0; x < game.getCols(); x++) {
+            for (var y = 0; y < game.getRows(); y++) {
+                board.getBlock(x, y).setPending(preview.isCleared(x, y));
+            }
+        }
+        projected.setText(preview.getScore() > 0 ? "+" + preview.getScore() : "");
     }
 
     /**
@@ -452,6 +540,7 @@ public class ChallengeScene extends BaseScene {
         Multimedia.playAudio("rotate.wav");
         //display rotated piece
         nextPieceBoard.setPiece(game.rotateCurrentPiece());
+        updatePreview();
     }
 
     /**
@@ -464,6 +553,7 @@ public class ChallengeScene extends BaseScene {
         Multimedia.playAudio("rotate.wav");
         //display rotated piece
         nextPieceBoard.setPiece(game.rotateCurrentPiece(num));
+        updatePreview();
     }
 
     /**
@@ -479,6 +569,7 @@ public class ChallengeScene extends BaseScene {
         //display swapped pieces
         nextPieceBoard.setPiece(swappedPieces[0]);
         followingPieceBoard.setPiece(swappedPieces[1]);
+        updatePreview();
     }
 
     /**
@@ -493,6 +584,7 @@ public class ChallengeScene extends BaseScene {
         //display swapped pieces
         nextPieceBoard.setPiece(swappedPieces[0]);
         followingPieceBoard.setPiece(swappedPieces[1]);
+        updatePreview();
     }
 
     /**
@@ -512,6 +604,8 @@ public class ChallengeScene extends BaseScene {
     protected void nextPiece(GamePiece currentGamePiece,GamePiece followingGamePiece){
         nextPieceBoard.setPiece(currentGamePiece);
         followingPieceBoard.setPiece(followingGamePiece);
+        //preview once the placement which led to this piece has cleared its lines
+        Platform.runLater(this::updatePreview);
     }
 
     /**
@@ -594,6 +688,7 @@ public class ChallengeScene extends BaseScene {
             case SPACE, R -> swapClicked();
 
         }
+        updatePreview();
     }
 
     /**
@@ -2,7 +2,6 @@ package uk.ac.soton.comp1206.scene;
 
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -20,6 +19,7 @@ import uk.ac.soton.comp1206.game.GamePiece;
 import uk.ac.soton.comp1206.game.Grid;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.Assets;
 
 /**
  * The instruction scene shows the instructions on how to play the game as well as the possible
@@ -46,6 +46,15 @@ public class InstructionsScene extends BaseScene{
     scene.setOnKeyPressed(this::handleKey);
   }
 
+  /**
+   * The instructions never change, so they are built once and reused
+   * @return true
+   */
+  @Override
+  public boolean isReusable() {
+    return true;
+  }
+
   /**
    * Build the instructions screen by adding all UI components. Includes a title, description
    * and instructions image as well as all the game pieces shown on piece boards.
@@ -61,6 +70,7 @@ public class InstructionsScene extends BaseScene{
     instructionPane.setMaxWidth(gameWindow.getWidth());
     instructionPane.setMaxHeight(gameWindow.getHeight());
     instructionPane.getStyleClass().add("menu-background");
+    Assets.setBackground(instructionPane, "1.jpg", gameWindow.getWidth());
     root.getChildren().add(instructionPane);
 
     var mainPane = new BorderPane();
@@ -68,7 +78,7 @@ public class InstructionsScene extends BaseScene{
 
     //add instructions image
     var top = new VBox();
-    var instructionsImage = new ImageView(new Image(this.getClass().getResource("/images/Instructions.png").toExternalForm()));
+    var instructionsImage = new ImageView(Assets.getImage("Instructions.png", gameWindow.getWidth()/1.5));
     instructionsImage.setPreserveRatio(true);
     instructionsImage.setFitWidth(gameWindow.getWidth()/1.5);
 
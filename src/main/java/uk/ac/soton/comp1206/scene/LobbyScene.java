@@ -1,9 +1,9 @@
 package uk.ac.soton.comp1206.scene;
 
-import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import javafx.application.Platform;
 import javafx.beans.property.SimpleSetProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableSet;
@@ -20,14 +20,16 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
-import javafx.scene.text.TextFlow;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.ChannelList;
+import uk.ac.soton.comp1206.component.ChatLog;
 import uk.ac.soton.comp1206.component.UserList;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.NetworkMonitor;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.Assets;
 
 /**
  * The lobby scene holds the UI for the multiplayer lobby. This is where players can join/leave a
@@ -58,17 +60,46 @@ public class LobbyScene extends BaseScene {
    */
   private SimpleSetProperty<String> usersWrapper = new SimpleSetProperty<>(usersList);
   private BorderPane mainPane;
-  private TextFlow chat;
+  private volatile ChatLog chat;
   private VBox channelBox;
   private HBox buttons;
-
-  private ScrollPane chatScroller;
   private TextField nameInput;
 
   /**
-   * Timer used to request channels from the server at a regular interval.
+   * The time between channel requests while the channel list is changing, in milliseconds
+   */
+  private static final long POLL_INTERVAL = 2000;
+
+  /**
+   * The longest time between channel requests once the channel list has stopped changing
+   */
+  private static final long MAX_POLL_INTERVAL = 16000;
+
+  /**
+   * The time between channel requests while the window is minimised
+   */
+  private static final long HIDDEN_POLL_INTERVAL = 60000;
+
+  /**
+   * Timer used to request channels from the server while the lobby is showing. Guarded by this.
+   */
+  private Timer timer;
+
+  /**
+   * The next channel request scheduled on the timer, cancelled before another is scheduled so only
+   * one chain of requests ever runs. Guarded by this.
+   */
+  private TimerTask poll;
+
+  /**
+   * The time until the next channel request. Doubles each time the channel list is unchanged.
+   */
+  private volatile long pollInterval = POLL_INTERVAL;
+
+  /**
+   * The shortest time between channel requests while the window is idle, or 0 while it is active
    */
-  private Timer timer = new Timer();
+  private volatile long idlePollInterval = 0;
 
   /**
    * Create a new scene, passing in the GameWindow the scene will be displayed in. Uses the
@@ -88,9 +119,20 @@ public class LobbyScene extends BaseScene {
   @Override
   public void initialise() {
     requestChannels();
-    communicator.addListener(communication -> Platform.runLater(() ->
-        handleMessage(communication)
-    ));
+    communicator.addListener(communication -> {
+      //chat messages are batched onto the JavaFX thread by the chat log
+      if (communication.startsWith("MSG")) {
+        receiveChatMessage(communication);
+        return;
+      }
+      //the channel and user lists replace the previous ones, so only the newest need handling
+      var delivery = communicator.getDelivery();
+      if (communication.startsWith("CHANNELS") || communication.startsWith("USERS")) {
+        delivery.postLatest(NetworkMonitor.type(communication), () -> handleMessage(communication));
+      } else {
+        delivery.post(() -> handleMessage(communication));
+      }
+    });
     scene.setOnKeyPressed(this::handleKey);
 
   }
@@ -113,20 +155,17 @@ public class LobbyScene extends BaseScene {
     if (message.startsWith("USERS")) {
       parseUserList(message);
     }
-    //chat message received from player
-    if (message.startsWith("MSG")) {
-      receiveChatMessage(message);
-    }
     //error message recieved from server
     if (message.startsWith("ERROR")) {
-      //display error message with alert
+      //display error message with alert, without waiting so the rest of the batch runs in order
       var errorMessage = message.replace("ERROR", "");
       Alert error = new Alert(Alert.AlertType.ERROR, errorMessage);
-      error.showAndWait();
+      error.show();
     }
     //user leaves a channel
     if (message.startsWith("PARTED")) {
       mainPane.getChildren().remove(channelBox);
+      usersList.clear();
     }
     //user is host of the channel and can start the game
     if (message.startsWith("HOST")) {
@@ -135,7 +174,6 @@ public class LobbyScene extends BaseScene {
     //game is starting
     if (message.startsWith("START")) {
       gameWindow.loadScene(new MultiplayerScene(gameWindow));
-      timer.cancel();
     }
     //player's name has updated
     if (message.startsWith("NICK")) {
@@ -155,53 +193,142 @@ public class LobbyScene extends BaseScene {
   }
 
   /**
-   * Add users in the current channel to the set of users
+   * Update the set of users in the current channel. Only the users who have joined or left are
+   * added or removed, so the UserList only updates what changed.
    *
    * @param message the list of users in the channel
    */
   private void parseUserList(String message) {
-    //reset the set
-    usersList.clear();
     message = message.replace("USERS ", "");
-    logger.info("List of users in the current channel: {}", message);
-    var receivedUsers = message.split("\n");
-    //add all the users to the set
-    usersList.addAll(Arrays.asList(receivedUsers));
+    logger.debug("List of users in the current channel: {}", message);
+    applyChanges(usersList, parseNames(message));
   }
 
 
   /**
-   * Add the current channels on the server to the list of channels
+   * Update the set of current channels on the server. Only the channels which have been created or
+   * closed are added or removed, so the ChannelList only updates what changed. Polling slows down
+   * while the channels stay the same.
    *
    * @param message the list of all current channels
    */
   private void parseChannelList(String message) {
-    //reset
-    channelSet.clear();
     message = message.replace("CHANNELS ", "");
-    logger.info("List of all current channels {}", message);
-    var receivedChannels = message.split("\n");
-    channelSet.addAll(Arrays.asList(receivedChannels));
+    logger.debug("List of all current channels {}", message);
+    if (applyChanges(channelSet, parseNames(message))) {
+      pollInterval = POLL_INTERVAL;
+    } else {
+      pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+    }
+  }
+
+  /**
+   * Split a newline separated list of names received from the server, ignoring blank lines
+   *
+   * @param names the list of names
+   * @return the set of names
+   */
+  private static Set<String> parseNames(String names) {
+    var received = new HashSet<String>();
+    for (String name : names.split("\n")) {
+      if (!name.isBlank()) {
+        received.add(name);
+      }
+    }
+    return received;
+  }
+
+  /**
+   * Make a set match the received set by removing and adding only the differences
+   *
+   * @param current the set to update
+   * @param received the new contents of the set
+   * @return whether anything changed
+   */
+  private static boolean applyChanges(ObservableSet<String> current, Set<String> received) {
+    var removed = current.retainAll(received);
+    var added = current.addAll(received);
+    return removed || added;
   }
 
   /**
-   * Request the list of current channels on the server every 2 seconds by sending a message via the
-   * communicator.
+   * Start requesting the list of current channels on the server by sending a message via the
+   * communicator. Requests are sent every 2 seconds while the channels are changing, slowing down to
+   * every 16 seconds while they are not.
+   * <br>
+   * If requests are already being sent, the next one is sent straight away and the rate goes back to
+   * every 2 seconds.
    */
-  private void requestChannels() {
-    //create a new timer
-    //timer = new Timer();
+  private synchronized void requestChannels() {
+    if (timer == null) {
+      timer = new Timer("lobby-poll", true);
+    }
+    pollInterval = POLL_INTERVAL;
+    schedulePoll(0);
+  }
 
-    //create a new timer task
-    var task = new TimerTask() {
+  /**
+   * Schedule the next channel request, which schedules the one after it when run
+   *
+   * @param delay the time until the request in milliseconds
+   */
+  private synchronized void schedulePoll(long delay) {
+    if (timer == null) {
+      return;
+    }
+    if (poll != null) {
+      poll.cancel();
+    }
+    poll = new TimerTask() {
       @Override
       public void run() {
         //request list of channels from the server
         communicator.send("LIST");
+        schedulePoll(Math.max(pollInterval, idlePollInterval));
       }
     };
-    //task scheduled every 2 seconds
-    timer.scheduleAtFixedRate(task, 0, 2000);
+    timer.schedule(poll, delay);
+  }
+
+  /**
+   * Stop requesting the list of channels
+   */
+  private synchronized void stopRequestingChannels() {
+    if (timer != null) {
+      timer.cancel();
+      timer = null;
+      poll = null;
+    }
+  }
+
+  /**
+   * Poll for channels less often while nobody is watching
+   *
+   * @param hidden whether the window is minimised
+   */
+  @Override
+  public void windowIdle(boolean hidden) {
+    idlePollInterval = hidden ? HIDDEN_POLL_INTERVAL : MAX_POLL_INTERVAL;
+  }
+
+  /**
+   * Request the channels straight away when the window is active again, and go back to polling at
+   * the normal rate
+   */
+  @Override
+  public synchronized void windowActive() {
+    idlePollInterval = 0;
+    if (timer != null) {
+      requestChannels();
+    }
+  }
+
+  /**
+   * Stop polling for channels when leaving the lobby
+   */
+  @Override
+  public void cleanup() {
+    stopRequestingChannels();
   }
 
   /**
@@ -237,6 +364,7 @@ public class LobbyScene extends BaseScene {
     lobbyPane.setMaxWidth(gameWindow.getWidth());
     lobbyPane.setMaxHeight(gameWindow.getHeight());
     lobbyPane.getStyleClass().add("menu-background");
+    Assets.setBackground(lobbyPane, "1.jpg", gameWindow.getWidth());
     root.getChildren().add(lobbyPane);
 
     //create the main border pane
@@ -394,15 +522,16 @@ public class LobbyScene extends BaseScene {
   }
 
   /**
-   * Receive a chat message from the server. Display in chat box text flow.
+   * Receive a chat message from the server. Display in the chat log, if in a channel. Called on the
+   * communicator's thread.
    *
    * @param receivedMessage the received message
    */
   private void receiveChatMessage(String receivedMessage) {
-    receivedMessage = receivedMessage.replace("MSG ", "");
-    Text message = new Text(receivedMessage + "\n");
-    chat.getChildren().add(message);
-    chatScroller.setVvalue(1.0);
+    var log = chat;
+    if (log != null) {
+      log.append(receivedMessage.replace("MSG ", ""));
+    }
   }
 
   /**
@@ -419,27 +548,16 @@ public class LobbyScene extends BaseScene {
   }
 
   /**
-   * Creates a chat box to display chat messages using a text flow and scroll pane.
+   * Creates a chat log to display chat messages.
    *
-   * @return the scroll pane for holding the chat
-   */
-  private ScrollPane createChatBox() {
-    //hold text in text flow
-    chat = new TextFlow();
-    chat.setLineSpacing(10);
-    chat.getStyleClass().add("messages");
-    var introMessage = new Text("Welcome to the lobby \nType /nick NewName to change your name \n");
-    introMessage.getStyleClass().add("introMessage");
-    chat.getChildren().add(introMessage);
-    chatScroller = new ScrollPane();
-    chatScroller.getStyleClass().add("scroller");
-    //vertical scroll
-    chatScroller.setFitToWidth(true);
-    //add text to the scroll pane
-    chatScroller.setContent(chat);
-    chatScroller.setPadding(new Insets(10, 10, 10, 10));
-    chatScroller.setMinViewportHeight(350);
-    return chatScroller;
+   * @return the chat log
+   */
+  private ChatLog createChatBox() {
+    var log = new ChatLog("Welcome to the lobby \nType /nick NewName to change your name");
+    log.setPadding(new Insets(10, 10, 10, 10));
+    log.setMinHeight(350);
+    chat = log;
+    return log;
   }
 
   /**
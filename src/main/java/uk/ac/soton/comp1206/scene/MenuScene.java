@@ -10,7 +10,6 @@ import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
@@ -23,6 +22,7 @@ import uk.ac.soton.comp1206.App;
 import uk.ac.soton.comp1206.network.Communicator;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.Assets;
 import uk.ac.soton.comp1206.utility.Multimedia;
 
 /**
@@ -34,6 +34,13 @@ public class MenuScene extends BaseScene {
 
     private Communicator communicator;
 
+    /**
+     * The title image, and the animation which fades it in and then rotates and scales it
+     */
+    private ImageView titleImage;
+    private FadeTransition titleFade;
+    private ParallelTransition titleLoop;
+
     /**
      * Create a new menu scene
      * @param gameWindow the Game Window this will be displayed in
@@ -58,6 +65,7 @@ public class MenuScene extends BaseScene {
         menuPane.setMaxWidth(gameWindow.getWidth());
         menuPane.setMaxHeight(gameWindow.getHeight());
         menuPane.getStyleClass().add("menu-background");
+        Assets.setBackground(menuPane, "1.jpg", gameWindow.getWidth());
         root.getChildren().add(menuPane);
 
         var mainPane = new BorderPane();
@@ -65,7 +73,7 @@ public class MenuScene extends BaseScene {
 
         //Create title using logo image
         var top = new HBox();
-        var titleImage = new ImageView(new Image(this.getClass().getResource("/images/TetrECS.png").toExternalForm()));
+        titleImage = new ImageView(Assets.getImage("TetrECS.png", gameWindow.getWidth()/1.5));
         titleImage.setPreserveRatio(true);
         titleImage.setFitWidth(gameWindow.getWidth()/1.5);
         top.getChildren().add(titleImage);
@@ -129,17 +137,19 @@ public class MenuScene extends BaseScene {
         scaleTransition.setCycleCount(Timeline.INDEFINITE);
 
         //rotate and scale at the same time
-        ParallelTransition p = new ParallelTransition(title,rotateTransition,scaleTransition);
+        titleLoop = new ParallelTransition(title,rotateTransition,scaleTransition);
+        //the title animation is paused when frames are slow
+        gameWindow.getQualityGovernor().addDecoration(titleLoop);
 
         //fade in the image at start
         FadeTransition fadeTransition = new FadeTransition(Duration.millis(2000),title);
         fadeTransition.setFromValue(0);
         fadeTransition.setToValue(1);
         //once faded in, rotate and shrink
-        fadeTransition.setOnFinished(event -> p.play());
-
-        //start the fade in animation
-        fadeTransition.play();
+        fadeTransition.setOnFinished(event -> titleLoop.play());
+        titleFade = fadeTransition;
+        //start with the title hidden, until the fade in animation is started
+        title.setOpacity(0);
     }
 
 
@@ -149,6 +159,37 @@ public class MenuScene extends BaseScene {
     @Override
     public void initialise() {
         Multimedia.playMusic("menu.mp3");
+        //start the fade in animation
+        titleFade.playFromStart();
+    }
+
+    /**
+     * The menu keeps no state, so it is built once and reused
+     * @return true
+     */
+    @Override
+    public boolean isReusable() {
+        return true;
+    }
+
+    /**
+     * Put the title back where it started, ready to be faded in again
+     */
+    @Override
+    public void reset() {
+        titleImage.setOpacity(0);
+        titleImage.setRotate(0);
+        titleImage.setScaleX(1);
+        titleImage.setScaleY(1);
+    }
+
+    /**
+     * Stop the title animations while the menu is not shown
+     */
+    @Override
+    public void cleanup() {
+        titleFade.stop();
+        titleLoop.stop();
     }
 
     /**
@@ -170,7 +211,7 @@ public class MenuScene extends BaseScene {
      * @param event event
      */
     private void showInstructions(ActionEvent event){
-        gameWindow.loadScene(new InstructionsScene(gameWindow));
+        gameWindow.startInstructions();
     }
 
 
@@ -5,7 +5,6 @@ import static javafx.scene.input.KeyCode.ESCAPE;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -13,9 +12,9 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
-import javafx.scene.text.TextFlow;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.ChatLog;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.Leaderboard;
 import uk.ac.soton.comp1206.component.PieceBoard;
@@ -23,6 +22,7 @@ import uk.ac.soton.comp1206.game.Grid;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.Assets;
 import uk.ac.soton.comp1206.utility.Multimedia;
 
 /**
@@ -33,11 +33,9 @@ public class MultiplayerScene extends ChallengeScene{
 
   private static final Logger logger = LogManager.getLogger(MultiplayerScene.class);
 
-  private TextFlow chat;
+  private ChatLog chat;
   private TextField chatInput;
 
-  private ScrollPane chatScroller;
-
   /**
    * The game being played
    */
@@ -71,6 +69,7 @@ public class MultiplayerScene extends ChallengeScene{
     challengePane.setMaxWidth(gameWindow.getWidth());
     challengePane.setMaxHeight(gameWindow.getHeight());
     challengePane.getStyleClass().add("menu-background");
+    Assets.setBackground(challengePane, "1.jpg", gameWindow.getWidth());
     root.getChildren().add(challengePane);
 
     var mainPane = new BorderPane();
@@ -148,6 +147,14 @@ public class MultiplayerScene extends ChallengeScene{
     return boardBox;
   }
 
+  /**
+   * Multiplayer games carry on while the window is minimised, as the other players are still playing
+   * @param hidden whether the window is minimised
+   */
+  @Override
+  public void windowIdle(boolean hidden) {
+  }
+
   @Override
   public void initialise() {
     logger.info("Initialising Multiplayer");
@@ -170,15 +177,12 @@ public class MultiplayerScene extends ChallengeScene{
   }
 
   /**
-   * Receive a chat message from the server and add to chat display
+   * Receive a chat message from the server and add to chat display. Called on the communicator's
+   * thread; the chat log adds messages on the JavaFX thread in batches.
    * @param receivedMessage the message received
    */
   private void receiveChatMessage(String receivedMessage) {
-    receivedMessage = receivedMessage.replace("MSG ","");
-    Text message = new Text(receivedMessage+"\n");
-    chat.getChildren().add(message);
-    chatScroller.setVvalue(1.0);
-    root.requestFocus();
+    chat.append(receivedMessage.replace("MSG ",""));
   }
 
   @Override
@@ -190,29 +194,20 @@ public class MultiplayerScene extends ChallengeScene{
   }
 
   /**
-   * Create chat message display for messages received from the server. Uses a text flow and scroll
-   * pane to organise the messages.
-   * @return returns the scroll pane
+   * Create chat message display for messages received from the server, using a chat log
+   * @return returns the chat log
    */
-  private ScrollPane createMessageDisplay() {
-    chat = new TextFlow();
-    chat.setLineSpacing(10);
-    chat.getStyleClass().add("messages");
-    //add an intro message to the text flow
-    var introMessage = new Text("In-Game Chat: Type to send a message\n");
-    introMessage.getStyleClass().add("introMessage");
-    chat.getChildren().add(introMessage);
-    chatScroller = new ScrollPane();
-    chatScroller.getStyleClass().add("scroller");
+  private ChatLog createMessageDisplay() {
+    chat = new ChatLog("In-Game Chat: Type to send a message");
     //change sizing
-    chatScroller.setMaxWidth(150);
-    chatScroller.setMaxHeight(250);
-    chatScroller.setFitToWidth(true);
-    chatScroller.setContent(chat);
-    chatScroller.setPadding(new Insets(10,0,10,10));
-    chatScroller.setMinViewportHeight(250);
-    chatScroller.setMinViewportWidth(150);
-    return chatScroller;
+    chat.setMaxWidth(150);
+    chat.setMinWidth(150);
+    chat.setMaxHeight(250);
+    chat.setMinHeight(250);
+    chat.setPadding(new Insets(10,0,10,10));
+    //give keyboard control back to the game when messages arrive
+    chat.setOnUpdate(() -> root.requestFocus());
+    return chat;
   }
 
   /**
@@ -1,24 +1,15 @@
 package uk.ac.soton.comp1206.scene;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleListProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -35,9 +26,12 @@ import uk.ac.soton.comp1206.component.ScoresList;
 import uk.ac.soton.comp1206.event.CommunicationsListener;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
-import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.score.OnlineScores;
+import uk.ac.soton.comp1206.score.ScoreEntry;
+import uk.ac.soton.comp1206.score.ScoreStore;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.utility.Assets;
 
 /**
  * The Scores scene handles showing scores local and online high scores at the end of a game. If the
@@ -47,6 +41,11 @@ public class ScoresScene extends BaseScene{
 
   private static final Logger logger = LogManager.getLogger(ScoresScene.class);
 
+  /**
+   * The number of local high scores loaded into the local scores list
+   */
+  private static final int LOCAL_SCORES = 1000;
+
   /**
    * The game that has just been played
    */
@@ -62,15 +61,39 @@ public class ScoresScene extends BaseScene{
    */
   private SimpleListProperty<Pair<String, Integer>> localScores = new SimpleListProperty<>(scoresList);
 
+  /**
+   * The cached online high scores, shared with every other scene
+   */
+  private final OnlineScores onlineScores;
+
   /**
    * Observable list of online high scores
    */
-  private ObservableList<Pair<String,Integer>> onlineScoresList = FXCollections.observableArrayList();
+  private final ObservableList<Pair<String,Integer>> onlineScoresList;
+
+  /**
+   * The online high scores shown: the cached table, followed by any further pages scrolled to
+   */
+  private final ObservableList<Pair<String,Integer>> onlineShown = FXCollections.observableArrayList();
+
+  /**
+   * Shows the cached table again, without the further pages, whenever it changes
+   */
+  private final ListChangeListener<Pair<String,Integer>> onlineChanged = change -> {
+    lastPage = false;
+    onlineShown.setAll(change.getList());
+  };
 
   /**
    * The wrapper for the observable online high scores to expose it as a property. Used for binding.
    */
-  private SimpleListProperty<Pair<String, Integer>> remoteScores = new SimpleListProperty<>(onlineScoresList);
+  private final SimpleListProperty<Pair<String, Integer>> remoteScores;
+
+  /**
+   * Whether a further page of online scores has been requested, and whether there are none left
+   */
+  private boolean pageRequested = false;
+  private boolean lastPage = false;
 
   /**
    * List property used for binding the scores from the multiplayer game
@@ -78,21 +101,27 @@ public class ScoresScene extends BaseScene{
   private SimpleListProperty<Triplet<String,Integer,String>> multiplayerList;
 
   /**
-   * Buffered reader used for reading the scores file
+   * The store the local high scores are read from and saved to, or null until it has loaded
    */
-  private BufferedReader reader;
+  private ScoreStore store;
   private VBox mainDisplay;
   private BorderPane mainPane;
 
   /**
-   * Communicator used for sending and receiving messages from the server
+   * Used for determining whether the game was a multiplayer game or not
    */
-  private final Communicator communicator;
+  private boolean multiplayer = false;
 
   /**
-   * Used for determining whether the game was a multiplayer game or not
+   * The rank and percentile of the game's score among the local scores, before it was saved
    */
-  private boolean multiplayer = false;
+  private int rank;
+  private double percentile;
+
+  /**
+   * Whether the scene is still being shown
+   */
+  private boolean shown = true;
 
   /**
    * Create a new scores scene
@@ -103,8 +132,13 @@ public class ScoresScene extends BaseScene{
     super(gameWindow);
     logger.info("Creating Scores Scene");
     this.game = game;
-    //use game window communicator
-    this.communicator = gameWindow.getCommunicator();
+    //show the cached online scores, and fetch any new ones in the background
+    this.onlineScores = gameWindow.getOnlineScores();
+    this.onlineScoresList = onlineScores.getScores();
+    this.remoteScores = new SimpleListProperty<>(onlineShown);
+    onlineShown.setAll(onlineScoresList);
+    onlineScoresList.addListener(onlineChanged);
+    onlineScores.refresh();
     checkMultiplayer();
   }
 
@@ -129,9 +163,19 @@ public class ScoresScene extends BaseScene{
     logger.info("Initialising the scores scene");
     //handle keyboard input
     scene.setOnKeyPressed(this::handleKey);
-    //check if no local scores exist
-    writeDefaultScores();
-    //load local and online scores
+    //load local and online scores once the score store has loaded, showing none until then
+    ScoreStore.whenLoaded().thenAcceptAsync(this::storeLoaded, Platform::runLater);
+  }
+
+  /**
+   * Show the local scores and check the game's score, once the score store has loaded
+   * @param loaded the score store
+   */
+  private void storeLoaded(ScoreStore loaded) {
+    if (!shown) {
+      return;
+    }
+    store = loaded;
     loadOnlineScores();
     loadScores();
   }
@@ -203,6 +247,11 @@ public class ScoresScene extends BaseScene{
     var scoreBox = new ScoresList();
     localScores.getChildren().add(scoreBox);
     scoreBox.scoresListProperty().bind(localScoresProperty());
+    //show where this game placed among every local score
+    var placing = new Text(String.format("Your score ranks #%d (better than %.0f%% of %d games)",
+        rank, percentile, store.size()));
+    placing.getStyleClass().add("scorer");
+    localScores.getChildren().add(placing);
     return localScores;
   }
 
@@ -222,9 +271,30 @@ public class ScoresScene extends BaseScene{
     var scoreBox = new ScoresList();
     remoteScores.getChildren().add(scoreBox);
     scoreBox.onlineScoresListProperty().bind(remoteScoresProperty());
+    scoreBox.setOnScrolledPastEnd(this::loadMoreOnlineScores);
     return remoteScores;
   }
 
+  /**
+   * Request the next page of online high scores below those shown, and add it to the list
+   */
+  private void loadMoreOnlineScores() {
+    if (pageRequested || lastPage || onlineShown.isEmpty()) {
+      return;
+    }
+    pageRequested = true;
+    var from = onlineShown.size();
+    onlineScores.requestPage(from, ScoresList.ROWS, page -> {
+      pageRequested = false;
+      //skip the page if the table changed while it was requested
+      if (!shown || onlineShown.size() != from) {
+        return;
+      }
+      lastPage = page.size() < ScoresList.ROWS;
+      onlineShown.addAll(page);
+    });
+  }
+
 
   /**
    * Checks if the game score was higher than any of the current local high scores or online high
@@ -233,9 +303,12 @@ public class ScoresScene extends BaseScene{
   private void scoreCheck() {
     logger.info("Checking score");
     int check;
+    rank = store.getRank(game.getScore());
+    percentile = store.getPercentile(game.getScore());
+    var local = rank <= 10;
+    var online = onlineScoresList.size() < 10 || onlineScoresList.get(9).getValue() < game.getScore();
     //check if player beat both online and local high scores
-    if (scoresList.get(9).getValue()<game.getScore() &&
-        onlineScoresList.get(9).getValue() < game.getScore() && !multiplayer){
+    if (local && online && !multiplayer){
       check = 1;
       logger.info("New local and online high score");
       inputUsername(check);
@@ -243,14 +316,14 @@ public class ScoresScene extends BaseScene{
     }
     else{
       //check if player beat local high score
-      if( scoresList.get(9).getValue() < game.getScore() && !multiplayer){
+      if(local && !multiplayer){
         check = 2;
         logger.info("New local high score");
         inputUsername(check);
         return;
       }
       //check if player beat online high score
-      else if (onlineScoresList.get(9).getValue() < game.getScore()){
+      else if (online){
         check = 3;
         logger.info("New online high score");
         inputUsername(check);
@@ -324,12 +397,8 @@ public class ScoresScene extends BaseScene{
    * @param name the username the player entered
    */
   private void updateLocalScores(String name){
-    scoresList.add(new Pair<>(name, game.getScore()));
-    //sort the list
-    scoresList.sort(
-        Collections.reverseOrder(Comparator.comparing(Pair<String, Integer>::getValue)));
-    //write updated scores to file
-    writeScores("scores.txt");
+    store.addScore(name, game.getScore(), ScoreEntry.CHALLENGE);
+    loadScores();
   }
 
   /**
@@ -337,10 +406,8 @@ public class ScoresScene extends BaseScene{
    * @param name the username the user entered
    */
   private void updateRemoteScores(String name){
-    onlineScoresList.add(new Pair<>(name, game.getScore()));
-    onlineScoresList.sort(
-        Collections.reverseOrder(Comparator.comparing(Pair<String, Integer>::getValue)));
-    writeOnlineScore(name);
+    logger.info("Writing online score");
+    onlineScores.submit(name, game.getScore());
   }
 
   /**
@@ -357,6 +424,7 @@ public class ScoresScene extends BaseScene{
     scoresPane.setMaxWidth(gameWindow.getWidth());
     scoresPane.setMaxHeight(gameWindow.getHeight());
     scoresPane.getStyleClass().add("menu-background");
+    Assets.setBackground(scoresPane, "1.jpg", gameWindow.getWidth());
     root.getChildren().add(scoresPane);
 
     mainPane = new BorderPane();
@@ -369,7 +437,7 @@ public class ScoresScene extends BaseScene{
     mainPane.setTop(mainDisplay);
 
     //add title image
-    var titleImage = new ImageView(new Image(this.getClass().getResource("/images/TetrECS.png").toExternalForm()));
+    var titleImage = new ImageView(Assets.getImage("TetrECS.png", gameWindow.getWidth()/1.5));
     titleImage.setPreserveRatio(true);
     titleImage.setFitWidth(gameWindow.getWidth()/1.5);
 
@@ -404,117 +472,40 @@ public class ScoresScene extends BaseScene{
   }
 
   /**
-   * Read the local high scores from the scores.txt file and add to the list of local scores
+   * Show the top local high scores from the score store, which can be scrolled through
    */
   public void loadScores(){
-    try {
-      logger.info("Reading local high scores");
-      //read from scores.txt file
-      reader = new BufferedReader(new FileReader("scores.txt"));
-        while (reader.ready()) {
-          var line = reader.readLine();
-          logger.info(line);
-          var sc = line.split(":");
-          //add to new score Pair to list
-          var score = new Pair<>(sc[0],Integer.valueOf(sc[1]));
-          scoresList.add(score);
-        }
-        //close reader
-      reader.close();
-    } catch(IOException e){
-      logger.error(e);
-    }
+    logger.info("Reading local high scores");
+    scoresList.setAll(store.getTopScores(LOCAL_SCORES));
   }
 
   /**
-   * Write the updated top 10 local high scores to the file
-   * @param file the file to write to
-   */
-  public void writeScores(String file){
-    try {
-      logger.info("Writing local high scores to {}",file);
-      BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-      for (int i=0;i<10;i++){
-        var name = scoresList.get(i).getKey();
-        var points = scoresList.get(i).getValue().toString();
-        logger.debug("Writing {} and {}",name,points);
-        //write score on new line
-        writer.write(name+":"+points);
-        writer.newLine();
-      }
-      writer.close();
-    }
-    catch (IOException e){
-      logger.error(e);
-    }
-  }
-
-  /**
-   * If scores.txt file does not exist, create a default set of scores to go into a new scores.txt
-   * file
-   */
-  public void writeDefaultScores(){
-    try{
-      File file = new File("scores.txt");
-      //if file does not exist
-      if (!file.exists()) {
-        logger.info("Scores file does not exist. Writing default scores.");
-        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-        //write 10 default scores
-        for (int i = 0; i < 10; i++) {
-          writer.write("Default:0");
-          writer.newLine();
-        }
-        writer.close();
-      }
-    }
-    catch(IOException e){
-      logger.error(e);
-    }
-  }
-
-  /**
-   * Receive list of online high scores from the server
+   * Check the score against the online high scores, straight away if they are cached or else once
+   * they are received from the server
    */
   public void loadOnlineScores(){
-    //send request
-    communicator.send("HISCORES");
-    //listen for received message
-    communicator.addListener((message)->{
-      if (!message.startsWith("HISCORES")) return;
-      Platform.runLater(()-> {
-        //load online high scores into list
-        parseOnlineScores(message);
+    onlineScores.whenLoaded(() -> {
+      if (shown) {
         scoreCheck();
-      });
+      }
     });
   }
 
   /**
-   * Add the online high scores, received from the server, to the list containing online high scores
-   * as Pairs.
-   * @param message the list of all current channels
+   * Stop waiting for the online scores when the scene is left
    */
-  private void parseOnlineScores(String message) {
-      logger.debug(message);
-      var scores = (message.replace("HISCORES", "")).split("\n");
-      for (String score : scores) {
-        logger.debug("Before split {}", score);
-        var scoreContent = (score.split(":"));
-        //add score
-        onlineScoresList.add(new Pair<>(scoreContent[0], Integer.valueOf(scoreContent[1].trim())));
-      }
+  @Override
+  public void cleanup() {
+    shown = false;
   }
 
   /**
-   * Send new online high score to the server
-   * @param name the username the user entered
+   * Stop listening to the shared online scores, which would otherwise keep this scene alive
    */
-  private void writeOnlineScore(String name){
-    logger.info("Writing online score");
-    var points = String.valueOf(game.getScore());
-    //send to server
-    communicator.send("HISCORE "+name+":"+points);
+  @Override
+  public void dispose() {
+    onlineScoresList.removeListener(onlineChanged);
+    remoteScores.set(null);
   }
 
   /**
@@ -0,0 +1,376 @@
+package uk.ac.soton.comp1206.score;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.util.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.Communicator;
+
+/**
+ * OnlineScores is a cache of the online high score table, shared by every scene so the scores
+ * screen can be shown straight away from the last table received.
+ * <br>
+ * The table is refreshed in the background. Replies are parsed on the communicator's thread, and
+ * the observable list is only changed, on the JavaFX thread, when the table has actually changed:
+ * HISCORES replies are compared by a hash of their content, and a server which supports
+ * HISCOREPAGE tells the cache when its version of the table is still current. A new high score is
+ * shown in the table as soon as it is submitted, before the server confirms it.
+ * <br>
+ * Against a server which supports HISCOREPAGE, such as the LocalServer, any page of the table can
+ * be requested, and pages are kept until the server's table changes. The scores screen requests the
+ * pages below the top of the table as its online scores list is scrolled.
+ */
+public class OnlineScores {
+
+  private static final Logger logger = LogManager.getLogger(OnlineScores.class);
+
+  /**
+   * How long a table is used before refreshIfStale fetches it again, in milliseconds. Set with the
+   * tetrecs.hiscoresTtl system property.
+   */
+  private static final long TTL = Long.getLong("tetrecs.hiscoresTtl", 60000);
+
+  /**
+   * How long a request is waited for before another may be sent, in milliseconds
+   */
+  private static final long REQUEST_TIMEOUT = 5000;
+
+  /**
+   * The number of scores in the table shown on the scores screen
+   */
+  public static final int TABLE_SIZE = 10;
+
+  private final Communicator communicator;
+
+  /**
+   * Whether the server supports HISCOREPAGE
+   */
+  private final boolean paged;
+
+  /**
+   * The top of the online table, highest first. Only changed on the JavaFX thread.
+   */
+  private final ObservableList<Pair<String, Integer>> scores = FXCollections.observableArrayList();
+
+  /**
+   * Called on the JavaFX thread once the first table has been received
+   */
+  private final List<Runnable> loadedCallbacks = new ArrayList<>();
+
+  /**
+   * Pages of the table received from a paging server, by position and size
+   */
+  private final Map<Long, List<Pair<String, Integer>>> pages = new HashMap<>();
+
+  /**
+   * Callbacks waiting for a page, by position and size
+   */
+  private final Map<Long, List<Consumer<List<Pair<String, Integer>>>>> waiting = new HashMap<>();
+
+  private boolean loaded = false;
+  private long fetchedAt = 0;
+  private long requestedAt = 0;
+
+  /**
+   * The hash of the last HISCORES reply, or 0 if the table must be updated from the next reply
+   */
+  private int hash = 0;
+
+  /**
+   * The version of the server's table held in pages, or -1 if unknown
+   */
+  private long version = -1;
+
+  /**
+   * Create a new online scores cache
+   * @param communicator the communicator to request scores with
+   * @param paged whether the server supports HISCOREPAGE
+   */
+  public OnlineScores(Communicator communicator, boolean paged) {
+    this.communicator = communicator;
+    this.paged = paged;
+    communicator.addServiceListener(this::receive);
+  }
+
+  /**
+   * Get the top of the online table. The list is updated in place as new tables are received.
+   * @return the observable list of scores, highest first
+   */
+  public ObservableList<Pair<String, Integer>> getScores() {
+    return scores;
+  }
+
+  /**
+   * Run a task once the online table has been received, or straight away if it already has
+   * @param callback the task, run on the JavaFX thread
+   */
+  public void whenLoaded(Runnable callback) {
+    synchronized (this) {
+      if (!loaded) {
+        loadedCallbacks.add(callback);
+        return;
+      }
+    }
+    callback.run();
+  }
+
+  /**
+   * Request the online table unless the cached table is still within its time to live
+   */
+  public void refreshIfStale() {
+    synchronized (this) {
+      if (loaded && System.currentTimeMillis() - fetchedAt < TTL) {
+        return;
+      }
+    }
+    refresh();
+  }
+
+  /**
+   * Request the online table in the background, unless a request is already waiting for its reply
+   */
+  public void refresh() {
+    synchronized (this) {
+      var now = System.currentTimeMillis();
+      if (now - requestedAt < REQUEST_TIMEOUT) {
+        return;
+      }
+      requestedAt = now;
+    }
+    if (paged) {
+      fetch(0, TABLE_SIZE);
+    } else {
+      communicator.send("HISCORES");
+    }
+  }
+
+  /**
+   * Request a page of the online table. Pages are served from the cache while the server's table is
+   * unchanged. Servers which do not support paging only provide the top of the table.
+   * @param from the position of the first score, where 0 is the highest score
+   * @param count the number of scores
+   * @param callback called on the JavaFX thread with up to count scores, highest first
+   */
+  public void requestPage(int from, int count, Consumer<List<Pair<String, Integer>>> callback) {
+    if (!paged) {
+      whenLoaded(() -> callback.accept(
+          new ArrayList<>(scores.subList(Math.min(from, scores.size()),
+              Math.min(from + count, scores.size())))));
+      refreshIfStale();
+      return;
+    }
+    var key = key(from, count);
+    List<Pair<String, Integer>> page;
+    synchronized (this) {
+      page = System.currentTimeMillis() - fetchedAt < TTL ? pages.get(key) : null;
+      if (page == null) {
+        var callbacks = waiting.computeIfAbsent(key, k -> new ArrayList<>());
+        callbacks.add(callback);
+        if (callbacks.size() > 1) {
+          //already requested
+          return;
+        }
+      }
+    }
+    if (page != null) {
+      var cached = page;
+      Platform.runLater(() -> callback.accept(cached));
+    } else {
+      fetch(from, count);
+    }
+  }
+
+  /**
+   * Send a HISCOREPAGE request, giving the version of the table if the page is already cached so the
+   * server can reply that it is unchanged
+   * @param from the position of the first score
+   * @param count the number of scores
+   */
+  private void fetch(int from, int count) {
+    String request;
+    synchronized (this) {
+      request = "HISCOREPAGE " + from + " " + count
+          + (pages.containsKey(key(from, count)) ? " " + version : "");
+    }
+    communicator.send(request);
+  }
+
+  /**
+   * Submit a new online high score. It is added to the cached table straight away, and the table is
+   * refreshed once the server confirms it. Must be called on the JavaFX thread.
+   * @param name the player's name
+   * @param score the score
+   */
+  public void submit(String name, int score) {
+    //insert after any higher or equal scores
+    var position = 0;
+    while (position < scores.size() && scores.get(position).getValue() >= score) {
+      position++;
+    }
+    if (position < TABLE_SIZE) {
+      scores.add(position, new Pair<>(name, score));
+      if (scores.size() > TABLE_SIZE) {
+        scores.remove(TABLE_SIZE, scores.size());
+      }
+    }
+    synchronized (this) {
+      //the server's table is about to change
+      hash = 0;
+      pages.clear();
+    }
+    communicator.send("HISCORE " + name + ":" + score);
+  }
+
+  /**
+   * Handle a message from the server
+   * @param message the message
+   */
+  private void receive(String message) {
+    if (message.startsWith("HISCORES")) {
+      receiveTable(message);
+    } else if (message.startsWith("HISCOREPAGE ")) {
+      receivePage(message);
+    } else if (message.startsWith("NEWSCORE")) {
+      synchronized (this) {
+        requestedAt = 0;
+      }
+      refresh();
+    }
+  }
+
+  /**
+   * Handle a HISCORES reply, skipping it if it is the same as the last one
+   * @param message the reply
+   */
+  private void receiveTable(String message) {
+    var content = message.hashCode();
+    synchronized (this) {
+      fetchedAt = System.currentTimeMillis();
+      requestedAt = 0;
+      if (loaded && content == hash) {
+        logger.debug("Online scores unchanged");
+        return;
+      }
+      hash = content;
+    }
+    var parsed = parseScores(message.substring("HISCORES".length()));
+    communicator.getDelivery().postLatestForService("HISCORES", () -> update(parsed));
+  }
+
+  /**
+   * Handle a HISCOREPAGE reply: "HISCOREPAGE version from count total" followed by either
+   * " UNCHANGED" or one name:score per line
+   * @param message the reply
+   */
+  private void receivePage(String message) {
+    var newline = message.indexOf('\n');
+    var header = (newline < 0 ? message : message.substring(0, newline)).split(" ");
+    long received;
+    int from;
+    int count;
+    try {
+      received = Long.parseLong(header[1]);
+      from = Integer.parseInt(header[2]);
+      count = Integer.parseInt(header[3]);
+    } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+      logger.error("Invalid high score page: {}", message);
+      return;
+    }
+    var key = key(from, count);
+    var unchanged = header.length > 5 && header[5].equals("UNCHANGED");
+    var page = unchanged ? null : parseScores(newline < 0 ? "" : message.substring(newline + 1));
+
+    var deliveries = new ArrayList<Runnable>();
+    var retry = false;
+    List<Pair<String, Integer>> table = null;
+    synchronized (this) {
+      fetchedAt = System.currentTimeMillis();
+      if (received != version) {
+        //pages of an older table are no longer valid
+        version = received;
+        pages.clear();
+      }
+      var answer = unchanged ? pages.get(key) : page;
+      if (answer == null) {
+        //the cached page was dropped while the request was in flight, so ask again in full
+        retry = true;
+      } else {
+        pages.put(key, answer);
+        var callbacks = waiting.remove(key);
+        if (callbacks != null) {
+          for (Consumer<List<Pair<String, Integer>>> callback : callbacks) {
+            deliveries.add(() -> callback.accept(answer));
+          }
+        }
+        if (key == key(0, TABLE_SIZE)) {
+          requestedAt = 0;
+          table = answer;
+        }
+      }
+    }
+    if (retry) {
+      fetch(from, count);
+      return;
+    }
+    var top = table;
+    communicator.getDelivery().postForService(() -> {
+      if (top != null) {
+        update(top);
+      }
+      deliveries.forEach(Runnable::run);
+    });
+  }
+
+  /**
+   * Replace the cached table with a new one, changing only the scores which differ, and run any
+   * tasks waiting for the first table
+   * @param table the new table
+   */
+  private void update(List<Pair<String, Integer>> table) {
+    if (!scores.equals(table)) {
+      logger.info("Online scores updated");
+      scores.setAll(table);
+    }
+    List<Runnable> callbacks;
+    synchronized (this) {
+      loaded = true;
+      callbacks = new ArrayList<>(loadedCallbacks);
+      loadedCallbacks.clear();
+    }
+    callbacks.forEach(Runnable::run);
+  }
+
+  /**
+   * Parse scores sent one name:score per line, skipping any that are invalid
+   * @param lines the scores
+   * @return the scores, in the order received
+   */
+  private static List<Pair<String, Integer>> parseScores(String lines) {
+    var parsed = new ArrayList<Pair<String, Integer>>();
+    for (String line : lines.split("\n")) {
+      var colon = line.lastIndexOf(':');
+      if (colon <= 0) {
+        continue;
+      }
+      try {
+        parsed.add(new Pair<>(line.substring(0, colon).trim(),
+            Integer.parseInt(line.substring(colon + 1).trim())));
+      } catch (NumberFormatException e) {
+        logger.warn("Skipping invalid online score: {}", line);
+      }
+    }
+    return parsed;
+  }
+
+  private static long key(int from, int count) {
+    return ((long) from << 32) | (count & 0xFFFFFFFFL);
+  }
+
+}
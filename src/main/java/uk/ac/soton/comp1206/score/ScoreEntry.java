@@ -0,0 +1,84 @@
+package uk.ac.soton.comp1206.score;
+
+import javafx.util.Pair;
+
+/**
+ * A ScoreEntry is a single local score: who scored it, when, and in which game mode.
+ */
+public class ScoreEntry {
+
+  /**
+   * The game mode of a single player challenge
+   */
+  public static final int CHALLENGE = 0;
+
+  /**
+   * The game mode of a multiplayer game
+   */
+  public static final int MULTIPLAYER = 1;
+
+  private final String name;
+  private final int score;
+  private final long timestamp;
+  private final int mode;
+
+  /**
+   * Create a new score entry
+   * @param name the player's name
+   * @param score the score
+   * @param timestamp when the game ended, in milliseconds since the epoch, or 0 if not known
+   * @param mode the game mode
+   */
+  public ScoreEntry(String name, int score, long timestamp, int mode) {
+    this.name = name;
+    this.score = score;
+    this.timestamp = timestamp;
+    this.mode = mode;
+  }
+
+  /**
+   * Get the player's name
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the score
+   * @return the score
+   */
+  public int getScore() {
+    return score;
+  }
+
+  /**
+   * Get when the game ended
+   * @return the time in milliseconds since the epoch, or 0 if not known
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Get the game mode
+   * @return the game mode
+   */
+  public int getMode() {
+    return mode;
+  }
+
+  /**
+   * Get the name and score as shown in a ScoresList
+   * @return the name and score
+   */
+  public Pair<String, Integer> toPair() {
+    return new Pair<>(name, score);
+  }
+
+  @Override
+  public String toString() {
+    return name + ":" + score;
+  }
+
+}
@@ -0,0 +1,305 @@
+package uk.ac.soton.comp1206.score;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A ScoreFile is a snapshot of the local scores in a binary file, read through a memory map.
+ * <br>
+ * The file starts with a fixed header, followed by one fixed width record per score in order of
+ * highest score first, followed by a dictionary holding each distinct name once. Because the
+ * records are fixed width and sorted, any score can be read by its position and the rank of a score
+ * found with a binary search, without reading the rest of the file. Opening a score file only reads
+ * the header, however many scores it holds.
+ * <br>
+ * Header (32 bytes): magic "TSCR", version (2 bytes), record size (2 bytes), record count (4 bytes),
+ * dictionary size (4 bytes), the last score log sequence the snapshot includes (8 bytes) and the
+ * dictionary offset (8 bytes).
+ * <br>
+ * Record (24 bytes): name offset in the dictionary (4 bytes), score (4 bytes), timestamp in
+ * milliseconds (8 bytes), game mode (4 bytes) and 4 reserved bytes.
+ * <br>
+ * Dictionary entry: the name length (2 bytes) followed by the name in UTF-8.
+ */
+public class ScoreFile implements Iterable<ScoreEntry> {
+
+  private static final Logger logger = LogManager.getLogger(ScoreFile.class);
+
+  /**
+   * The first four bytes of every score file, "TSCR"
+   */
+  public static final int MAGIC = 0x54534352;
+
+  /**
+   * The version of the file format written
+   */
+  public static final short VERSION = 1;
+
+  private static final int HEADER_SIZE = 32;
+  private static final int RECORD_SIZE = 24;
+
+  /**
+   * The longest name that can be stored, in UTF-8 bytes
+   */
+  private static final int MAX_NAME = 0xFFFF;
+
+  private final MappedByteBuffer buffer;
+  private final int size;
+  private final long sequence;
+  private final int dictionary;
+
+  /**
+   * Names already read from the dictionary, by offset. Most scores share a handful of names.
+   */
+  private final HashMap<Integer, String> names = new HashMap<>();
+
+  /**
+   * Map a score file and check its header
+   * @param file the score file
+   * @throws IOException if the file cannot be read or is not a valid score file
+   */
+  public ScoreFile(Path file) throws IOException {
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      //the mapping stays valid after the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException(file + " is not a score file");
+    }
+    var version = buffer.getShort(4);
+    if (version > VERSION) {
+      throw new IOException(file + " is version " + version + ", newer than this game supports");
+    }
+    var recordSize = buffer.getShort(6);
+    size = buffer.getInt(8);
+    var dictionarySize = buffer.getInt(12);
+    sequence = buffer.getLong(16);
+    var offset = buffer.getLong(24);
+    if (recordSize != RECORD_SIZE || size < 0 || dictionarySize < 0
+        || offset != HEADER_SIZE + (long) size * RECORD_SIZE
+        || offset + dictionarySize != buffer.capacity()) {
+      throw new IOException(file + " is truncated or damaged");
+    }
+    dictionary = (int) offset;
+    logger.info("Mapped {} scores from {}", size, file);
+  }
+
+  /**
+   * Get the number of scores in the file
+   * @return the number of scores
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the sequence number of the last score log entry included in the file
+   * @return the sequence number
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Get the score at a position without reading its name
+   * @param index the position, where 0 is the highest score
+   * @return the score
+   */
+  public int getScore(int index) {
+    return buffer.getInt(record(index) + 4);
+  }
+
+  /**
+   * Get the score at a position
+   * @param index the position, where 0 is the highest score
+   * @return the score
+   */
+  public ScoreEntry get(int index) {
+    var record = record(index);
+    return new ScoreEntry(name(buffer.getInt(record)), buffer.getInt(record + 4),
+        buffer.getLong(record + 8), buffer.getInt(record + 16));
+  }
+
+  /**
+   * Get the number of scores higher than or equal to a score, with a binary search
+   * @param score the score
+   * @return the number of scores at least as high
+   */
+  public int countAtLeast(int score) {
+    var low = 0;
+    var high = size;
+    while (low < high) {
+      var middle = (low + high) >>> 1;
+      if (getScore(middle) >= score) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Iterate over every score in order, highest first
+   * @return the iterator
+   */
+  @Override
+  public Iterator<ScoreEntry> iterator() {
+    return new Iterator<>() {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      public ScoreEntry next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+        return get(index++);
+      }
+    };
+  }
+
+  private int record(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return HEADER_SIZE + index * RECORD_SIZE;
+  }
+
+  /**
+   * Read a name from the dictionary
+   * @param offset the offset of the name in the dictionary
+   * @return the name
+   */
+  private synchronized String name(int offset) {
+    var name = names.get(offset);
+    if (name == null) {
+      var position = dictionary + offset;
+      var length = Short.toUnsignedInt(buffer.getShort(position));
+      var bytes = new byte[length];
+      buffer.get(position + 2, bytes);
+      name = new String(bytes, StandardCharsets.UTF_8);
+      names.put(offset, name);
+    }
+    return name;
+  }
+
+  /**
+   * Write a score file
+   * @param file the file to write
+   * @param sequence the sequence number of the last score log entry included
+   * @param scores the scores, highest first
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(Path file, long sequence, Iterator<ScoreEntry> scores)
+      throws IOException {
+    var offsets = new HashMap<String, Integer>();
+    var dictionary = new ByteArrayOutputStream();
+    var records = ByteBuffer.allocate(RECORD_SIZE * 2048);
+    var count = 0;
+    try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      channel.position(HEADER_SIZE);
+      while (scores.hasNext()) {
+        var score = scores.next();
+        var offset = offsets.get(score.getName());
+        if (offset == null) {
+          offset = dictionary.size();
+          var name = score.getName().getBytes(StandardCharsets.UTF_8);
+          var length = Math.min(name.length, MAX_NAME);
+          dictionary.write(length >>> 8);
+          dictionary.write(length);
+          dictionary.write(name, 0, length);
+          offsets.put(score.getName(), offset);
+        }
+        records.putInt(offset).putInt(score.getScore()).putLong(score.getTimestamp())
+            .putInt(score.getMode()).putInt(0);
+        count++;
+        if (!records.hasRemaining()) {
+          writeFully(channel, records.flip());
+          records.clear();
+        }
+      }
+      writeFully(channel, records.flip());
+      writeFully(channel, ByteBuffer.wrap(dictionary.toByteArray()));
+
+      //the header is written last, once the counts are known
+      var header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putInt(count)
+          .putInt(dictionary.size()).putLong(sequence)
+          .putLong(HEADER_SIZE + (long) count * RECORD_SIZE);
+      channel.position(0);
+      writeFully(channel, header.flip());
+      channel.force(true);
+    }
+    logger.info("Wrote {} scores ({} names) to {}", count, offsets.size(), file);
+  }
+
+  /**
+   * Convert scores from the legacy text format, one name:score per line, into a score file. Invalid
+   * lines are skipped, and the scores have no timestamp.
+   * @param text the legacy text file
+   * @param file the score file to write
+   * @throws IOException if either file cannot be read or written
+   */
+  public static void importText(Path text, Path file) throws IOException {
+    var scores = new ArrayList<ScoreEntry>();
+    for (String line : Files.readAllLines(text, StandardCharsets.UTF_8)) {
+      var score = parse(line, 0, ScoreEntry.CHALLENGE);
+      if (score != null) {
+        scores.add(score);
+      }
+    }
+    //the text file was written highest first, but may have been edited by hand
+    scores.sort((x, y) -> Integer.compare(y.getScore(), x.getScore()));
+    logger.info("Importing {} scores from {}", scores.size(), text);
+    write(file, 0, scores.iterator());
+  }
+
+  /**
+   * Parse a name:score line
+   * @param line the line
+   * @param timestamp the time the score was set
+   * @param mode the game mode
+   * @return the score, or null if the line is not valid
+   */
+  static ScoreEntry parse(String line, long timestamp, int mode) {
+    var colon = line.lastIndexOf(':');
+    if (colon < 0) {
+      return null;
+    }
+    try {
+      return new ScoreEntry(line.substring(0, colon),
+          Integer.parseInt(line.substring(colon + 1).trim()), timestamp, mode);
+    } catch (NumberFormatException e) {
+      logger.warn("Skipping invalid score: {}", line);
+      return null;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+}
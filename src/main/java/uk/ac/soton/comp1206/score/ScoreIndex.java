@@ -0,0 +1,273 @@
+package uk.ac.soton.comp1206.score;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The ScoreIndex holds every score in order of highest score first, with equal scores kept in the
+ * order they were added.
+ * <br>
+ * It is an order statistics tree: a randomly balanced binary search tree (a treap) where each node
+ * also knows the size of its subtree. Adding a score, finding the score at a rank, and finding the
+ * rank or percentile of a score all take O(log n) time, and the top K scores take O(log n + K), so
+ * the scores screen stays quick however many scores are kept.
+ */
+public class ScoreIndex implements Iterable<ScoreEntry> {
+
+  /**
+   * A single score in the tree
+   */
+  private static class Node {
+    final ScoreEntry entry;
+    final int score;
+    final long order;
+    final int priority;
+    Node left;
+    Node right;
+    int size = 1;
+
+    Node(ScoreEntry entry, long order, int priority) {
+      this.entry = entry;
+      this.score = entry.getScore();
+      this.order = order;
+      this.priority = priority;
+    }
+  }
+
+  private Node root;
+
+  /**
+   * The number of scores ever added, used to order equal scores
+   */
+  private long added = 0;
+
+  /**
+   * The state of the random number generator used for node priorities
+   */
+  private int seed = 0x2545F491;
+
+  /**
+   * Add a score after any higher or equal scores
+   * @param entry the score
+   */
+  public void add(ScoreEntry entry) {
+    root = insert(root, new Node(entry, added++, nextPriority()));
+  }
+
+  /**
+   * Get the number of scores
+   * @return the number of scores
+   */
+  public int size() {
+    return size(root);
+  }
+
+  /**
+   * Get the score at a position, where 0 is the highest score
+   * @param index the position
+   * @return the score
+   */
+  public ScoreEntry get(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    var node = root;
+    while (true) {
+      var left = size(node.left);
+      if (index < left) {
+        node = node.left;
+      } else if (index > left) {
+        index -= left + 1;
+        node = node.right;
+      } else {
+        return node.entry;
+      }
+    }
+  }
+
+  /**
+   * Get the highest scores
+   * @param count the number of scores to get
+   * @return up to count scores, highest first
+   */
+  public List<ScoreEntry> top(int count) {
+    return range(0, count);
+  }
+
+  /**
+   * Get the scores from a position onwards
+   * @param from the position of the first score, where 0 is the highest score
+   * @param count the number of scores to get
+   * @return up to count scores, highest first
+   */
+  public List<ScoreEntry> range(int from, int count) {
+    var scores = new ArrayList<ScoreEntry>(Math.max(0, Math.min(count, size() - from)));
+    var iterator = iterator(from);
+    while (iterator.hasNext() && scores.size() < count) {
+      scores.add(iterator.next());
+    }
+    return scores;
+  }
+
+  /**
+   * Get the number of scores higher than or equal to a score
+   * @param score the score
+   * @return the number of scores at least as high
+   */
+  public int countAtLeast(int score) {
+    var count = 0;
+    var node = root;
+    while (node != null) {
+      if (node.score >= score) {
+        count += size(node.left) + 1;
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get the position a new score would take in the table, after any higher or equal scores
+   * @param score the score
+   * @return the rank, where 1 is the top of the table
+   */
+  public int rankOf(int score) {
+    return countAtLeast(score) + 1;
+  }
+
+  /**
+   * Get the percentage of scores that are lower than a score
+   * @param score the score
+   * @return the percentile, from 0 to 100
+   */
+  public double percentile(int score) {
+    var size = size();
+    if (size == 0) {
+      return 100;
+    }
+    return 100.0 * (size - countAtLeast(score)) / size;
+  }
+
+  /**
+   * Iterate over every score in order, highest first
+   * @return the iterator
+   */
+  @Override
+  public Iterator<ScoreEntry> iterator() {
+    return iterator(0);
+  }
+
+  /**
+   * Iterate over the scores in order from a position onwards
+   * @param from the position of the first score, where 0 is the highest score
+   * @return the iterator
+   */
+  public Iterator<ScoreEntry> iterator(int from) {
+    //walk down to the first score, remembering the nodes still to visit after it
+    var stack = new ArrayDeque<Node>();
+    var node = from < 0 || from >= size() ? null : root;
+    while (node != null) {
+      var left = size(node.left);
+      if (from < left) {
+        stack.push(node);
+        node = node.left;
+      } else if (from > left) {
+        from -= left + 1;
+        node = node.right;
+      } else {
+        stack.push(node);
+        break;
+      }
+    }
+    //then carry on in order
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return !stack.isEmpty();
+      }
+
+      @Override
+      public ScoreEntry next() {
+        if (stack.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        var node = stack.pop();
+        for (var next = node.right; next != null; next = next.left) {
+          stack.push(next);
+        }
+        return node.entry;
+      }
+    };
+  }
+
+  /**
+   * Insert a node into a subtree, rotating it up while its priority is higher than its parent's
+   * @param tree the subtree
+   * @param node the new node
+   * @return the new root of the subtree
+   */
+  private static Node insert(Node tree, Node node) {
+    if (tree == null) {
+      return node;
+    }
+    tree.size++;
+    if (before(node, tree)) {
+      tree.left = insert(tree.left, node);
+      if (tree.left.priority > tree.priority) {
+        tree = rotateRight(tree);
+      }
+    } else {
+      tree.right = insert(tree.right, node);
+      if (tree.right.priority > tree.priority) {
+        tree = rotateLeft(tree);
+      }
+    }
+    return tree;
+  }
+
+  private static Node rotateRight(Node tree) {
+    var left = tree.left;
+    tree.left = left.right;
+    left.right = tree;
+    left.size = tree.size;
+    tree.size = size(tree.left) + size(tree.right) + 1;
+    return left;
+  }
+
+  private static Node rotateLeft(Node tree) {
+    var right = tree.right;
+    tree.right = right.left;
+    right.left = tree;
+    right.size = tree.size;
+    tree.size = size(tree.left) + size(tree.right) + 1;
+    return right;
+  }
+
+  /**
+   * Check whether one score comes before another: higher scores first, then older scores first
+   */
+  private static boolean before(Node a, Node b) {
+    return a.score != b.score ? a.score > b.score : a.order < b.order;
+  }
+
+  private static int size(Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * Get the next priority from a xorshift generator
+   * @return a random priority
+   */
+  private int nextPriority() {
+    seed ^= seed << 13;
+    seed ^= seed >>> 17;
+    seed ^= seed << 5;
+    return seed;
+  }
+
+}
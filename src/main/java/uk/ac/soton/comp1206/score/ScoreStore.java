@@ -0,0 +1,627 @@
+package uk.ac.soton.comp1206.score;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import javafx.util.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.score.ScoreWriter.Durability;
+
+/**
+ * The ScoreStore holds the local high scores for the whole game. Every score ever played is kept,
+ * and the store is shared by every scene.
+ * <br>
+ * Scores live in a snapshot (scores.N.dat), a ScoreFile read through a memory map, so opening the
+ * store does not read every score. New scores are held in a ScoreIndex and appended to a log file
+ * (scores.log) by a ScoreWriter. Queries combine the two, so adding a score never rewrites the
+ * scoreboard.
+ * <br>
+ * Adding a score only changes the scores in memory. The log, and every other write to the score
+ * files, is written on the ScoreWriter's thread, so a scene adding a score never waits for the
+ * disk. The store is opened in the background with open, whenLoaded gives the store once it has
+ * loaded, and shutdown waits for every score to be written.
+ * <br>
+ * Every so often, and when the game shuts down, the log is compacted into a new snapshot. The
+ * snapshot is written to a temporary file and renamed to the next generation's name, so a crash
+ * part way through a write can lose at most the score being written, never the scoreboard. Nothing
+ * is ever renamed over a snapshot, as Windows does not allow replacing a file which is still mapped.
+ * Older snapshots are deleted once they are replaced, and deletes refused because the old mapping
+ * is still alive are tried again after the next compaction. The snapshot records the sequence
+ * number of the last log entry it includes, so log entries left behind by a crash after a
+ * compaction are not counted twice.
+ * <br>
+ * The first time the store is opened, scores in the old text format (scores.txt) are imported.
+ */
+public class ScoreStore {
+
+  private static final Logger logger = LogManager.getLogger(ScoreStore.class);
+
+  /**
+   * The name of each generation of snapshot, scores.N.dat, where a higher N is newer
+   */
+  private static final Pattern SNAPSHOT = Pattern.compile("scores\\.(\\d{1,18})\\.dat");
+
+  /**
+   * The scores of older versions of the game, one name:score per line
+   */
+  public static final String LEGACY_FILE = "scores.txt";
+
+  /**
+   * The log of scores added since the last snapshot, one "sequence timestamp mode name:score" per
+   * line
+   */
+  public static final String LOG_FILE = "scores.log";
+
+  /**
+   * The number of logged scores which triggers a compaction. Larger histories wait until the log
+   * holds a tenth as many scores as the snapshot, so rewriting the snapshot stays a small share of
+   * the cost of each score.
+   */
+  private static final int COMPACT_EVERY = 100;
+
+  /**
+   * The number of default scores in a new score store
+   */
+  private static final int DEFAULT_SCORES = 10;
+
+  /**
+   * How long to wait for more scores before writing to the log, in milliseconds
+   */
+  private static final long WRITE_WINDOW = Long.getLong("tetrecs.scoreWriteDelay", 250);
+
+  /**
+   * The longest time shutdown waits for scores to be written, in milliseconds
+   */
+  private static final long CLOSE_TIMEOUT = 10000;
+
+  /**
+   * The part of a log entry after its sequence number: the timestamp, game mode and name:score
+   */
+  private static final Pattern LOG_ENTRY = Pattern.compile("(\\d+) (\\d+) (.*)");
+
+  private static CompletableFuture<ScoreStore> instance;
+
+  private final Path directory;
+  private final Path legacyFile;
+  private final Path logFile;
+
+  /**
+   * The scores in the last snapshot, or null if there is no snapshot
+   */
+  private ScoreFile snapshot;
+
+  /**
+   * The scores added since the last snapshot, highest first. Equal scores keep the order they were
+   * added in.
+   */
+  private ScoreIndex recent = new ScoreIndex();
+
+  /**
+   * The scores added since the last snapshot, in the order they were added
+   */
+  private List<ScoreEntry> added = new ArrayList<>();
+
+  /**
+   * The sequence number of the last score added
+   */
+  private long sequence = 0;
+
+  /**
+   * The highest snapshot generation on disk, whether or not it could be read. Only used while
+   * loading and then on the writer thread.
+   */
+  private long generation = 0;
+
+  private final ScoreWriter writer;
+
+  /**
+   * Start loading the score store shared by the whole game from the working directory, on a
+   * background thread
+   */
+  public static synchronized void open() {
+    if (instance == null) {
+      instance = CompletableFuture.supplyAsync(() -> new ScoreStore(Paths.get("")), runnable -> {
+        var thread = new Thread(runnable, "score-loader");
+        thread.setDaemon(true);
+        thread.start();
+      });
+    }
+  }
+
+  /**
+   * Get the score store shared by the whole game once it has finished loading. Scenes should
+   * continue on the JavaFX thread, such as with thenAcceptAsync and Platform.runLater, rather than
+   * wait for it.
+   * @return a future completed with the shared score store
+   */
+  public static synchronized CompletableFuture<ScoreStore> whenLoaded() {
+    open();
+    return instance;
+  }
+
+  /**
+   * Write every score and close the shared score store, if it has been opened. Waits for the
+   * writes to finish.
+   */
+  public static void shutdown() {
+    CompletableFuture<ScoreStore> store;
+    synchronized (ScoreStore.class) {
+      store = instance;
+    }
+    if (store != null) {
+      store.join().close();
+    }
+  }
+
+  /**
+   * Create a score store reading and writing the score files in the given directory, loading the
+   * scores on the calling thread
+   * @param directory the directory holding the score files
+   */
+  public ScoreStore(Path directory) {
+    this(directory, Durability.fromProperty());
+  }
+
+  /**
+   * Create a score store reading and writing the score files in the given directory, loading the
+   * scores on the calling thread
+   * @param directory the directory holding the score files
+   * @param durability when added scores are forced to the storage device
+   */
+  public ScoreStore(Path directory, Durability durability) {
+    this.directory = directory;
+    this.legacyFile = directory.resolve(LEGACY_FILE);
+    this.logFile = directory.resolve(LOG_FILE);
+    this.writer = new ScoreWriter(logFile, durability, WRITE_WINDOW, this::compactIfDue);
+    load();
+  }
+
+  /**
+   * Get the highest scores
+   * @param count the number of scores to get
+   * @return up to count scores, highest first
+   */
+  public synchronized List<Pair<String, Integer>> getTopScores(int count) {
+    return getScores(0, count);
+  }
+
+  /**
+   * Get the scores from a position in the table onwards
+   * @param from the position of the first score, where 0 is the highest score
+   * @param count the number of scores to get
+   * @return up to count scores, highest first
+   */
+  public synchronized List<Pair<String, Integer>> getScores(int from, int count) {
+    var scores = new ArrayList<Pair<String, Integer>>();
+    if (from < 0 || from >= size()) {
+      return scores;
+    }
+    var merged = merge(from);
+    while (merged.hasNext() && scores.size() < count) {
+      scores.add(merged.next().toPair());
+    }
+    return scores;
+  }
+
+  /**
+   * Get the position a new score would take in the table
+   * @param score the score
+   * @return the rank, where 1 is the top of the table
+   */
+  public synchronized int getRank(int score) {
+    return countAtLeast(score) + 1;
+  }
+
+  /**
+   * Get the percentage of stored scores lower than a score
+   * @param score the score
+   * @return the percentile, from 0 to 100
+   */
+  public synchronized double getPercentile(int score) {
+    var size = size();
+    if (size == 0) {
+      return 100;
+    }
+    return 100.0 * (size - countAtLeast(score)) / size;
+  }
+
+  /**
+   * Get the highest local score
+   * @return the highest score, or 0 if there are none
+   */
+  public synchronized int getHighScore() {
+    var high = 0;
+    if (snapshotSize() > 0) {
+      high = snapshot.getScore(0);
+    }
+    if (recent.size() > 0) {
+      high = Math.max(high, recent.get(0).getScore());
+    }
+    return high;
+  }
+
+  /**
+   * Get the number of scores stored
+   * @return the number of scores
+   */
+  public synchronized int size() {
+    return snapshotSize() + recent.size();
+  }
+
+  /**
+   * Add a new single player score and append it to the log
+   * @param name the player's name
+   * @param score the score
+   */
+  public void addScore(String name, int score) {
+    addScore(name, score, ScoreEntry.CHALLENGE);
+  }
+
+  /**
+   * Add a new score. It is added in memory straight away, and appended to the log in the
+   * background.
+   * @param name the player's name
+   * @param score the score
+   * @param mode the game mode the score was set in
+   */
+  public synchronized void addScore(String name, int score, int mode) {
+    //names are stored one per line
+    name = name.replace('\n', ' ').replace('\r', ' ');
+    var entry = new ScoreEntry(name, score, System.currentTimeMillis(), mode);
+    recent.add(entry);
+    added.add(entry);
+    sequence++;
+    writer.append(sequence + " " + entry.getTimestamp() + " " + mode + " " + entry + "\n");
+  }
+
+  /**
+   * Write every score and close the log, waiting for the writes to finish
+   */
+  public void close() {
+    writer.execute(() -> {
+      writer.write();
+      if (hasUnsavedScores()) {
+        compact();
+      }
+    });
+    writer.close(CLOSE_TIMEOUT);
+  }
+
+  private synchronized boolean hasUnsavedScores() {
+    return recent.size() > 0;
+  }
+
+  /**
+   * Compact the log once it holds enough scores. Run on the writer thread after each write.
+   */
+  private void compactIfDue() {
+    boolean due;
+    synchronized (this) {
+      due = recent.size() >= Math.max(COMPACT_EVERY, size() / 10);
+    }
+    if (due) {
+      compact();
+    }
+  }
+
+  /**
+   * Write every score to the next generation of snapshot, renamed into place in a single rename,
+   * and then empty the log and delete the older snapshots. Run on the writer thread.
+   * <br>
+   * The scores are copied when compaction starts and written without holding the lock, so scenes
+   * can keep reading and adding scores meanwhile. Scores added during the compaction stay in
+   * memory afterwards, and their log lines are written after the log is emptied.
+   */
+  private void compact() {
+    ScoreFile base;
+    List<ScoreEntry> captured;
+    long capturedSequence;
+    int capturedCount;
+    synchronized (this) {
+      base = snapshot;
+      captured = new ArrayList<>(recent.size());
+      recent.forEach(captured::add);
+      capturedSequence = sequence;
+      capturedCount = added.size();
+    }
+    var file = snapshotFile(generation + 1);
+    logger.info("Compacting {} logged scores into {}", capturedCount, file);
+    var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      ScoreFile.write(temporary, capturedSequence, merge(base, 0, captured.iterator()));
+      replace(temporary, file);
+      generation++;
+      var written = new ScoreFile(file);
+      synchronized (this) {
+        snapshot = written;
+        added = new ArrayList<>(added.subList(capturedCount, added.size()));
+        recent = new ScoreIndex();
+        added.forEach(recent::add);
+      }
+      //the snapshot now holds every score written to the log
+      writer.truncate();
+      deleteSnapshots(file);
+    } catch (IOException e) {
+      logger.error("Unable to compact scores: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Delete every snapshot but one. A snapshot which cannot be deleted yet, such as on Windows while
+   * an old mapping of it has not been garbage collected, is left for the next time.
+   * @param keep the snapshot to keep
+   */
+  private void deleteSnapshots(Path keep) {
+    try {
+      for (Path file : snapshots()) {
+        if (file.equals(keep)) {
+          continue;
+        }
+        try {
+          Files.deleteIfExists(file);
+          logger.debug("Deleted old snapshot {}", file);
+        } catch (IOException e) {
+          logger.debug("Unable to delete old snapshot {} yet: {}", file, e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to list old snapshots: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Find every snapshot in the score directory
+   * @return the snapshots, newest first
+   * @throws IOException if the directory cannot be listed
+   */
+  private List<Path> snapshots() throws IOException {
+    var snapshots = new ArrayList<Path>();
+    try (var files = Files.list(directory)) {
+      files.filter(file -> generationOf(file) >= 0).forEach(snapshots::add);
+    }
+    snapshots.sort(Comparator.comparingLong(ScoreStore::generationOf).reversed());
+    return snapshots;
+  }
+
+  /**
+   * Get the file a generation of snapshot is written to
+   * @param generation the generation
+   * @return the snapshot file
+   */
+  private Path snapshotFile(long generation) {
+    return directory.resolve("scores." + generation + ".dat");
+  }
+
+  /**
+   * Get the generation of a snapshot from its name
+   * @param file the file
+   * @return the generation, or -1 if the file is not a snapshot
+   */
+  private static long generationOf(Path file) {
+    var matcher = SNAPSHOT.matcher(file.getFileName().toString());
+    return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+  }
+
+  /**
+   * Open the newest snapshot which can be read, importing the legacy text scores if there is none,
+   * and then replay the log entries the snapshot does not already include
+   */
+  private void load() {
+    var found = false;
+    try {
+      Path loaded = null;
+      for (Path file : snapshots()) {
+        found = true;
+        generation = Math.max(generation, generationOf(file));
+        try {
+          snapshot = new ScoreFile(file);
+          loaded = file;
+          break;
+        } catch (IOException e) {
+          //keep a copy of the damaged file for inspection and fall back to an older snapshot
+          logger.error("Unable to open {}: {}", file, e.getMessage());
+          keepDamaged(file);
+        }
+      }
+      if (snapshot == null && Files.exists(legacyFile)) {
+        found = true;
+        loaded = snapshotFile(generation + 1);
+        var temporary = loaded.resolveSibling(loaded.getFileName() + ".tmp");
+        ScoreFile.importText(legacyFile, temporary);
+        replace(temporary, loaded);
+        generation++;
+        snapshot = new ScoreFile(loaded);
+      }
+      if (loaded != null) {
+        deleteSnapshots(loaded);
+      }
+      var compacted = snapshot == null ? 0 : snapshot.getSequence();
+      sequence = compacted;
+      if (Files.exists(logFile)) {
+        found = true;
+        replay(compacted);
+      }
+    } catch (IOException e) {
+      logger.error("Unable to read scores: {}", e.getMessage());
+    }
+    logger.info("Loaded {} local scores ({} from the log)", size(), recent.size());
+
+    //first run, so start with a table of default scores
+    if (!found) {
+      logger.info("Scores file does not exist. Writing default scores.");
+      for (int i = 0; i < DEFAULT_SCORES; i++) {
+        var entry = new ScoreEntry("Default", 0, 0, ScoreEntry.CHALLENGE);
+        recent.add(entry);
+        added.add(entry);
+      }
+      writer.execute(this::compact);
+    }
+  }
+
+  /**
+   * Copy a snapshot which cannot be read to a .bad file. The snapshot itself may still be mapped, so
+   * it is left where it is to be deleted later.
+   * @param file the damaged snapshot
+   */
+  private static void keepDamaged(Path file) {
+    try {
+      Files.copy(file, file.resolveSibling(file.getFileName() + ".bad"),
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      logger.error("Unable to keep a copy of {}: {}", file, e.getMessage());
+    }
+  }
+
+  /**
+   * Add the log entries after a sequence number to the recent scores. A partly written last log
+   * entry is discarded.
+   * @param compacted the sequence number of the last log entry in the snapshot
+   * @throws IOException if the log cannot be read
+   */
+  private void replay(long compacted) throws IOException {
+    var bytes = Files.readAllBytes(logFile);
+    var end = bytes.length;
+    //a crash while appending can leave a last line without its newline
+    while (end > 0 && bytes[end - 1] != '\n') {
+      end--;
+    }
+    if (end < bytes.length) {
+      logger.warn("Discarding a partly written score at the end of {}", logFile);
+      try (var log = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+        log.truncate(end);
+      }
+    }
+    var text = new String(bytes, 0, end, StandardCharsets.UTF_8);
+    for (String line : text.split("\n")) {
+      var space = line.indexOf(' ');
+      if (space <= 0) {
+        continue;
+      }
+      long entry;
+      try {
+        entry = Long.parseLong(line.substring(0, space));
+      } catch (NumberFormatException e) {
+        logger.warn("Skipping invalid score log entry: {}", line);
+        continue;
+      }
+      sequence = Math.max(sequence, entry);
+      if (entry <= compacted) {
+        continue;
+      }
+      var matcher = LOG_ENTRY.matcher(line.substring(space + 1));
+      ScoreEntry score = null;
+      try {
+        if (matcher.matches()) {
+          score = ScoreFile.parse(matcher.group(3), Long.parseLong(matcher.group(1)),
+              Integer.parseInt(matcher.group(2)));
+        }
+      } catch (NumberFormatException e) {
+        //reported below
+      }
+      if (score == null) {
+        logger.warn("Skipping invalid score log entry: {}", line);
+      }
+      if (score != null) {
+        recent.add(score);
+        added.add(score);
+      }
+    }
+  }
+
+  /**
+   * Count the scores higher than or equal to a score
+   * @param score the score
+   * @return the number of scores at least as high
+   */
+  private int countAtLeast(int score) {
+    return (snapshot == null ? 0 : snapshot.countAtLeast(score)) + recent.countAtLeast(score);
+  }
+
+  private int snapshotSize() {
+    return snapshot == null ? 0 : snapshot.size();
+  }
+
+  /**
+   * Iterate over the snapshot and recent scores together, highest first, starting from a position
+   * @param from the position of the first score, where 0 is the highest score
+   * @return the iterator
+   */
+  private Iterator<ScoreEntry> merge(int from) {
+    var saved = snapshotSize();
+    //binary search for how many of the first scores come from the snapshot
+    var low = Math.max(0, from - recent.size());
+    var high = Math.min(from, saved);
+    while (low < high) {
+      var middle = (low + high) >>> 1;
+      if (snapshot.getScore(middle) >= recent.get(from - middle - 1).getScore()) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return merge(snapshot, low, recent.iterator(from - low));
+  }
+
+  /**
+   * Iterate over snapshot scores and newer scores together, highest first. Snapshot scores come
+   * before newer scores that are equal to them, as they were set earlier.
+   * @param base the snapshot, or null if there is none
+   * @param start the position of the first snapshot score
+   * @param newer the newer scores, highest first
+   * @return the iterator
+   */
+  private static Iterator<ScoreEntry> merge(ScoreFile base, int start, Iterator<ScoreEntry> newer) {
+    var saved = base == null ? 0 : base.size();
+    return new Iterator<>() {
+      private int index = start;
+      private ScoreEntry next = newer.hasNext() ? newer.next() : null;
+
+      @Override
+      public boolean hasNext() {
+        return index < saved || next != null;
+      }
+
+      @Override
+      public ScoreEntry next() {
+        if (index < saved && (next == null || base.getScore(index) >= next.getScore())) {
+          return base.get(index++);
+        }
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        var entry = next;
+        next = newer.hasNext() ? newer.next() : null;
+        return entry;
+      }
+    };
+  }
+
+  /**
+   * Move a file over another in a single rename where the file system allows it
+   * @param from the file to move
+   * @param to the file to replace
+   * @throws IOException if the file cannot be moved
+   */
+  private static void replace(Path from, Path to) throws IOException {
+    try {
+      Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+}
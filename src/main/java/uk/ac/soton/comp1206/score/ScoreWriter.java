@@ -0,0 +1,195 @@
+package uk.ac.soton.comp1206.score;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The ScoreWriter appends lines to the score log on its own thread, so the thread adding a score
+ * never waits for the disk.
+ * <br>
+ * Lines appended within a short window of each other are written together in a single write. How
+ * soon the written lines are forced to the storage device is set by the durability policy.
+ * <br>
+ * Other disk work on the score files, such as compaction, is run on the same thread with execute,
+ * so it is never interleaved with a write to the log.
+ */
+public class ScoreWriter {
+
+  private static final Logger logger = LogManager.getLogger(ScoreWriter.class);
+
+  /**
+   * When written scores are forced to the storage device
+   */
+  public enum Durability {
+    /**
+     * After every write, so a score survives a power cut once its write completes
+     */
+    WRITE,
+
+    /**
+     * Only when the writer is closed. Cheaper on slow storage, but scores written since the game
+     * started can be lost if the machine loses power.
+     */
+    SHUTDOWN;
+
+    /**
+     * Get the durability policy from the tetrecs.scoreDurability system property, either "write"
+     * (the default) or "shutdown"
+     * @return the durability policy
+     */
+    public static Durability fromProperty() {
+      var value = System.getProperty("tetrecs.scoreDurability", "write");
+      return value.equalsIgnoreCase("shutdown") ? SHUTDOWN : WRITE;
+    }
+  }
+
+  private final Path file;
+  private final Durability durability;
+  private final long window;
+  private final Runnable afterWrite;
+  private final ScheduledThreadPoolExecutor executor;
+
+  /**
+   * Lines waiting to be written
+   */
+  private final StringBuilder pending = new StringBuilder();
+
+  /**
+   * Whether a write of the pending lines has been scheduled
+   */
+  private boolean scheduled = false;
+
+  /**
+   * The open log, only used on the writer thread
+   */
+  private FileChannel channel;
+
+  /**
+   * Create a new score writer
+   * @param file the log file to append to
+   * @param durability when to force written lines to the device
+   * @param window how long to wait after a line is appended for more lines to write with it, in
+   *     milliseconds
+   * @param afterWrite run on the writer thread after each write
+   */
+  public ScoreWriter(Path file, Durability durability, long window, Runnable afterWrite) {
+    this.file = file;
+    this.durability = durability;
+    this.window = window;
+    this.afterWrite = afterWrite;
+    this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      var thread = new Thread(runnable, "score-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    //once closed, everything pending has already been written
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  /**
+   * Queue a line to be appended to the log
+   * @param line the line, ending with a newline
+   */
+  public synchronized void append(String line) {
+    pending.append(line);
+    if (!scheduled) {
+      scheduled = true;
+      executor.schedule(this::write, window, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Run a task on the writer thread, after any writes already started
+   * @param task the task
+   */
+  public void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  /**
+   * Empty the log. Must be called on the writer thread.
+   * @throws IOException if the log cannot be truncated
+   */
+  public void truncate() throws IOException {
+    channel().truncate(0);
+  }
+
+  /**
+   * Write any pending lines now. Must be called on the writer thread.
+   */
+  public void write() {
+    String lines;
+    synchronized (this) {
+      scheduled = false;
+      if (pending.length() == 0) {
+        return;
+      }
+      lines = pending.toString();
+      pending.setLength(0);
+    }
+    try {
+      var buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+      var log = channel();
+      while (buffer.hasRemaining()) {
+        log.write(buffer);
+      }
+      if (durability == Durability.WRITE) {
+        log.force(false);
+      }
+      logger.debug("Wrote {} bytes of scores", lines.length());
+    } catch (IOException e) {
+      logger.error("Unable to write scores to {}: {}", file, e.getMessage());
+    }
+    afterWrite.run();
+  }
+
+  /**
+   * Write and force any pending lines, close the log and stop the writer thread, waiting for any
+   * tasks already queued to finish
+   * @param timeout the longest time to wait, in milliseconds
+   */
+  public void close(long timeout) {
+    executor.execute(() -> {
+      write();
+      if (channel != null) {
+        try {
+          channel.force(false);
+          channel.close();
+        } catch (IOException e) {
+          logger.error("Unable to close {}: {}", file, e.getMessage());
+        }
+        channel = null;
+      }
+    });
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+        logger.error("Timed out writing scores");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Open the log for appending if it is not already open
+   * @return the log channel
+   * @throws IOException if the log cannot be opened
+   */
+  private FileChannel channel() throws IOException {
+    if (channel == null) {
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+    }
+    return channel;
+  }
+
+}
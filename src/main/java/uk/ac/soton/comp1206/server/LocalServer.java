@@ -0,0 +1,883 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.BinaryProtocol;
+import uk.ac.soton.comp1206.utility.Threads;
+
+/**
+ * The LocalServer is an in-process (or standalone) implementation of the TetrECS server protocol.
+ * <br>
+ * It speaks the same web socket protocol as the university server, so the client, Communicator and
+ * MultiplayerGame can be run and load tested without a network connection. Each connection is served
+ * on its own thread, using virtual threads where the runtime supports them.
+ * <br>
+ * Clients which offer them are given permessage-deflate compression and the compact tetrecs-binary
+ * encoding of BOARD, SCORE, LIVES, PIECE, SCORES and HISCORES messages.
+ * <br>
+ * As well as HISCORES, the online high scores can be read a page at a time with
+ * "HISCOREPAGE from count [version]". The reply is "HISCOREPAGE version from count total" followed
+ * by one name:score per line, or by " UNCHANGED" if the client already has the given version of the
+ * table.
+ * <br>
+ * Run standalone with the port as the only argument, or start in the client by setting the
+ * tetrecs.localServer system property.
+ */
+public class LocalServer {
+
+  private static final Logger logger = LogManager.getLogger(LocalServer.class);
+
+  /**
+   * The port used when none is given
+   */
+  public static final int DEFAULT_PORT = 9700;
+
+  /**
+   * The number of online high scores returned by HISCORES
+   */
+  private static final int HISCORES_SHOWN = 10;
+
+  /**
+   * The maximum number of online high scores kept
+   */
+  private static final int HISCORES_KEPT = 10000;
+
+  /**
+   * The largest page of online high scores returned by HISCOREPAGE
+   */
+  private static final int HISCORES_PAGE_MAX = 100;
+
+  private final int requestedPort;
+  private ServerSocket serverSocket;
+  private ExecutorService executor;
+  private volatile boolean running = false;
+
+  /**
+   * The channels currently open on the server, by name
+   */
+  private final Map<String, ServerChannel> channels = new ConcurrentHashMap<>();
+
+  /**
+   * Every connected player
+   */
+  private final Set<ServerPlayer> players = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The online high scores, highest first
+   */
+  private final List<SimpleEntry<String, Integer>> hiscores = new ArrayList<>();
+
+  /**
+   * The version of the online high scores, increased each time a score is added
+   */
+  private long hiscoresVersion = 0;
+
+  private final AtomicInteger nextId = new AtomicInteger();
+
+  /**
+   * The bytes read and written by connections which have closed
+   */
+  private final LongAdder closedBytesRead = new LongAdder();
+  private final LongAdder closedBytesWritten = new LongAdder();
+
+  /**
+   * Create a new local server
+   * @param port the port to listen on, or 0 to use any free port
+   */
+  public LocalServer(int port) {
+    this.requestedPort = port;
+    //default online scores so the scores screen always has a full table
+    for (int i = 0; i < HISCORES_SHOWN; i++) {
+      hiscores.add(new SimpleEntry<>("Default", 0));
+    }
+  }
+
+  /**
+   * Start the server as a standalone process
+   * @param args the port to listen on (optional)
+   * @throws IOException if the port cannot be bound
+   * @throws InterruptedException if interrupted while running
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    var port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    var server = new LocalServer(port);
+    server.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    Thread.currentThread().join();
+  }
+
+  /**
+   * Bind the port and start accepting connections
+   * @throws IOException if the port cannot be bound
+   */
+  public synchronized void start() throws IOException {
+    if (running) {
+      return;
+    }
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(requestedPort), 4096);
+    executor = Threads.newPerTaskExecutor("local-server");
+    running = true;
+
+    var acceptThread = new Thread(this::acceptLoop, "local-server-accept");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+    logger.info("Local server listening on port {}", getPort());
+  }
+
+  /**
+   * Stop accepting connections and close every open connection
+   */
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    logger.info("Stopping local server");
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      logger.error(e);
+    }
+    for (ServerPlayer player : players) {
+      player.connection.close();
+    }
+    executor.shutdownNow();
+  }
+
+  /**
+   * Get the port the server is listening on
+   * @return the port
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Get the web socket address of this server
+   * @return the address to give to a Communicator
+   */
+  public String getAddress() {
+    return "ws://localhost:" + getPort();
+  }
+
+  /**
+   * Get the number of currently connected players
+   * @return the connection count
+   */
+  public int getConnectionCount() {
+    return players.size();
+  }
+
+  /**
+   * Get the number of bytes received from every client, including web socket frame headers
+   * @return the bytes received
+   */
+  public long getBytesReceived() {
+    return closedBytesRead.sum()
+        + players.stream().mapToLong(player -> player.connection.getBytesRead()).sum();
+  }
+
+  /**
+   * Get the number of bytes sent to every client, including web socket frame headers
+   * @return the bytes sent
+   */
+  public long getBytesSent() {
+    return closedBytesWritten.sum()
+        + players.stream().mapToLong(player -> player.connection.getBytesWritten()).sum();
+  }
+
+  /**
+   * Accept connections until the server is stopped
+   */
+  private void acceptLoop() {
+    while (running) {
+      try {
+        var socket = serverSocket.accept();
+        executor.execute(() -> serve(socket));
+      } catch (IOException e) {
+        if (running) {
+          logger.error("Accept failed: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Serve a single connection until it closes
+   * @param socket the accepted socket
+   */
+  private void serve(Socket socket) {
+    ServerPlayer player = null;
+    try {
+      socket.setTcpNoDelay(true);
+      var connection = new WebSocketConnection(socket);
+      connection.handshake();
+      player = new ServerPlayer(connection, "Guest" + nextId.incrementAndGet());
+      players.add(player);
+      logger.debug("{} connected from {} (binary {}, compressed {})", player.nickname,
+          socket.getRemoteSocketAddress(), connection.isBinary(), connection.isCompressed());
+
+      WebSocketConnection.Message message;
+      while ((message = connection.readMessage()) != null) {
+        //a message which cannot be handled is reported without dropping the player
+        try {
+          if (message.isBinary()) {
+            handleBinary(player, message.getData());
+          } else {
+            handle(player, message.getText());
+          }
+        } catch (RuntimeException e) {
+          logger.error("Unable to handle a message from {}", player.nickname, e);
+          player.send("ERROR Invalid message");
+        }
+      }
+    } catch (IOException e) {
+      logger.debug("Connection closed: {}", e.getMessage());
+    } finally {
+      if (player != null) {
+        disconnect(player);
+      } else {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          logger.debug(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Handle a single message from a player using the server protocol
+   * @param player the player who sent the message
+   * @param message the message received
+   */
+  void handle(ServerPlayer player, String message) {
+    var space = message.indexOf(' ');
+    var command = space < 0 ? message : message.substring(0, space);
+    var args = space < 0 ? "" : message.substring(space + 1);
+
+    switch (command) {
+      case "LIST" -> list(player);
+      case "CREATE" -> create(player, args.trim());
+      case "JOIN" -> join(player, args.trim());
+      case "PART" -> part(player);
+      case "NICK" -> nick(player, args.trim());
+      case "USERS" -> users(player);
+      case "MSG" -> chat(player, args);
+      case "START" -> startGame(player);
+      case "PIECE" -> piece(player);
+      case "SCORE" -> score(player, args.trim());
+      case "LIVES" -> lives(player, args.trim());
+      case "BOARD" -> board(player, args.trim());
+      case "SCORES" -> scores(player);
+      case "DIE" -> die(player);
+      case "HISCORES" -> sendHiscores(player, args.trim().equals("UNIQUE"));
+      case "HISCOREPAGE" -> sendHiscorePage(player, args.trim());
+      case "HISCORE" -> addHiscore(player, args.trim());
+      case "QUIT" -> player.connection.close();
+      default -> player.send("ERROR Unknown command " + command);
+    }
+  }
+
+  /**
+   * Handle a single binary message from a player. Boards are applied directly, any other message is
+   * handled in its text form.
+   * @param player the player who sent the message
+   * @param data the binary message
+   */
+  void handleBinary(ServerPlayer player, byte[] data) {
+    try {
+      if (BinaryProtocol.isBoard(data)) {
+        board(player, data);
+      } else {
+        handle(player, BinaryProtocol.decode(data));
+      }
+    } catch (IllegalArgumentException e) {
+      player.send("ERROR Invalid binary message");
+    }
+  }
+
+  /**
+   * Send the list of channels that can still be joined
+   * @param player the requesting player
+   */
+  private void list(ServerPlayer player) {
+    var message = new StringBuilder("CHANNELS ");
+    var first = true;
+    for (ServerChannel channel : channels.values()) {
+      synchronized (channel) {
+        if (channel.closed || channel.started) {
+          continue;
+        }
+      }
+      if (!first) {
+        message.append('\n');
+      }
+      message.append(channel.name);
+      first = false;
+    }
+    player.send(message.toString());
+  }
+
+  /**
+   * Create a new channel and join it as the host
+   * @param player the requesting player
+   * @param name the channel name
+   */
+  private void create(ServerPlayer player, String name) {
+    if (name.isEmpty()) {
+      player.send("ERROR No channel name given");
+      return;
+    }
+    if (player.channel != null) {
+      player.send("ERROR You are already in a channel");
+      return;
+    }
+    var channel = new ServerChannel(name);
+    if (channels.putIfAbsent(name, channel) != null) {
+      player.send("ERROR Channel " + name + " already exists");
+      return;
+    }
+    List<ServerPlayer> recipients;
+    String users;
+    synchronized (channel) {
+      channel.host = player;
+      channel.members.add(player);
+      player.channel = channel;
+      recipients = List.copyOf(channel.members);
+      users = channel.users();
+    }
+    player.send("JOIN " + name);
+    player.send("HOST");
+    broadcast(recipients, users);
+  }
+
+  /**
+   * Join an existing channel
+   * @param player the requesting player
+   * @param name the channel name
+   */
+  private void join(ServerPlayer player, String name) {
+    if (player.channel != null) {
+      player.send("ERROR You are already in a channel");
+      return;
+    }
+    var channel = channels.get(name);
+    if (channel == null) {
+      player.send("ERROR Channel " + name + " does not exist");
+      return;
+    }
+    List<ServerPlayer> recipients;
+    String users;
+    synchronized (channel) {
+      if (channel.closed) {
+        player.send("ERROR Channel " + name + " does not exist");
+        return;
+      }
+      if (channel.started) {
+        player.send("ERROR Game in " + name + " has already started");
+        return;
+      }
+      channel.members.add(player);
+      player.channel = channel;
+      recipients = List.copyOf(channel.members);
+      users = channel.users();
+    }
+    player.send("JOIN " + name);
+    broadcast(recipients, users);
+  }
+
+  /**
+   * Leave the current channel
+   * @param player the requesting player
+   */
+  private void part(ServerPlayer player) {
+    var channel = player.channel;
+    if (channel == null) {
+      player.send("ERROR You are not in a channel");
+      return;
+    }
+    leave(player, channel, false);
+    player.send("PARTED");
+  }
+
+  /**
+   * Remove a player from a channel, handing over the host and removing the channel when empty
+   * @param player the leaving player
+   * @param channel the channel to leave
+   * @param died whether the player is leaving because they died
+   */
+  private void leave(ServerPlayer player, ServerChannel channel, boolean died) {
+    List<ServerPlayer> recipients;
+    String users;
+    ServerPlayer newHost = null;
+    boolean started;
+    synchronized (channel) {
+      if (!channel.members.remove(player)) {
+        return;
+      }
+      player.channel = null;
+      started = channel.started;
+      if (started) {
+        player.dead = true;
+      }
+      if (channel.host == player && !channel.members.isEmpty()) {
+        newHost = channel.members.get(0);
+        channel.host = newHost;
+      }
+      if (channel.members.isEmpty()) {
+        channel.closed = true;
+        channels.remove(channel.name, channel);
+      }
+      recipients = List.copyOf(channel.members);
+      users = channel.users();
+    }
+    if (died || started) {
+      broadcast(recipients, "DIE " + player.nickname);
+    }
+    if (newHost != null && !started) {
+      newHost.send("HOST");
+    }
+    broadcast(recipients, users);
+  }
+
+  /**
+   * Change the player's nickname
+   * @param player the requesting player
+   * @param name the new nickname
+   */
+  private void nick(ServerPlayer player, String name) {
+    if (name.isEmpty() || name.contains(":") || name.contains("\n")) {
+      player.send("ERROR Invalid nickname");
+      return;
+    }
+    var old = player.nickname;
+    var channel = player.channel;
+    if (channel == null) {
+      player.nickname = name;
+      player.send("NICK " + name);
+      return;
+    }
+    List<ServerPlayer> recipients;
+    String users;
+    synchronized (channel) {
+      player.nickname = name;
+      recipients = List.copyOf(channel.members);
+      users = channel.users();
+    }
+    player.send("NICK " + name);
+    for (ServerPlayer other : recipients) {
+      if (other != player) {
+        other.send("NICK " + old + ":" + name);
+      }
+    }
+    broadcast(recipients, users);
+  }
+
+  /**
+   * Send the list of users in the player's channel
+   * @param player the requesting player
+   */
+  private void users(ServerPlayer player) {
+    var channel = player.channel;
+    if (channel == null) {
+      player.send("ERROR You are not in a channel");
+      return;
+    }
+    String users;
+    synchronized (channel) {
+      users = channel.users();
+    }
+    player.send(users);
+  }
+
+  /**
+   * Send a chat message to everyone in the player's channel
+   * @param player the requesting player
+   * @param text the chat message
+   */
+  private void chat(ServerPlayer player, String text) {
+    var channel = player.channel;
+    if (channel == null) {
+      player.send("ERROR You are not in a channel");
+      return;
+    }
+    List<ServerPlayer> recipients;
+    synchronized (channel) {
+      recipients = List.copyOf(channel.members);
+    }
+    broadcast(recipients, "MSG " + player.nickname + ":" + text);
+  }
+
+  /**
+   * Start the game in the player's channel if they are the host
+   * @param player the requesting player
+   */
+  private void startGame(ServerPlayer player) {
+    var channel = player.channel;
+    if (channel == null) {
+      player.send("ERROR You are not in a channel");
+      return;
+    }
+    List<ServerPlayer> recipients;
+    synchronized (channel) {
+      if (channel.host != player) {
+        player.send("ERROR You are not the host");
+        return;
+      }
+      if (channel.started) {
+        player.send("ERROR Game has already started");
+        return;
+      }
+      channel.started = true;
+      channel.roster.clear();
+      channel.roster.addAll(channel.members);
+      for (ServerPlayer member : channel.members) {
+        member.resetGame();
+      }
+      recipients = List.copyOf(channel.members);
+    }
+    broadcast(recipients, "START");
+  }
+
+  /**
+   * Send the player the next piece in the shared sequence
+   * @param player the requesting player
+   */
+  private void piece(ServerPlayer player) {
+    var channel = player.channel;
+    if (channel == null) {
+      player.send("ERROR You are not in a game");
+      return;
+    }
+    int piece;
+    synchronized (channel) {
+      if (!channel.started) {
+        player.send("ERROR Game has not started");
+        return;
+      }
+      piece = channel.piece(player.pieceIndex++);
+    }
+    player.send("PIECE " + piece);
+  }
+
+  /**
+   * Record the player's score and tell the other players
+   * @param player the requesting player
+   * @param value the new score
+   */
+  private void score(ServerPlayer player, String value) {
+    var channel = player.channel;
+    var score = parseNumber(player, value);
+    if (channel == null || score == null) {
+      return;
+    }
+    List<ServerPlayer> recipients;
+    synchronized (channel) {
+      player.score = score;
+      recipients = others(channel, player);
+    }
+    broadcast(recipients, "SCORE " + player.nickname + ":" + score);
+  }
+
+  /**
+   * Record the player's lives and tell the other players
+   * @param player the requesting player
+   * @param value the new number of lives
+   */
+  private void lives(ServerPlayer player, String value) {
+    var channel = player.channel;
+    var lives = parseNumber(player, value);
+    if (channel == null || lives == null) {
+      return;
+    }
+    List<ServerPlayer> recipients;
+    synchronized (channel) {
+      player.lives = lives;
+      recipients = others(channel, player);
+    }
+    broadcast(recipients, "LIVES " + player.nickname + ":" + lives);
+  }
+
+  /**
+   * Record the player's board and tell the other players. Accepts both full snapshots and the
+   * changed-cell DELTA form.
+   * @param player the requesting player
+   * @param values the board values
+   */
+  private void board(ServerPlayer player, String values) {
+    var channel = player.channel;
+    if (channel == null) {
+      return;
+    }
+    var tokens = values.isEmpty() ? new String[0] : values.split("\\s+");
+    List<ServerPlayer> recipients;
+    var relay = new StringBuilder("BOARD ").append(player.nickname).append(':');
+    synchronized (channel) {
+      try {
+        if (tokens.length > 0 && tokens[0].equals("DELTA")) {
+          for (int i = 1; i < tokens.length; i++) {
+            var colon = tokens[i].indexOf(':');
+            var index = Integer.parseInt(tokens[i].substring(0, colon));
+            if (index >= 0 && index < player.board.length) {
+              player.board[index] = Integer.parseInt(tokens[i].substring(colon + 1));
+            }
+          }
+        } else {
+          var board = new int[tokens.length];
+          for (int i = 0; i < tokens.length; i++) {
+            board[i] = Integer.parseInt(tokens[i]);
+          }
+          player.board = board;
+        }
+      } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+        player.send("ERROR Invalid board");
+        return;
+      }
+      for (int value : player.board) {
+        relay.append(value).append(' ');
+      }
+      recipients = others(channel, player);
+    }
+    broadcast(recipients, relay.toString());
+  }
+
+  /**
+   * Record a board sent in binary and tell the other players, without going through the text form
+   * @param player the requesting player
+   * @param data the binary BOARD or DELTA message
+   */
+  private void board(ServerPlayer player, byte[] data) {
+    var channel = player.channel;
+    if (channel == null) {
+      return;
+    }
+    List<ServerPlayer> recipients;
+    int[] board;
+    synchronized (channel) {
+      player.board = BinaryProtocol.applyBoard(data, player.board);
+      board = player.board.clone();
+      recipients = others(channel, player);
+    }
+    var encoded = BinaryProtocol.encodePlayerBoard(player.nickname, board);
+    String text = null;
+    for (ServerPlayer recipient : recipients) {
+      if (encoded != null && recipient.connection.isBinary()) {
+        recipient.connection.sendBinary(encoded);
+        continue;
+      }
+      if (text == null) {
+        var relay = new StringBuilder("BOARD ").append(player.nickname).append(':');
+        for (int value : board) {
+          relay.append(value).append(' ');
+        }
+        text = relay.toString();
+      }
+      recipient.connection.send(text);
+    }
+  }
+
+  /**
+   * Send the scores of every player in the player's game
+   * @param player the requesting player
+   */
+  private void scores(ServerPlayer player) {
+    var channel = player.channel;
+    if (channel == null) {
+      player.send("ERROR You are not in a game");
+      return;
+    }
+    String scores;
+    synchronized (channel) {
+      scores = channel.scores();
+    }
+    player.send(scores);
+  }
+
+  /**
+   * Mark the player as dead and remove them from their game
+   * @param player the requesting player
+   */
+  private void die(ServerPlayer player) {
+    var channel = player.channel;
+    if (channel == null) {
+      return;
+    }
+    leave(player, channel, true);
+  }
+
+  /**
+   * Send the top online high scores
+   * @param player the requesting player
+   * @param unique whether to only show the best score for each name
+   */
+  private void sendHiscores(ServerPlayer player, boolean unique) {
+    var message = new StringBuilder("HISCORES ");
+    var seen = new HashSet<String>();
+    var shown = 0;
+    synchronized (hiscores) {
+      for (SimpleEntry<String, Integer> entry : hiscores) {
+        if (shown == HISCORES_SHOWN) {
+          break;
+        }
+        if (unique && !seen.add(entry.getKey())) {
+          continue;
+        }
+        if (shown > 0) {
+          message.append('\n');
+        }
+        message.append(entry.getKey()).append(':').append(entry.getValue());
+        shown++;
+      }
+    }
+    player.send(message.toString());
+  }
+
+  /**
+   * Send a page of the online high scores, or just the version if the player already has it
+   * @param player the requesting player
+   * @param args the position of the first score, the number of scores and optionally the version
+   *     of the table the player already has
+   */
+  private void sendHiscorePage(ServerPlayer player, String args) {
+    var parts = args.split(" ");
+    if (parts.length < 2) {
+      player.send("ERROR Invalid high score page");
+      return;
+    }
+    var from = parseNumber(player, parts[0]);
+    var count = parseNumber(player, parts[1]);
+    if (from == null || count == null) {
+      return;
+    }
+    //echo the page as requested, so the client can tell apart replies to requests in flight at once
+    var message = new StringBuilder("HISCOREPAGE ");
+    var first = Math.max(0, from);
+    var last = first + Math.max(0, Math.min(count, HISCORES_PAGE_MAX));
+    synchronized (hiscores) {
+      message.append(hiscoresVersion).append(' ').append(from).append(' ').append(count).append(' ')
+          .append(hiscores.size());
+      if (parts.length > 2 && parts[2].equals(Long.toString(hiscoresVersion))) {
+        message.append(" UNCHANGED");
+      } else {
+        for (int i = first; i < Math.min(last, hiscores.size()); i++) {
+          var entry = hiscores.get(i);
+          message.append('\n').append(entry.getKey()).append(':').append(entry.getValue());
+        }
+      }
+    }
+    player.send(message.toString());
+  }
+
+  /**
+   * Add a new online high score
+   * @param player the requesting player
+   * @param value the name and score, separated by a colon
+   */
+  private void addHiscore(ServerPlayer player, String value) {
+    var colon = value.lastIndexOf(':');
+    if (colon <= 0) {
+      player.send("ERROR Invalid high score");
+      return;
+    }
+    var name = value.substring(0, colon);
+    var score = parseNumber(player, value.substring(colon + 1));
+    if (score == null) {
+      return;
+    }
+    synchronized (hiscores) {
+      //insert after any equal scores so earlier scores keep their place
+      var index = 0;
+      while (index < hiscores.size() && hiscores.get(index).getValue() >= score) {
+        index++;
+      }
+      hiscores.add(index, new SimpleEntry<>(name, score));
+      if (hiscores.size() > HISCORES_KEPT) {
+        hiscores.remove(hiscores.size() - 1);
+      }
+      hiscoresVersion++;
+    }
+    player.send("NEWSCORE " + name + ":" + score);
+  }
+
+  /**
+   * Clean up after a player disconnects
+   * @param player the disconnected player
+   */
+  private void disconnect(ServerPlayer player) {
+    players.remove(player);
+    var channel = player.channel;
+    if (channel != null) {
+      leave(player, channel, false);
+    }
+    player.connection.close();
+    closedBytesRead.add(player.connection.getBytesRead());
+    closedBytesWritten.add(player.connection.getBytesWritten());
+    logger.debug("{} disconnected", player.nickname);
+  }
+
+  /**
+   * Get every member of a channel apart from the given player. Must hold the channel lock.
+   * @param channel the channel
+   * @param player the player to leave out
+   * @return the other members
+   */
+  private static List<ServerPlayer> others(ServerChannel channel, ServerPlayer player) {
+    var others = new ArrayList<ServerPlayer>(channel.members.size());
+    for (ServerPlayer member : channel.members) {
+      if (member != player) {
+        others.add(member);
+      }
+    }
+    return others;
+  }
+
+  /**
+   * Send a message to every given player, encoding it at most once for those who use binary
+   * @param recipients the players to send to
+   * @param message the message to send
+   */
+  private static void broadcast(List<ServerPlayer> recipients, String message) {
+    byte[] encoded = null;
+    var encodedOnce = false;
+    for (ServerPlayer recipient : recipients) {
+      if (!encodedOnce && recipient.connection.isBinary()) {
+        encoded = BinaryProtocol.encode(message);
+        encodedOnce = true;
+      }
+      recipient.send(message, encoded);
+    }
+  }
+
+  /**
+   * Parse a number sent by a player, replying with an error if it is invalid
+   * @param player the player who sent the number
+   * @param value the value to parse
+   * @return the number, or null if invalid
+   */
+  private static Integer parseNumber(ServerPlayer player, String value) {
+    try {
+      return Integer.valueOf(value.trim());
+    } catch (NumberFormatException e) {
+      player.send("ERROR Invalid number " + value);
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+package uk.ac.soton.comp1206.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A channel (game lobby) on the LocalServer.
+ * <br>
+ * All fields are guarded by the channel's own lock, so activity in one channel never blocks another.
+ */
+class ServerChannel {
+
+  /**
+   * The name of the channel
+   */
+  final String name;
+
+  /**
+   * The players currently in the channel, in the order they joined
+   */
+  final List<ServerPlayer> members = new ArrayList<>();
+
+  /**
+   * Every player who took part in the started game, including players who have since died
+   */
+  final List<ServerPlayer> roster = new ArrayList<>();
+
+  /**
+   * The piece sequence shared by every player in the game
+   */
+  private final List<Integer> pieces = new ArrayList<>();
+
+  private final Random random = new Random();
+
+  /**
+   * The player allowed to start the game
+   */
+  ServerPlayer host;
+
+  /**
+   * Whether the game has started
+   */
+  boolean started = false;
+
+  /**
+   * Whether the channel has been removed from the server
+   */
+  boolean closed = false;
+
+  /**
+   * Create a new channel
+   * @param name the name of the channel
+   */
+  ServerChannel(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get the piece at the given position in the shared sequence, generating more as needed
+   * @param index the position in the sequence
+   * @return the piece value
+   */
+  int piece(int index) {
+    while (pieces.size() <= index) {
+      pieces.add(random.nextInt(15));
+    }
+    return pieces.get(index);
+  }
+
+  /**
+   * Build the USERS message listing the nicknames of every member
+   * @return the message
+   */
+  String users() {
+    var message = new StringBuilder("USERS ");
+    for (int i = 0; i < members.size(); i++) {
+      if (i > 0) {
+        message.append('\n');
+      }
+      message.append(members.get(i).nickname);
+    }
+    return message.toString();
+  }
+
+  /**
+   * Build the SCORES message listing the name, score and lives of every player in the game
+   * @return the message
+   */
+  String scores() {
+    var players = started ? roster : members;
+    var message = new StringBuilder("SCORES ");
+    for (int i = 0; i < players.size(); i++) {
+      var player = players.get(i);
+      if (i > 0) {
+        message.append('\n');
+      }
+      message.append(player.nickname).append(':').append(player.score).append(':');
+      if (player.dead) {
+        message.append("DEAD");
+      } else {
+        message.append(player.lives);
+      }
+    }
+    return message.toString();
+  }
+
+}
@@ -0,0 +1,103 @@
+package uk.ac.soton.comp1206.server;
+
+import uk.ac.soton.comp1206.network.BinaryProtocol;
+
+/**
+ * The state held by the LocalServer for a single connected player.
+ * <br>
+ * Fields describing the player's place in a channel are only changed while holding that channel's
+ * lock.
+ */
+class ServerPlayer {
+
+  /**
+   * The connection to this player's client
+   */
+  final WebSocketConnection connection;
+
+  /**
+   * The player's current nickname
+   */
+  volatile String nickname;
+
+  /**
+   * The channel the player is currently in, or null
+   */
+  volatile ServerChannel channel;
+
+  /**
+   * The player's current score in the game
+   */
+  int score = 0;
+
+  /**
+   * The player's remaining lives in the game
+   */
+  int lives = 3;
+
+  /**
+   * Whether the player has died in the game
+   */
+  boolean dead = false;
+
+  /**
+   * The index of the next piece in the channel's piece sequence to give this player
+   */
+  int pieceIndex = 0;
+
+  /**
+   * The last board received from this player, column by column
+   */
+  int[] board = new int[0];
+
+  /**
+   * Create a new player
+   * @param connection the player's connection
+   * @param nickname the initial nickname
+   */
+  ServerPlayer(WebSocketConnection connection, String nickname) {
+    this.connection = connection;
+    this.nickname = nickname;
+  }
+
+  /**
+   * Reset the game state ready for a new game
+   */
+  void resetGame() {
+    score = 0;
+    lives = 3;
+    dead = false;
+    pieceIndex = 0;
+    board = new int[0];
+  }
+
+  /**
+   * Send a message to this player, in binary if the player's client agreed to it and the message
+   * has a binary form
+   * @param message the message to send
+   */
+  void send(String message) {
+    if (connection.isBinary()) {
+      var encoded = BinaryProtocol.encode(message);
+      if (encoded != null) {
+        connection.sendBinary(encoded);
+        return;
+      }
+    }
+    connection.send(message);
+  }
+
+  /**
+   * Send a message to this player which has already been encoded
+   * @param message the text form of the message
+   * @param encoded the binary form of the message, or null if it has none
+   */
+  void send(String message, byte[] encoded) {
+    if (encoded != null && connection.isBinary()) {
+      connection.sendBinary(encoded);
+    } else {
+      connection.send(message);
+    }
+  }
+
+}
@@ -0,0 +1,559 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.BinaryProtocol;
+
+/**
+ * A WebSocketConnection is the server side of a single web socket connection to the LocalServer.
+ * <br>
+ * It performs the opening handshake and reads and writes the text, binary, ping, pong and close
+ * frames used by the TetrECS client.
+ * <br>
+ * If the client offers them, the connection accepts the permessage-deflate extension, compressing
+ * every message it sends with a shared compression context, and the tetrecs-binary subprotocol.
+ */
+public class WebSocketConnection {
+
+  private static final Logger logger = LogManager.getLogger(WebSocketConnection.class);
+
+  /**
+   * The GUID appended to the client key in the opening handshake
+   */
+  private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  /**
+   * The largest message accepted from a client
+   */
+  private static final int MAX_MESSAGE = 1 << 20;
+
+  private static final int OP_CONTINUATION = 0x0;
+  private static final int OP_TEXT = 0x1;
+  private static final int OP_BINARY = 0x2;
+  private static final int OP_CLOSE = 0x8;
+  private static final int OP_PING = 0x9;
+  private static final int OP_PONG = 0xA;
+
+  /**
+   * The frame header bit marking a compressed message
+   */
+  private static final int RSV1 = 0x40;
+
+  /**
+   * The end of every flushed deflate block, left off compressed messages
+   */
+  private static final byte[] DEFLATE_TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+  /**
+   * A message read from the client
+   */
+  public static class Message {
+    private final boolean binary;
+    private final byte[] data;
+
+    Message(boolean binary, byte[] data) {
+      this.binary = binary;
+      this.data = data;
+    }
+
+    /**
+     * Whether this is a binary message
+     * @return true if binary, false if text
+     */
+    public boolean isBinary() {
+      return binary;
+    }
+
+    /**
+     * Get the message payload
+     * @return the payload
+     */
+    public byte[] getData() {
+      return data;
+    }
+
+    /**
+     * Get the text of a text message
+     * @return the text
+     */
+    public String getText() {
+      return new String(data, StandardCharsets.UTF_8);
+    }
+  }
+
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+
+  /**
+   * Whether a close frame has been sent
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * Whether the client agreed to the tetrecs-binary subprotocol
+   */
+  private boolean binary = false;
+
+  /**
+   * Compresses sent messages if permessage-deflate was agreed, otherwise null. Guarded by out.
+   */
+  private Deflater deflater;
+
+  /**
+   * Whether to start each compressed message with a fresh compression context
+   */
+  private boolean resetDeflater = false;
+
+  /**
+   * Decompresses received messages if permessage-deflate was agreed, otherwise null
+   */
+  private Inflater inflater;
+
+  private volatile long bytesRead = 0;
+  private volatile long bytesWritten = 0;
+
+  /**
+   * Create a new connection over an accepted socket
+   * @param socket the accepted socket
+   * @throws IOException if the socket streams cannot be opened
+   */
+  public WebSocketConnection(Socket socket) throws IOException {
+    this.socket = socket;
+    this.in = new BufferedInputStream(socket.getInputStream());
+    this.out = new BufferedOutputStream(socket.getOutputStream());
+  }
+
+  /**
+   * Read the HTTP upgrade request and reply with the handshake response
+   * @throws IOException if the request is not a valid web socket upgrade
+   */
+  public void handshake() throws IOException {
+    String key = null;
+    var extensions = new StringBuilder();
+    var protocols = new StringBuilder();
+    String line;
+    while (!(line = readLine()).isEmpty()) {
+      var colon = line.indexOf(':');
+      if (colon <= 0) {
+        continue;
+      }
+      var name = line.substring(0, colon).trim();
+      var value = line.substring(colon + 1).trim();
+      if (name.equalsIgnoreCase("Sec-WebSocket-Key")) {
+        key = value;
+      } else if (name.equalsIgnoreCase("Sec-WebSocket-Extensions")) {
+        extensions.append(value).append(',');
+      } else if (name.equalsIgnoreCase("Sec-WebSocket-Protocol")) {
+        protocols.append(value).append(',');
+      }
+    }
+    if (key == null) {
+      throw new IOException("Missing Sec-WebSocket-Key");
+    }
+    var response = new StringBuilder("HTTP/1.1 101 Switching Protocols\r\n"
+        + "Upgrade: websocket\r\n"
+        + "Connection: Upgrade\r\n"
+        + "Sec-WebSocket-Accept: " + accept(key) + "\r\n");
+    for (String protocol : protocols.toString().split(",")) {
+      if (protocol.trim().equals(BinaryProtocol.SUBPROTOCOL)) {
+        binary = true;
+        response.append("Sec-WebSocket-Protocol: ").append(BinaryProtocol.SUBPROTOCOL).append("\r\n");
+        break;
+      }
+    }
+    var deflate = negotiateDeflate(extensions.toString());
+    if (deflate != null) {
+      response.append("Sec-WebSocket-Extensions: ").append(deflate).append("\r\n");
+    }
+    response.append("\r\n");
+    synchronized (out) {
+      out.write(response.toString().getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+    }
+  }
+
+  /**
+   * Accept the first permessage-deflate offer that can be honoured. The Deflater always uses the
+   * largest window, so offers limiting the server window are declined.
+   * @param offers the comma separated extension offers
+   * @return the extension response, or null if compression is not used
+   */
+  private String negotiateDeflate(String offers) {
+    for (String offer : offers.split(",")) {
+      var params = offer.split(";");
+      if (!params[0].trim().equals("permessage-deflate")) {
+        continue;
+      }
+      var response = new StringBuilder("permessage-deflate");
+      var acceptable = true;
+      var resetContext = false;
+      for (int i = 1; i < params.length; i++) {
+        var param = params[i].trim();
+        if (param.equals("server_no_context_takeover")) {
+          resetContext = true;
+        } else if (param.startsWith("server_max_window_bits")) {
+          acceptable = param.endsWith("15");
+        } else if (!param.startsWith("client_no_context_takeover")
+            && !param.startsWith("client_max_window_bits")) {
+          acceptable = false;
+        }
+      }
+      if (!acceptable) {
+        continue;
+      }
+      if (resetContext) {
+        response.append("; server_no_context_takeover");
+      }
+      resetDeflater = resetContext;
+      deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      inflater = new Inflater(true);
+      return response.toString();
+    }
+    return null;
+  }
+
+  /**
+   * Whether the client agreed to the tetrecs-binary subprotocol
+   * @return true if binary messages can be sent
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  /**
+   * Whether the client agreed to the permessage-deflate extension
+   * @return true if messages are compressed
+   */
+  public boolean isCompressed() {
+    return deflater != null;
+  }
+
+  /**
+   * Get the number of bytes read from the socket after the handshake, including frame headers
+   * @return the bytes read
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Get the number of bytes written to the socket after the handshake, including frame headers
+   * @return the bytes written
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Read the next text or binary message from the client, answering any ping frames in between
+   * @return the message, or null if the connection was closed
+   * @throws IOException if the connection fails
+   */
+  public Message readMessage() throws IOException {
+    var message = new ByteArrayOutputStream();
+    var messageBinary = false;
+    var compressed = false;
+    while (true) {
+      var first = in.read();
+      if (first < 0) {
+        return null;
+      }
+      var fin = (first & 0x80) != 0;
+      var opcode = first & 0x0F;
+      if (opcode != OP_CONTINUATION && opcode < OP_CLOSE) {
+        messageBinary = opcode == OP_BINARY;
+        compressed = (first & RSV1) != 0;
+        if (compressed && inflater == null) {
+          throw new IOException("Compressed message without permessage-deflate");
+        }
+      }
+      var second = readByte();
+      var masked = (second & 0x80) != 0;
+      long length = second & 0x7F;
+      if (length == 126) {
+        length = (readByte() << 8) | readByte();
+      } else if (length == 127) {
+        length = 0;
+        for (int i = 0; i < 8; i++) {
+          length = (length << 8) | readByte();
+        }
+        //the most significant bit must be 0
+        if (length < 0) {
+          close();
+          throw new IOException("Invalid frame length");
+        }
+      }
+      if (length > MAX_MESSAGE || message.size() + length > MAX_MESSAGE) {
+        close();
+        throw new IOException("Message too large");
+      }
+      var mask = new byte[4];
+      if (masked) {
+        readFully(mask);
+      }
+      var payload = new byte[(int) length];
+      readFully(payload);
+      bytesRead += 2 + (masked ? 4 : 0) + (length < 126 ? 0 : length < 65536 ? 2 : 8) + length;
+      if (masked) {
+        for (int i = 0; i < payload.length; i++) {
+          payload[i] ^= mask[i & 3];
+        }
+      }
+
+      switch (opcode) {
+        case OP_PING -> writeFrame(OP_PONG, payload);
+        case OP_PONG -> logger.debug("Pong received");
+        case OP_CLOSE -> {
+          close();
+          return null;
+        }
+        case OP_TEXT, OP_BINARY, OP_CONTINUATION -> {
+          message.write(payload);
+          if (fin) {
+            var data = compressed ? inflate(message.toByteArray()) : message.toByteArray();
+            return new Message(messageBinary, data);
+          }
+        }
+        default -> throw new IOException("Unknown opcode " + opcode);
+      }
+    }
+  }
+
+  /**
+   * Send a text message to the client
+   * @param message the message to send
+   */
+  public void send(String message) {
+    sendMessage(OP_TEXT, message.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Send a binary message to the client
+   * @param message the message to send
+   */
+  public void sendBinary(byte[] message) {
+    sendMessage(OP_BINARY, message);
+  }
+
+  /**
+   * Send a data message, compressing it if permessage-deflate was agreed
+   * @param opcode the frame opcode
+   * @param payload the message
+   */
+  private void sendMessage(int opcode, byte[] payload) {
+    if (closed) {
+      return;
+    }
+    try {
+      //compress while holding the lock so messages are sent in the order they were compressed
+      synchronized (out) {
+        if (deflater != null) {
+          writeFrame(opcode | RSV1, deflate(payload));
+        } else {
+          writeFrame(opcode, payload);
+        }
+      }
+    } catch (IOException e) {
+      logger.debug("Unable to send to {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+      closeSocket();
+    }
+  }
+
+  /**
+   * Compress a message, keeping the compression context for the next message unless the client
+   * asked for it to be reset. Must hold the out lock.
+   * @param payload the message
+   * @return the compressed message without the trailing empty block
+   */
+  private byte[] deflate(byte[] payload) {
+    deflater.setInput(payload);
+    var compressed = new ByteArrayOutputStream(payload.length / 2 + 16);
+    var buffer = new byte[Math.max(64, payload.length + 16)];
+    int length;
+    do {
+      length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+      compressed.write(buffer, 0, length);
+    } while (length == buffer.length);
+    if (resetDeflater) {
+      deflater.reset();
+    }
+    var bytes = compressed.toByteArray();
+    var end = bytes.length - DEFLATE_TAIL.length;
+    var copy = new byte[end];
+    System.arraycopy(bytes, 0, copy, 0, end);
+    return copy;
+  }
+
+  /**
+   * Decompress a message from the client, which may refer back to earlier messages
+   * @param payload the compressed message
+   * @return the message
+   * @throws IOException if the message cannot be decompressed
+   */
+  private byte[] inflate(byte[] payload) throws IOException {
+    var input = new byte[payload.length + DEFLATE_TAIL.length];
+    System.arraycopy(payload, 0, input, 0, payload.length);
+    System.arraycopy(DEFLATE_TAIL, 0, input, payload.length, DEFLATE_TAIL.length);
+    inflater.setInput(input);
+    var message = new ByteArrayOutputStream(payload.length * 4);
+    var buffer = new byte[Math.max(256, payload.length * 4)];
+    try {
+      while (!inflater.needsInput() && !inflater.finished()) {
+        var length = inflater.inflate(buffer);
+        if (length == 0 && inflater.needsDictionary()) {
+          throw new IOException("Compressed message needs a dictionary");
+        }
+        message.write(buffer, 0, length);
+        if (message.size() > MAX_MESSAGE) {
+          close();
+          throw new IOException("Message too large");
+        }
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid compressed message", e);
+    }
+    //a final block ends the compression context, so start a new one for the next message
+    if (inflater.finished()) {
+      inflater.reset();
+    }
+    return message.toByteArray();
+  }
+
+  /**
+   * Send a close frame and close the underlying socket
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    try {
+      writeFrame(OP_CLOSE, new byte[0]);
+    } catch (IOException e) {
+      logger.debug("Unable to send close frame: {}", e.getMessage());
+    }
+    closeSocket();
+  }
+
+  /**
+   * Whether this connection has been closed
+   * @return true if closed
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Write a single unmasked, unfragmented frame
+   * @param opcode the frame opcode, with the RSV1 bit set if the payload is compressed
+   * @param payload the frame payload
+   * @throws IOException if the write fails
+   */
+  private void writeFrame(int opcode, byte[] payload) throws IOException {
+    synchronized (out) {
+      if (closed) {
+        return;
+      }
+      out.write(0x80 | opcode);
+      bytesWritten += 2 + (payload.length < 126 ? 0 : payload.length < 65536 ? 2 : 8) + payload.length;
+      if (payload.length < 126) {
+        out.write(payload.length);
+      } else if (payload.length < 65536) {
+        out.write(126);
+        out.write(payload.length >>> 8);
+        out.write(payload.length);
+      } else {
+        out.write(127);
+        for (int i = 7; i >= 0; i--) {
+          out.write((int) ((long) payload.length >>> (8 * i)));
+        }
+      }
+      out.write(payload);
+      out.flush();
+      if ((opcode & 0x0F) == OP_CLOSE) {
+        closed = true;
+      }
+    }
+  }
+
+  /**
+   * Mark the connection closed and close the socket
+   */
+  private void closeSocket() {
+    closed = true;
+    try {
+      socket.close();
+    } catch (IOException e) {
+      logger.debug("Unable to close socket: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Read one CRLF terminated line of the HTTP request
+   * @return the line without the line ending
+   * @throws IOException if the stream ends first
+   */
+  private String readLine() throws IOException {
+    var line = new StringBuilder();
+    int c;
+    while ((c = readByte()) != '\n') {
+      if (c != '\r') {
+        line.append((char) c);
+      }
+      if (line.length() > 8192) {
+        throw new IOException("Header line too long");
+      }
+    }
+    return line.toString();
+  }
+
+  private int readByte() throws IOException {
+    var b = in.read();
+    if (b < 0) {
+      throw new EOFException();
+    }
+    return b;
+  }
+
+  private void readFully(byte[] buffer) throws IOException {
+    var read = 0;
+    while (read < buffer.length) {
+      var n = in.read(buffer, read, buffer.length - read);
+      if (n < 0) {
+        throw new EOFException();
+      }
+      read += n;
+    }
+  }
+
+  /**
+   * Compute the Sec-WebSocket-Accept value for a client key
+   * @param key the client key
+   * @return the accept value
+   */
+  private static String accept(String key) {
+    try {
+      var sha1 = MessageDigest.getInstance("SHA-1");
+      var digest = sha1.digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,168 @@
+package uk.ac.soton.comp1206.telemetry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A GameRecord is a view of one game's block in a telemetry file. Values are read straight from the
+ * file's buffer when asked for, so no moves are copied.
+ * <br>
+ * Moves are numbered from 0 in the order they were played.
+ */
+public class GameRecord {
+
+  private final ByteBuffer buffer;
+  private final int offset;
+  private final int moves;
+
+  /**
+   * Create a view of a block
+   * @param buffer the buffer holding the block, only read with absolute gets
+   * @param offset the position of the block's length in the buffer
+   */
+  GameRecord(ByteBuffer buffer, int offset) {
+    this.buffer = buffer;
+    this.offset = offset + 4;
+    this.moves = buffer.getInt(this.offset + 8);
+  }
+
+  /**
+   * Get when the game ended
+   * @return the time in milliseconds since the epoch
+   */
+  public long getEndedAt() {
+    return buffer.getLong(offset);
+  }
+
+  /**
+   * Get the number of moves in the game
+   * @return the number of moves
+   */
+  public int getMoves() {
+    return moves;
+  }
+
+  /**
+   * Get the score at the end of the game
+   * @return the final score
+   */
+  public int getFinalScore() {
+    return buffer.getInt(offset + 12);
+  }
+
+  /**
+   * Get the level at the end of the game
+   * @return the final level
+   */
+  public int getFinalLevel() {
+    return buffer.get(offset + 16);
+  }
+
+  /**
+   * Get the value of the piece played in a move
+   * @param move the move
+   * @return the piece value
+   */
+  public int getPiece(int move) {
+    return buffer.get(column(0) + move);
+  }
+
+  /**
+   * Get the x position a piece was placed at
+   * @param move the move
+   * @return the x position of the piece's centre, or -1 if the piece was not placed
+   */
+  public int getX(int move) {
+    return buffer.get(column(1) + move);
+  }
+
+  /**
+   * Get the y position a piece was placed at
+   * @param move the move
+   * @return the y position of the piece's centre, or -1 if the piece was not placed
+   */
+  public int getY(int move) {
+    return buffer.get(column(2) + move);
+  }
+
+  /**
+   * Get whether the piece was placed before the timer ran out
+   * @param move the move
+   * @return true if the piece was placed
+   */
+  public boolean isPlaced(int move) {
+    return getX(move) >= 0;
+  }
+
+  /**
+   * Get the number of times a piece was rotated before the move
+   * @param move the move
+   * @return the number of rotations
+   */
+  public int getRotations(int move) {
+    return buffer.get(column(3) + move);
+  }
+
+  /**
+   * Get the number of lines cleared by a move
+   * @param move the move
+   * @return the number of lines
+   */
+  public int getLines(int move) {
+    return buffer.get(column(4) + move) & 0xFF;
+  }
+
+  /**
+   * Get the number of blocks cleared by a move
+   * @param move the move
+   * @return the number of blocks
+   */
+  public int getBlocks(int move) {
+    return buffer.get(column(5) + move) & 0xFF;
+  }
+
+  /**
+   * Get the level when a move was played
+   * @param move the move
+   * @return the level
+   */
+  public int getLevel(int move) {
+    return buffer.get(column(6) + move);
+  }
+
+  /**
+   * Get how long the player took over a move
+   * @param move the move
+   * @return the think time in milliseconds
+   */
+  public int getThinkTime(int move) {
+    return buffer.getInt(column(7) + move * 4);
+  }
+
+  /**
+   * Get the timer delay when a move was played
+   * @param move the move
+   * @return the timer delay in milliseconds
+   */
+  public int getDelay(int move) {
+    return buffer.getChar(column(7) + moves * 4 + move * 2);
+  }
+
+  /**
+   * Get the score after a move
+   * @param move the move
+   * @return the score
+   */
+  public int getScore(int move) {
+    return buffer.getInt(column(7) + moves * 6 + move * 4);
+  }
+
+  /**
+   * Get the position of one of the single byte columns, or of the first wider column
+   * @param index the column
+   * @return the position of the column in the buffer
+   */
+  private int column(int index) {
+    return offset + GameTelemetry.HEADER_SIZE + index * moves;
+  }
+
+}
@@ -0,0 +1,217 @@
+package uk.ac.soton.comp1206.telemetry;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * GameTelemetry records every move of a single game: the piece played, where it was placed, how
+ * many times it was rotated, how long the player took, what was cleared, and the level, timer delay
+ * and score at the time. A move where the timer ran out before the piece was placed is recorded
+ * with an x and y of -1.
+ * <br>
+ * Moves are recorded from both the JavaFX thread and the game timer, so every method is
+ * synchronized. A placed piece is held aside until cleared completes its move, so a timer running
+ * out in between records its own move rather than overwriting the placed one. Each value is kept in
+ * its own array, so the game is written out as one column per value by toBlock. The layout of a
+ * block is described in TelemetryLog.
+ */
+public class GameTelemetry {
+
+  /**
+   * The number of bytes each move takes in a block
+   */
+  static final int MOVE_SIZE = 17;
+
+  /**
+   * The number of bytes in a block header, after the block length
+   */
+  static final int HEADER_SIZE = 17;
+
+  private byte[] pieces = new byte[64];
+  private byte[] xs = new byte[64];
+  private byte[] ys = new byte[64];
+  private byte[] rotations = new byte[64];
+  private byte[] lines = new byte[64];
+  private byte[] blocks = new byte[64];
+  private byte[] levels = new byte[64];
+  private int[] thinkTimes = new int[64];
+  private char[] delays = new char[64];
+  private int[] scores = new int[64];
+  private int moves = 0;
+
+  /**
+   * The clock think times are measured with, in nanoseconds
+   */
+  private final LongSupplier clock;
+
+  /**
+   * When the current piece became playable, in nanoseconds
+   */
+  private long moveStarted;
+
+  /**
+   * The rotations of the current piece so far
+   */
+  private int rotated = 0;
+
+  /**
+   * The piece placed and waiting for cleared to complete its move, or -1 if there is none
+   */
+  private int placedPiece = -1;
+  private int placedX;
+  private int placedY;
+  private int placedRotations;
+  private int placedLevel;
+  private int placedThinkTime;
+  private int placedDelay;
+
+  /**
+   * Create a new game's telemetry
+   */
+  public GameTelemetry() {
+    this(System::nanoTime);
+  }
+
+  /**
+   * Create a new game's telemetry, timing moves with a given clock
+   * @param clock the clock, in nanoseconds
+   */
+  GameTelemetry(LongSupplier clock) {
+    this.clock = clock;
+    this.moveStarted = clock.getAsLong();
+  }
+
+  /**
+   * Start timing a new move, when a new piece becomes playable
+   */
+  public synchronized void startMove() {
+    moveStarted = clock.getAsLong();
+    rotated = 0;
+  }
+
+  /**
+   * Count rotations of the current piece
+   * @param count the number of rotations
+   */
+  public synchronized void rotated(int count) {
+    rotated += count;
+  }
+
+  /**
+   * Record a piece being placed. The move is completed by cleared.
+   * @param piece the piece value
+   * @param x the x position of the piece's centre
+   * @param y the y position of the piece's centre
+   * @param level the level when the piece was placed
+   * @param delay the timer delay when the piece was placed, in milliseconds
+   */
+  public synchronized void placed(int piece, int x, int y, int level, int delay) {
+    placedPiece = piece;
+    placedX = x;
+    placedY = y;
+    placedRotations = rotated;
+    placedLevel = level;
+    placedThinkTime = (int) ((clock.getAsLong() - moveStarted) / 1000000);
+    placedDelay = delay;
+  }
+
+  /**
+   * Complete the move of a placed piece
+   * @param linesCleared the number of lines cleared
+   * @param blocksCleared the number of blocks cleared
+   * @param score the score after the move
+   */
+  public synchronized void cleared(int linesCleared, int blocksCleared, int score) {
+    if (placedPiece < 0) {
+      return;
+    }
+    add(placedPiece, placedX, placedY, placedRotations, placedLevel, placedThinkTime, placedDelay,
+        linesCleared, blocksCleared, score);
+    placedPiece = -1;
+  }
+
+  /**
+   * Record the timer running out before a piece was placed
+   * @param piece the piece value
+   * @param level the level at the time
+   * @param delay the timer delay, in milliseconds
+   * @param score the score at the time
+   */
+  public synchronized void expired(int piece, int level, int delay, int score) {
+    add(piece, -1, -1, rotated, level, (int) ((clock.getAsLong() - moveStarted) / 1000000), delay,
+        0, 0, score);
+  }
+
+  /**
+   * Add a completed move. The values are those given to placed and cleared, with the rotations and
+   * think time of the move.
+   */
+  private void add(int piece, int x, int y, int turns, int level, int thinkTime, int delay,
+      int linesCleared, int blocksCleared, int score) {
+    grow();
+    pieces[moves] = (byte) piece;
+    xs[moves] = (byte) x;
+    ys[moves] = (byte) y;
+    rotations[moves] = (byte) Math.min(turns, 127);
+    levels[moves] = (byte) Math.min(level, 127);
+    thinkTimes[moves] = thinkTime;
+    delays[moves] = (char) delay;
+    lines[moves] = (byte) linesCleared;
+    blocks[moves] = (byte) blocksCleared;
+    scores[moves] = score;
+    moves++;
+  }
+
+  /**
+   * Get the number of moves recorded
+   * @return the number of moves
+   */
+  public synchronized int getMoves() {
+    return moves;
+  }
+
+  /**
+   * Encode the game as a block, one column per value
+   * @param endedAt when the game ended, in milliseconds since the epoch
+   * @param finalScore the score at the end of the game
+   * @param finalLevel the level at the end of the game
+   * @return the block, ready to be written
+   */
+  public synchronized ByteBuffer toBlock(long endedAt, int finalScore, int finalLevel) {
+    var length = HEADER_SIZE + moves * MOVE_SIZE;
+    var block = ByteBuffer.allocate(4 + length);
+    block.putInt(length).putLong(endedAt).putInt(moves).putInt(finalScore)
+        .put((byte) Math.min(finalLevel, 127));
+    block.put(pieces, 0, moves).put(xs, 0, moves).put(ys, 0, moves).put(rotations, 0, moves)
+        .put(lines, 0, moves).put(blocks, 0, moves).put(levels, 0, moves);
+    block.asIntBuffer().put(thinkTimes, 0, moves);
+    block.position(block.position() + moves * 4);
+    block.asCharBuffer().put(delays, 0, moves);
+    block.position(block.position() + moves * 2);
+    block.asIntBuffer().put(scores, 0, moves);
+    block.position(block.position() + moves * 4);
+    return block.flip();
+  }
+
+  /**
+   * Make room for another move
+   */
+  private void grow() {
+    if (moves < pieces.length) {
+      return;
+    }
+    var size = pieces.length * 2;
+    pieces = Arrays.copyOf(pieces, size);
+    xs = Arrays.copyOf(xs, size);
+    ys = Arrays.copyOf(ys, size);
+    rotations = Arrays.copyOf(rotations, size);
+    lines = Arrays.copyOf(lines, size);
+    blocks = Arrays.copyOf(blocks, size);
+    levels = Arrays.copyOf(levels, size);
+    thinkTimes = Arrays.copyOf(thinkTimes, size);
+    delays = Arrays.copyOf(delays, size);
+    scores = Arrays.copyOf(scores, size);
+  }
+
+}
@@ -0,0 +1,259 @@
+package uk.ac.soton.comp1206.telemetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * TelemetryAnalytics answers questions about every game in a telemetry file, to tune the difficulty
+ * curve and scoring from real games.
+ * <br>
+ * The file is read through a memory-mapped window which slides over it, so memory use does not grow
+ * with the number of games. The games in each window are aggregated in parallel on the common
+ * fork/join pool, each worker into its own result, which are then merged.
+ * <br>
+ * Run on its own, it logs a report of the telemetry file given, or of telemetry.dat.
+ */
+public class TelemetryAnalytics {
+
+  private static final Logger logger = LogManager.getLogger(TelemetryAnalytics.class);
+
+  /**
+   * The most bytes of the file mapped at once
+   */
+  private static final int WINDOW = 16 * 1024 * 1024;
+
+  /**
+   * The number of piece values
+   */
+  public static final int PIECES = 15;
+
+  /**
+   * The highest level reported on separately. Games ending on higher levels are counted with it.
+   */
+  public static final int MAX_LEVEL = 30;
+
+  private final Path file;
+
+  /**
+   * The most bytes of the file mapped at once by this instance
+   */
+  private final int window;
+
+  /**
+   * Create analytics over a telemetry file
+   * @param file the telemetry file
+   */
+  public TelemetryAnalytics(Path file) {
+    this(file, WINDOW);
+  }
+
+  /**
+   * Create analytics over a telemetry file, mapping a given number of bytes at once
+   * @param file the telemetry file
+   * @param window the most bytes of the file mapped at once
+   */
+  TelemetryAnalytics(Path file, int window) {
+    this.file = file;
+    this.window = window;
+  }
+
+  /**
+   * Aggregate every game in the file, in parallel. Each worker creates its own result with the
+   * supplier and adds games to it with the accumulator; the results are merged with the combiner.
+   * <br>
+   * A game record is only valid within the call to the accumulator.
+   * @param supplier creates an empty result
+   * @param accumulator adds a game to a result
+   * @param combiner merges the second result into the first
+   * @param <A> the type of the result
+   * @return the result for every game
+   * @throws IOException if the file cannot be read or is not a telemetry file
+   */
+  public <A> A aggregate(Supplier<A> supplier, BiConsumer<A, GameRecord> accumulator,
+      BiConsumer<A, A> combiner) throws IOException {
+    var result = supplier.get();
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      var size = channel.size();
+      checkHeader(channel);
+      var offsets = new int[window / (4 + GameTelemetry.HEADER_SIZE) + 1];
+      long position = TelemetryLog.FILE_HEADER_SIZE;
+      var games = 0L;
+      while (position + 4 <= size) {
+        var mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(window, size - position));
+        //find every complete block in the window
+        var count = 0;
+        var end = 0;
+        while (end + 4 <= mapped.limit()) {
+          var length = mapped.getInt(end);
+          if (length < GameTelemetry.HEADER_SIZE || end + 4L + length > mapped.limit()) {
+            break;
+          }
+          offsets[count++] = end;
+          end += 4 + length;
+        }
+        if (count == 0) {
+          var length = mapped.getInt(0);
+          if (length < GameTelemetry.HEADER_SIZE || position + 4 + length > size) {
+            //a partial game at the end of the file
+            logger.warn("Ignoring {} bytes of incomplete telemetry", size - position);
+            break;
+          }
+          //a single game larger than the window
+          mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, 4 + length);
+          offsets[count++] = 0;
+          end = 4 + length;
+        }
+        var buffer = mapped;
+        var blocks = offsets;
+        var partial = IntStream.range(0, count).parallel().collect(supplier,
+            (aggregate, i) -> accumulator.accept(aggregate, new GameRecord(buffer, blocks[i])),
+            combiner);
+        combiner.accept(result, partial);
+        games += count;
+        position += end;
+      }
+      logger.info("Aggregated {} games from {}", games, file);
+    }
+    return result;
+  }
+
+  /**
+   * Get the average final score of games by the level they ended on
+   * @return the average score for each level up to MAX_LEVEL, or NaN where no game ended on it
+   * @throws IOException if the file cannot be read
+   */
+  public double[] averageScoreByLevel() throws IOException {
+    var totals = aggregate(() -> new long[2][MAX_LEVEL + 1], (sums, game) -> {
+      var level = Math.max(0, Math.min(MAX_LEVEL, game.getFinalLevel()));
+      sums[0][level] += game.getFinalScore();
+      sums[1][level]++;
+    }, TelemetryAnalytics::add);
+    var averages = new double[MAX_LEVEL + 1];
+    for (var level = 0; level <= MAX_LEVEL; level++) {
+      averages[level] = totals[1][level] == 0 ? Double.NaN
+          : (double) totals[0][level] / totals[1][level];
+    }
+    return averages;
+  }
+
+  /**
+   * Count the pieces placed at each position of the board
+   * @param cols the number of columns on the board
+   * @param rows the number of rows on the board
+   * @return the number of pieces centred on each position, by x then y
+   * @throws IOException if the file cannot be read
+   */
+  public long[][] placementHeatmap(int cols, int rows) throws IOException {
+    return aggregate(() -> new long[cols][rows], (counts, game) -> {
+      for (var move = 0; move < game.getMoves(); move++) {
+        var x = game.getX(move);
+        var y = game.getY(move);
+        if (x >= 0 && x < cols && y >= 0 && y < rows) {
+          counts[x][y]++;
+        }
+      }
+    }, TelemetryAnalytics::add);
+  }
+
+  /**
+   * Get how often each piece is placed before the timer runs out
+   * @return the fraction of each piece value which was placed, or NaN for pieces never played
+   * @throws IOException if the file cannot be read
+   */
+  public double[] pieceSurvival() throws IOException {
+    var counts = aggregate(() -> new long[2][PIECES], (played, game) -> {
+      for (var move = 0; move < game.getMoves(); move++) {
+        var piece = game.getPiece(move);
+        if (piece >= 0 && piece < PIECES) {
+          played[1][piece]++;
+          if (game.isPlaced(move)) {
+            played[0][piece]++;
+          }
+        }
+      }
+    }, TelemetryAnalytics::add);
+    var survival = new double[PIECES];
+    for (var piece = 0; piece < PIECES; piece++) {
+      survival[piece] = counts[1][piece] == 0 ? Double.NaN
+          : (double) counts[0][piece] / counts[1][piece];
+    }
+    return survival;
+  }
+
+  /**
+   * Check the file starts with a telemetry header this version can read
+   * @param channel the file
+   * @throws IOException if it does not
+   */
+  private void checkHeader(FileChannel channel) throws IOException {
+    var header = ByteBuffer.allocate(TelemetryLog.FILE_HEADER_SIZE);
+    while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+      //keep reading
+    }
+    if (header.hasRemaining() || header.getInt(0) != TelemetryLog.MAGIC) {
+      throw new IOException(file + " is not a telemetry file");
+    }
+    if (header.getShort(4) != TelemetryLog.VERSION) {
+      throw new IOException("Unsupported telemetry version " + header.getShort(4));
+    }
+  }
+
+  /**
+   * Add the counts in one table to another
+   * @param into the table to add to
+   * @param from the table to add
+   */
+  private static void add(long[][] into, long[][] from) {
+    for (var i = 0; i < into.length; i++) {
+      for (var j = 0; j < into[i].length; j++) {
+        into[i][j] += from[i][j];
+      }
+    }
+  }
+
+  /**
+   * Log a report of a telemetry file
+   * @param args the telemetry file, or none for telemetry.dat
+   * @throws IOException if the file cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    var analytics = new TelemetryAnalytics(Paths.get(args.length > 0 ? args[0] : TelemetryLog.FILE));
+
+    logger.info("Average score by final level");
+    var averages = analytics.averageScoreByLevel();
+    for (var level = 0; level < averages.length; level++) {
+      if (!Double.isNaN(averages[level])) {
+        logger.info(String.format("  %2d: %.0f", level, averages[level]));
+      }
+    }
+
+    logger.info("Placements");
+    var heatmap = analytics.placementHeatmap(5, 5);
+    for (var y = 0; y < 5; y++) {
+      var row = new StringBuilder(" ");
+      for (var x = 0; x < 5; x++) {
+        row.append(String.format(" %8d", heatmap[x][y]));
+      }
+      logger.info(row);
+    }
+
+    logger.info("Pieces placed before the timer ran out");
+    var survival = analytics.pieceSurvival();
+    for (var piece = 0; piece < survival.length; piece++) {
+      if (!Double.isNaN(survival[piece])) {
+        logger.info(String.format("  %2d: %.1f%%", piece, survival[piece] * 100));
+      }
+    }
+  }
+
+}
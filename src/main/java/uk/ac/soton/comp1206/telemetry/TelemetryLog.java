@@ -0,0 +1,161 @@
+package uk.ac.soton.comp1206.telemetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The TelemetryLog appends the telemetry of each finished game to an append-only file, on a
+ * background thread.
+ * <br>
+ * The file starts with an 8 byte header: magic "TTEL", version (2 bytes) and 2 reserved bytes. Each
+ * game follows as a block: the block length (4 bytes, not counting itself), when the game ended (8
+ * bytes), the number of moves, final score (4 bytes each) and final level (1 byte), and then one
+ * column per value holding that value for every move in turn: piece, x, y, rotations, lines
+ * cleared, blocks cleared and level (1 byte each), think time in milliseconds (4 bytes), timer delay
+ * in milliseconds (2 bytes) and score (4 bytes).
+ * <br>
+ * Each block is written in a single write, so a crash can at most leave a partial last block, which
+ * readers ignore. Telemetry is on unless the tetrecs.telemetry system property is false.
+ */
+public class TelemetryLog {
+
+  private static final Logger logger = LogManager.getLogger(TelemetryLog.class);
+
+  /**
+   * The file telemetry is written to
+   */
+  public static final String FILE = "telemetry.dat";
+
+  /**
+   * The first four bytes of a telemetry file, "TTEL"
+   */
+  public static final int MAGIC = 0x5454454C;
+
+  /**
+   * The version of the file format written
+   */
+  public static final short VERSION = 1;
+
+  /**
+   * The size of the file header
+   */
+  static final int FILE_HEADER_SIZE = 8;
+
+  private static final boolean ENABLED = !"false".equals(System.getProperty("tetrecs.telemetry"));
+
+  private static TelemetryLog instance;
+
+  private final Path file;
+  private final ExecutorService executor;
+  private FileChannel channel;
+
+  /**
+   * Get the telemetry log shared by the whole game, in the working directory
+   * @return the telemetry log, or null if telemetry is turned off
+   */
+  public static synchronized TelemetryLog getInstance() {
+    if (instance == null && ENABLED) {
+      instance = new TelemetryLog(Paths.get(FILE));
+    }
+    return instance;
+  }
+
+  /**
+   * Wait for any games still being written to the shared telemetry log, and close it
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.close();
+      instance = null;
+    }
+  }
+
+  /**
+   * Create a telemetry log appending to a file
+   * @param file the telemetry file
+   */
+  public TelemetryLog(Path file) {
+    this.file = file;
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      var thread = new Thread(runnable, "telemetry-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Append a finished game to the log in the background
+   * @param game the game's telemetry
+   * @param finalScore the score at the end of the game
+   * @param finalLevel the level at the end of the game
+   */
+  public void record(GameTelemetry game, int finalScore, int finalLevel) {
+    if (game.getMoves() == 0) {
+      return;
+    }
+    var block = game.toBlock(System.currentTimeMillis(), finalScore, finalLevel);
+    executor.execute(() -> {
+      try {
+        var log = channel();
+        while (block.hasRemaining()) {
+          log.write(block);
+        }
+        logger.debug("Recorded telemetry of {} moves", game.getMoves());
+      } catch (IOException e) {
+        logger.error("Unable to write telemetry to {}: {}", file, e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Finish writing and close the log
+   */
+  public void close() {
+    executor.execute(() -> {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          logger.error(e);
+        }
+        channel = null;
+      }
+    });
+    executor.shutdown();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Open the log for appending, writing the file header if the file is new
+   * @return the log channel
+   * @throws IOException if the log cannot be opened
+   */
+  private FileChannel channel() throws IOException {
+    if (channel == null) {
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+      if (channel.size() == 0) {
+        var header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).flip();
+        while (header.hasRemaining()) {
+          channel.write(header);
+        }
+      }
+    }
+    return channel;
+  }
+
+}
@@ -1,5 +1,8 @@
 package uk.ac.soton.comp1206.ui;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.layout.Pane;
@@ -11,6 +14,11 @@ import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.App;
 import uk.ac.soton.comp1206.network.Communicator;
 import uk.ac.soton.comp1206.scene.*;
+import uk.ac.soton.comp1206.score.OnlineScores;
+import uk.ac.soton.comp1206.server.LocalServer;
+import uk.ac.soton.comp1206.utility.Assets;
+
+import java.io.IOException;
 
 /**
  * The GameWindow is the single window for the game where everything takes place. To move between screens in the game,
@@ -22,6 +30,11 @@ public class GameWindow {
 
     private static final Logger logger = LogManager.getLogger(GameWindow.class);
 
+    /**
+     * The TetrECS server used unless another is given with the tetrecs.server system property
+     */
+    public static final String DEFAULT_SERVER = "ws://ofb-labs.soton.ac.uk:9700";
+
     private final int width;
     private final int height;
 
@@ -30,8 +43,34 @@ public class GameWindow {
     private BaseScene currentScene;
     private Scene scene;
 
+    /**
+     * Scenes which have been built and can be shown again, by type
+     */
+    private final Map<Class<? extends BaseScene>, BaseScene> sceneCache = new HashMap<>();
+
     final Communicator communicator;
 
+    /**
+     * The cached online high scores
+     */
+    private final OnlineScores onlineScores;
+
+    /**
+     * The embedded server, if running against a local server
+     */
+    private LocalServer localServer;
+
+    /**
+     * Turns expensive effects off when frames are slow
+     */
+    private final QualityGovernor qualityGovernor = new QualityGovernor();
+
+    /**
+     * Whether the window is idle, in the background or minimised, and whether it is minimised
+     */
+    private boolean idle = false;
+    private boolean hidden = false;
+
     /**
      * Create a new GameWindow attached to the given stage with the specified width and height
      * @param stage stage
@@ -54,12 +93,34 @@ public class GameWindow {
         setupDefaultScene();
 
         //Setup communicator
-        communicator = new Communicator("ws://ofb-labs.soton.ac.uk:9700");
+        communicator = new Communicator(getServerAddress());
+
+        //Fetch the online scores in the background, paging them if the local server is used
+        onlineScores = new OnlineScores(communicator, localServer != null);
+        onlineScores.refresh();
 
         //Go to menu
         startMenu();
     }
 
+    /**
+     * Get the address of the server to connect to. If the tetrecs.localServer system property is set,
+     * an embedded LocalServer is started and used instead of the remote server.
+     * @return the web socket address of the server
+     */
+    private String getServerAddress() {
+        if (Boolean.getBoolean("tetrecs.localServer")) {
+            try {
+                localServer = new LocalServer(Integer.getInteger("tetrecs.localServer.port", 0));
+                localServer.start();
+                return localServer.getAddress();
+            } catch (IOException e) {
+                logger.error("Unable to start local server: {}", e.getMessage());
+            }
+        }
+        return System.getProperty("tetrecs.server", DEFAULT_SERVER);
+    }
+
     /**
      * Set up the font and any other resources we need
      */
@@ -70,13 +131,24 @@ public class GameWindow {
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Regular.ttf"),32);
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Bold.ttf"),32);
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-ExtraBold.ttf"),32);
+
+        //Start decoding the images shown on the menu
+        Assets.preload("1.jpg", width);
+        Assets.preload("TetrECS.png", width / 1.5);
     }
 
     /**
      * Display the main menu scene
      */
     public void startMenu() {
-        loadScene(new MenuScene(this));
+        loadScene(getScene(MenuScene.class, MenuScene::new));
+    }
+
+    /**
+     * Display the instructions scene
+     */
+    public void startInstructions() {
+        loadScene(getScene(InstructionsScene.class, InstructionsScene::new));
     }
 
     /**
@@ -93,6 +165,33 @@ public class GameWindow {
         stage.setMinWidth(width);
         stage.setMinHeight(height + 20);
         stage.setOnCloseRequest(ev -> App.getInstance().shutdown());
+
+        //go idle while the window is in the background or minimised
+        stage.focusedProperty().addListener((observable, old, focused) -> updateIdle());
+        stage.iconifiedProperty().addListener((observable, old, iconified) -> updateIdle());
+    }
+
+    /**
+     * Work out whether the window is idle, and tell the current scene if that has changed
+     */
+    private void updateIdle() {
+        var nowHidden = stage.isIconified();
+        var nowIdle = nowHidden || !stage.isFocused();
+        if (nowIdle == idle && nowHidden == hidden) {
+            return;
+        }
+        idle = nowIdle;
+        hidden = nowHidden;
+        logger.info("Window {}", hidden ? "minimised" : idle ? "in the background" : "active");
+        qualityGovernor.setIdle(idle);
+        if (currentScene == null) {
+            return;
+        }
+        if (idle) {
+            currentScene.windowIdle(hidden);
+        } else {
+            currentScene.windowActive();
+        }
     }
 
     /**
@@ -100,17 +199,74 @@ public class GameWindow {
      * @param newScene new scene to load
      */
     public void loadScene(BaseScene newScene) {
+        var started = System.nanoTime();
+
         //Cleanup remains of the previous scene
         cleanup();
 
-        //Create the new scene and set it up
-        newScene.build();
+        //Create the new scene and set it up, or reset it if it has been built before
+        var cached = sceneCache.get(newScene.getClass()) == newScene;
+        if (cached) {
+            newScene.reset();
+        } else {
+            newScene.build();
+            if (newScene.isReusable()) {
+                sceneCache.put(newScene.getClass(), newScene);
+            }
+        }
         currentScene = newScene;
         scene = newScene.setScene();
         stage.setScene(scene);
+        qualityGovernor.attach(scene);
 
         //Initialise the scene when ready
-        Platform.runLater(() -> currentScene.initialise());
+        Platform.runLater(() -> {
+            currentScene.initialise();
+            if (idle) {
+                currentScene.windowIdle(hidden);
+            }
+            logger.info("Switched to {} in {}ms ({})", newScene.getClass().getSimpleName(),
+                String.format("%.1f", (System.nanoTime() - started) / 1e6), cached ? "reused" : "built");
+            //build the scenes likely to be shown next while this one is showing
+            Platform.runLater(() -> prebuild(newScene));
+        });
+    }
+
+    /**
+     * Get the cached scene of a type, or create a new one
+     * @param type the type of scene
+     * @param create creates a new scene of the type
+     * @param <T> the type of scene
+     * @return the scene
+     */
+    private <T extends BaseScene> T getScene(Class<T> type, Function<GameWindow, T> create) {
+        var cached = sceneCache.get(type);
+        return cached != null ? type.cast(cached) : create.apply(this);
+    }
+
+    /**
+     * Build the reusable scenes likely to be shown after a scene, so switching to them only needs a
+     * reset. The menu is likely after any other scene, and the instructions after the menu.
+     * @param from the scene being shown
+     */
+    private void prebuild(BaseScene from) {
+        if (from != currentScene) {
+            return;
+        }
+        BaseScene next;
+        if (from instanceof MenuScene) {
+            next = getScene(InstructionsScene.class, InstructionsScene::new);
+        } else {
+            next = getScene(MenuScene.class, MenuScene::new);
+        }
+        if (sceneCache.containsValue(next)) {
+            return;
+        }
+        var started = System.nanoTime();
+        next.build();
+        sceneCache.put(next.getClass(), next);
+        logger.info("Prebuilt {} in {}ms", next.getClass().getSimpleName(),
+            String.format("%.1f", (System.nanoTime() - started) / 1e6));
     }
 
     /**
@@ -126,6 +282,17 @@ public class GameWindow {
      */
     public void cleanup() {
         logger.info("Clearing up previous scene");
+        if (currentScene != null) {
+            currentScene.cleanup();
+            //scenes which will not be shown again release everything they hold
+            if (sceneCache.get(currentScene.getClass()) != currentScene) {
+                currentScene.dispose();
+                var leakDetector = LeakDetector.getInstance();
+                if (leakDetector != null) {
+                    leakDetector.watch(currentScene);
+                }
+            }
+        }
         communicator.clearListeners();
     }
 
@@ -160,4 +327,20 @@ public class GameWindow {
     public Communicator getCommunicator() {
         return communicator;
     }
+
+    /**
+     * Get the cached online high scores
+     * @return online scores
+     */
+    public OnlineScores getOnlineScores() {
+        return onlineScores;
+    }
+
+    /**
+     * Get the render quality governor
+     * @return quality governor
+     */
+    public QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
 }
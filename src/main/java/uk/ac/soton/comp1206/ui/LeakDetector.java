@@ -0,0 +1,118 @@
+package uk.ac.soton.comp1206.ui;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The LeakDetector is a debugging aid which watches scenes once they have been disposed, and reports
+ * any which are still not garbage collected a while later, as something is holding on to them.
+ * <br>
+ * Turned on with the tetrecs.leakCheck system property. Every CHECK_INTERVAL it asks for a garbage
+ * collection, then logs the scenes still alive and the number of live threads, so a slow leak shows
+ * up in the log of a long session.
+ */
+public class LeakDetector {
+
+    private static final Logger logger = LogManager.getLogger(LeakDetector.class);
+
+    private static final boolean ENABLED = Boolean.getBoolean("tetrecs.leakCheck");
+
+    /**
+     * How often disposed scenes are checked, in seconds. A scene still alive after this long is
+     * reported as leaked.
+     */
+    private static final long CHECK_INTERVAL = 10;
+
+    private static LeakDetector instance;
+
+    /**
+     * A weak reference to a disposed object, remembering what it was and when it was disposed
+     */
+    private static class Watched extends WeakReference<Object> {
+        private final String name;
+        private final long disposedAt;
+        private boolean reported = false;
+
+        Watched(Object object, ReferenceQueue<Object> queue) {
+            super(object, queue);
+            this.name = object.getClass().getSimpleName() + "@"
+                + Integer.toHexString(System.identityHashCode(object));
+            this.disposedAt = System.currentTimeMillis();
+        }
+    }
+
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Set<Watched> watched = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService checker;
+    private int lastThreads = 0;
+
+    /**
+     * Get the leak detector shared by the whole game
+     * @return the leak detector, or null if leak checking is turned off
+     */
+    public static synchronized LeakDetector getInstance() {
+        if (instance == null && ENABLED) {
+            instance = new LeakDetector();
+        }
+        return instance;
+    }
+
+    /**
+     * Create a leak detector, checking in the background
+     */
+    private LeakDetector() {
+        logger.info("Checking for leaked scenes every {}s", CHECK_INTERVAL);
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "leak-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Watch an object which has been disposed and should be garbage collected
+     * @param object the disposed object
+     */
+    public void watch(Object object) {
+        watched.add(new Watched(object, collected));
+    }
+
+    /**
+     * Forget the objects which have been collected, and report those which have been alive too long
+     * since they were disposed
+     */
+    private void check() {
+        System.gc();
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            var gone = (Watched) reference;
+            watched.remove(gone);
+            logger.debug("{} collected", gone.name);
+        }
+
+        var now = System.currentTimeMillis();
+        for (Watched leak : watched) {
+            if (!leak.reported && now - leak.disposedAt >= CHECK_INTERVAL * 1000) {
+                leak.reported = true;
+                logger.warn("{} was disposed {}s ago but has not been collected", leak.name,
+                    (now - leak.disposedAt) / 1000);
+            }
+        }
+
+        var threads = Thread.activeCount();
+        if (threads != lastThreads) {
+            logger.info("{} live threads, {} disposed scenes not collected", threads, watched.size());
+            lastThreads = threads;
+        }
+    }
+
+}
@@ -0,0 +1,298 @@
+package uk.ac.soton.comp1206.ui;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import javafx.animation.Animation;
+import javafx.scene.Scene;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.GameBlock;
+
+/**
+ * The QualityGovernor watches how long frames take to draw and turns expensive effects off when the
+ * game cannot keep up, stepping down one quality tier at a time, and back up when there is headroom.
+ * <br>
+ * Frames are timed by the gap between pulses of the scene being shown. While an animation is
+ * running every gap is a frame, however long. Otherwise, gaps longer than IDLE_GAP are times when
+ * nothing was changing rather than slow frames, and are ignored, so the governor never asks for
+ * pulses itself. The tier can be fixed with the tetrecs.quality system property, set to the
+ * name of a tier.
+ */
+public class QualityGovernor {
+
+    private static final Logger logger = LogManager.getLogger(QualityGovernor.class);
+
+    /**
+     * Quality tiers, from the best looking to the cheapest. Each tier turns off everything the tiers
+     * before it do.
+     */
+    public enum Tier {
+        /**
+         * Every effect on
+         */
+        FULL,
+
+        /**
+         * Drop shadows on text turned off
+         */
+        NO_SHADOWS,
+
+        /**
+         * Decorative animations paused
+         */
+        NO_DECORATIONS,
+
+        /**
+         * Blocks painted without shading
+         */
+        SIMPLE_BLOCKS
+    }
+
+    /**
+     * The frame time aimed for, in nanoseconds. Set with the tetrecs.targetFps system property.
+     */
+    private static final long TARGET = 1000000000L / Integer.getInteger("tetrecs.targetFps", 60);
+
+    /**
+     * A gap between pulses longer than this is idle time, not a frame, in nanoseconds, unless an
+     * animation is running
+     */
+    private static final long IDLE_GAP = 100000000L;
+
+    /**
+     * The number of frames averaged before deciding whether to change tier
+     */
+    private static final int WINDOW = 60;
+
+    /**
+     * The number of windows in a row with headroom needed before stepping back up
+     */
+    private static final int HEADROOM_WINDOWS = 5;
+
+    /**
+     * The stylesheet which turns off drop shadows
+     */
+    private static final String NO_SHADOWS_STYLE = "/style/low-quality.css";
+
+    private final Tier fixed;
+    private Tier tier = Tier.FULL;
+
+    private Scene scene;
+    private boolean idle = false;
+    private final Runnable pulseListener = this::pulse;
+
+    private long lastPulse = 0;
+    private long frameTotal = 0;
+    private int frames = 0;
+    private int headroom = 0;
+
+    /**
+     * Decorative animations, and those paused by the governor
+     */
+    private final Set<Animation> decorations = Collections.newSetFromMap(new WeakHashMap<>());
+    private final Set<Animation> paused = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Animations which keep the scene drawing every frame while they run, as well as the decorations
+     */
+    private final Set<Animation> animations = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Create a new quality governor
+     */
+    public QualityGovernor() {
+        Tier property = null;
+        var name = System.getProperty("tetrecs.quality");
+        if (name != null) {
+            try {
+                property = Tier.valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.error("Unknown quality tier {}", name);
+            }
+        }
+        fixed = property;
+        if (fixed != null) {
+            logger.info("Render quality fixed at {}", fixed);
+            setTier(fixed);
+        }
+    }
+
+    /**
+     * Time the frames of a scene, and apply the current tier to it. Replaces any previous scene.
+     * @param scene the scene being shown
+     */
+    public void attach(Scene scene) {
+        if (this.scene == scene) {
+            return;
+        }
+        if (this.scene != null) {
+            this.scene.removePreLayoutPulseListener(pulseListener);
+        }
+        this.scene = scene;
+        lastPulse = 0;
+        scene.addPreLayoutPulseListener(pulseListener);
+        applyShadows();
+    }
+
+    /**
+     * Register a decorative animation, which is paused while the tier is NO_DECORATIONS or lower, or
+     * while the window is idle
+     * @param animation the animation
+     */
+    public void addDecoration(Animation animation) {
+        decorations.add(animation);
+        addAnimation(animation);
+        //catch the animation being started while decorations are off
+        animation.statusProperty().addListener((observable, old, status) -> {
+            if (status == Animation.Status.RUNNING && !showDecorations()) {
+                animation.pause();
+                paused.add(animation);
+            }
+        });
+    }
+
+    /**
+     * Register an animation, so long gaps between pulses while it runs are counted as slow frames
+     * rather than idle time
+     * @param animation the animation
+     */
+    public void addAnimation(Animation animation) {
+        animations.add(animation);
+        //time the first frame from when the animation starts, not from the last pulse before it
+        animation.statusProperty().addListener((observable, old, status) -> {
+            if (status == Animation.Status.RUNNING && System.nanoTime() - lastPulse > IDLE_GAP) {
+                lastPulse = System.nanoTime();
+            }
+        });
+    }
+
+    /**
+     * Set whether the window is idle, minimised or in the background, pausing decorative animations
+     * while it is
+     * @param idle true if the window is idle
+     */
+    public void setIdle(boolean idle) {
+        this.idle = idle;
+        updateDecorations();
+    }
+
+    /**
+     * Get the current quality tier
+     * @return the tier
+     */
+    public Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Time a frame, and change tier at the end of each window of frames if needed
+     */
+    private void pulse() {
+        var now = System.nanoTime();
+        var gap = now - lastPulse;
+        var first = lastPulse == 0;
+        lastPulse = now;
+        if (first || fixed != null || (gap > IDLE_GAP && !animating())) {
+            return;
+        }
+        frameTotal += gap;
+        frames++;
+        if (frames < WINDOW) {
+            return;
+        }
+        var average = frameTotal / frames;
+        frameTotal = 0;
+        frames = 0;
+
+        if (average > TARGET * 5 / 4 && tier != Tier.SIMPLE_BLOCKS) {
+            headroom = 0;
+            logger.info("Frames averaging {}ms, lowering render quality",
+                String.format("%.1f", average / 1e6));
+            setTier(Tier.values()[tier.ordinal() + 1]);
+        } else if (average < TARGET * 21 / 20 && tier != Tier.FULL) {
+            if (++headroom >= HEADROOM_WINDOWS) {
+                headroom = 0;
+                logger.info("Frames averaging {}ms, raising render quality",
+                    String.format("%.1f", average / 1e6));
+                setTier(Tier.values()[tier.ordinal() - 1]);
+            }
+        } else {
+            headroom = 0;
+        }
+    }
+
+    /**
+     * Whether any registered animation is running
+     * @return true if an animation is running
+     */
+    private boolean animating() {
+        for (Animation animation : animations) {
+            if (animation.getStatus() == Animation.Status.RUNNING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Change the quality tier, turning effects on or off to match
+     * @param tier the new tier
+     */
+    private void setTier(Tier tier) {
+        this.tier = tier;
+        logger.info("Render quality tier {}", tier);
+        applyShadows();
+        updateDecorations();
+        GameBlock.setSimpleShading(tier == Tier.SIMPLE_BLOCKS);
+    }
+
+    /**
+     * Whether decorative animations should be playing
+     * @return true unless the tier is NO_DECORATIONS or lower, or the window is idle
+     */
+    private boolean showDecorations() {
+        return !idle && tier.compareTo(Tier.NO_DECORATIONS) < 0;
+    }
+
+    /**
+     * Pause or resume the decorative animations to match the tier and whether the window is idle
+     */
+    private void updateDecorations() {
+        if (!showDecorations()) {
+            for (Animation animation : decorations) {
+                if (animation.getStatus() == Animation.Status.RUNNING) {
+                    animation.pause();
+                    paused.add(animation);
+                }
+            }
+        } else {
+            for (Animation animation : paused) {
+                //animations stopped by their scene stay stopped
+                if (animation.getStatus() == Animation.Status.PAUSED) {
+                    animation.play();
+                }
+            }
+            paused.clear();
+        }
+    }
+
+    /**
+     * Add or remove the stylesheet which turns off drop shadows on the current scene
+     */
+    private void applyShadows() {
+        if (scene == null) {
+            return;
+        }
+        var style = getClass().getResource(NO_SHADOWS_STYLE).toExternalForm();
+        var stylesheets = scene.getStylesheets();
+        if (tier.compareTo(Tier.NO_SHADOWS) >= 0) {
+            if (!stylesheets.contains(style)) {
+                stylesheets.add(style);
+            }
+        } else {
+            stylesheets.remove(style);
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundImage;
+import javafx.scene.layout.BackgroundPosition;
+import javafx.scene.layout.BackgroundRepeat;
+import javafx.scene.layout.BackgroundSize;
+import javafx.scene.layout.Region;
+import javafx.stage.Screen;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Assets holds the images shared by every scene. Each image is decoded once, in the background, at
+ * the size it is shown at, rather than at the size of the file.
+ * <br>
+ * Decoded images are kept until the memory they use goes over a budget, when the least recently
+ * used are dropped from the cache. Scenes still showing a dropped image keep it until they are
+ * done with it. The budget is set in megabytes with the tetrecs.imageBudget system property.
+ * <br>
+ * Must be used on the JavaFX thread.
+ */
+public class Assets {
+
+  private static final Logger logger = LogManager.getLogger(Assets.class);
+
+  /**
+   * The most decoded bytes kept in the cache
+   */
+  private static final long BUDGET = Long.getLong("tetrecs.imageBudget", 32) * 1024 * 1024;
+
+  /**
+   * Images by name and size, least recently used first
+   */
+  private static final Map<String, Image> images = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * The decoded size of each image, once it has loaded
+   */
+  private static final Map<Image, Long> sizes = new HashMap<>();
+
+  private static long decodedBytes = 0;
+
+  /**
+   * Get an image decoded to a width, keeping its aspect ratio. The image is decoded in the background
+   * the first time it is asked for at that width, and shows once it has loaded.
+   * @param name the image in the images resources
+   * @param width the width the image is shown at
+   * @return the image
+   */
+  public static Image getImage(String name, double width) {
+    //decode enough pixels for the screen's scaling
+    var pixels = Math.round(width * Screen.getPrimary().getOutputScaleX());
+    var key = name + "@" + pixels;
+    var image = images.get(key);
+    if (image == null) {
+      image = new Image(Assets.class.getResource("/images/" + name).toExternalForm(), pixels, 0,
+          true, true, true);
+      images.put(key, image);
+      var loading = image;
+      image.progressProperty().addListener((observable, old, progress) -> {
+        if (progress.doubleValue() >= 1) {
+          loaded(key, loading);
+        }
+      });
+    }
+    return image;
+  }
+
+  /**
+   * Start decoding an image in the background, so it is ready when a scene needs it
+   * @param name the image in the images resources
+   * @param width the width the image will be shown at
+   */
+  public static void preload(String name, double width) {
+    getImage(name, width);
+  }
+
+  /**
+   * Give a region an image as its background, covering the region. The background is set once the
+   * image has been decoded, at the width of the region.
+   * @param region the region
+   * @param name the image in the images resources
+   * @param width the width of the region
+   */
+  public static void setBackground(Region region, String name, double width) {
+    var image = getImage(name, width);
+    var background = new Background(new BackgroundImage(image, BackgroundRepeat.NO_REPEAT,
+        BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER,
+        new BackgroundSize(1, 1, true, true, false, true)));
+    if (image.getProgress() >= 1) {
+      region.setBackground(background);
+    } else {
+      image.progressProperty().addListener((observable, old, progress) -> {
+        if (progress.doubleValue() >= 1) {
+          region.setBackground(background);
+        }
+      });
+    }
+  }
+
+  /**
+   * Get the memory used by the decoded images in the cache
+   * @return the number of decoded bytes
+   */
+  public static long getDecodedBytes() {
+    return decodedBytes;
+  }
+
+  /**
+   * Count the memory of an image which has finished decoding, and drop the least recently used
+   * images while the cache is over budget
+   * @param key the image's name and size
+   * @param image the image
+   */
+  private static void loaded(String key, Image image) {
+    if (image.isError()) {
+      logger.error("Unable to load image {}: {}", key, image.getException());
+      images.remove(key);
+      return;
+    }
+    if (images.get(key) != image) {
+      //dropped while it was loading
+      return;
+    }
+    var bytes = (long) image.getWidth() * (long) image.getHeight() * 4;
+    sizes.put(image, bytes);
+    decodedBytes += bytes;
+    logger.info("Decoded {} at {}x{} ({} KB, {} KB of images cached)", key,
+        (int) image.getWidth(), (int) image.getHeight(), bytes / 1024, decodedBytes / 1024);
+
+    var iterator = images.entrySet().iterator();
+    while (decodedBytes > BUDGET && iterator.hasNext()) {
+      var eldest = iterator.next();
+      if (eldest.getValue() == image) {
+        continue;
+      }
+      iterator.remove();
+      var size = sizes.remove(eldest.getValue());
+      if (size != null) {
+        decodedBytes -= size;
+      }
+      logger.info("Dropped {} from the image cache", eldest.getKey());
+    }
+  }
+
+}
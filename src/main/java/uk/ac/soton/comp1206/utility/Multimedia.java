@@ -1,87 +1,31 @@
 package uk.ac.soton.comp1206.utility;
 
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 /**
- * The Multimedia class handles playing any music or audio sounds by using MediaPlayers.
+ * The Multimedia class handles playing any music or audio sounds. Music is played by Music, and
+ * sound effects by SoundEffects, both of which load their audio ahead of time.
  */
 public class Multimedia {
 
-  private static final Logger logger = LogManager.getLogger(Multimedia.class);
-  private static boolean musicEnabled = true;
-  private static boolean audioEnabled = true;
-
-  /**
-   * Handles playing background music
-   */
-  private static MediaPlayer musicPlayer;
-  /**
-   * Handles playing any sound effects
-   */
-  private static MediaPlayer audioPlayer;
-
   /**
-   * Plays a given audio file if audio is enabled by using a MediaPlayer.
+   * Plays a given sound effect with the next batch of effects. Effects are decoded once and reused,
+   * and several effects posted at once are mixed together, see SoundEffects.
    * @param file the audio file to play
    */
-
   public static void playAudio(String file){
-    //check if audio is disabled
-    if (!audioEnabled) return;
-
-    //retrieve audio file
-    String toPlay = Multimedia.class.getResource("/sounds/"+file).toExternalForm();
-    logger.info("Playing audio "+ toPlay);
-
-    try{
-      Media play = new Media(toPlay);
-      audioPlayer = new MediaPlayer(play);
-      //play audio
-      audioPlayer.play();
-    }catch (Exception e){
-      //disable audio
-      audioEnabled = false;
-      logger.error(e);
-      logger.error("Unable to play audio, disabling audio");
-    }
+    SoundEffects.getInstance().post(file);
   }
 
   /**
-   * Plays a given audio file as background music if music is enabled, using a MediaPlayer.
+   * Plays a given audio file as background music, see Music.
    * <br>
    * Background music loops.
    * <br>
-   * Any previous music that is still playing is stopped.
+   * Any previous music that is still playing is crossfaded out, unless it is the same music, which
+   * carries on playing.
    * @param file the music file to play
    */
   public static void playMusic(String file){
-    //check if music is disabled
-    if (!musicEnabled) return;
-
-    //retrieve music file
-    String toPlay = Multimedia.class.getResource("/music/" + file).toExternalForm();
-    logger.info("Playing background music: "+ toPlay);
-
-    try{
-      //stops any previous music playing
-      if(musicPlayer!=null){
-        musicPlayer.stop();
-      }
-      //play music in a loop
-      Media play = new Media(toPlay);
-      musicPlayer = new MediaPlayer(play);
-      musicPlayer.setCycleCount(MediaPlayer.INDEFINITE);
-      musicPlayer.play();
-
-    }catch (Exception e){
-      //disable music if not able to play
-      musicEnabled = false;
-      e.printStackTrace();
-      logger.error("Unable to play background music, disabling music");
-    }
+    Music.getInstance().play(file);
   }
 
 }
@@ -0,0 +1,197 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.animation.KeyFrame;
+import javafx.animation.KeyValue;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import javafx.util.Duration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Music plays the background music, looping, and crossfades from one track to the next.
+ * <br>
+ * Tracks are prepared on a background thread and kept ready once played, so changing track never
+ * waits for a decoder on the JavaFX thread. Asking for the track which is already playing leaves it
+ * playing, so moving between scenes with the same music does not restart it. A track which is
+ * missing or fails to load is skipped, and whatever was playing carries on.
+ */
+public class Music {
+
+  private static final Logger logger = LogManager.getLogger(Music.class);
+
+  /**
+   * How long a crossfade between two tracks lasts
+   */
+  private static final Duration CROSSFADE = Duration.millis(1000);
+
+  private static Music instance;
+
+  /**
+   * Players by track, completed once the player is ready to play
+   */
+  private final Map<String, CompletableFuture<MediaPlayer>> players = new ConcurrentHashMap<>();
+
+  private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+    var thread = new Thread(runnable, "music-loader");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * The track which should be playing, only used on the JavaFX thread
+   */
+  private String track;
+
+  /**
+   * The player of the current track, and the player being faded out
+   */
+  private MediaPlayer current;
+  private MediaPlayer fadingOut;
+  private Timeline fade;
+
+  /**
+   * Get the music player shared by the whole game
+   * @return the music player
+   */
+  public static synchronized Music getInstance() {
+    if (instance == null) {
+      instance = new Music();
+    }
+    return instance;
+  }
+
+  /**
+   * Prepare tracks in the background, so they can be played without waiting
+   * @param tracks the tracks in the music resources
+   */
+  public void preload(String... tracks) {
+    for (String file : tracks) {
+      players.computeIfAbsent(file, this::prepare);
+    }
+  }
+
+  /**
+   * Crossfade to a track, looping it. Must be called on the JavaFX thread.
+   * @param file the track in the music resources
+   */
+  public void play(String file) {
+    if (file.equals(track)) {
+      return;
+    }
+    track = file;
+    var player = players.computeIfAbsent(file, this::prepare);
+    if (player.isDone() && !player.isCompletedExceptionally()) {
+      crossfade(player.join());
+      return;
+    }
+    player.whenComplete((ready, error) -> Platform.runLater(() -> {
+      if (error != null) {
+        //carry on with whatever is playing
+        logger.warn("Background music {} is unavailable, keeping the current track", file);
+        if (file.equals(track)) {
+          track = null;
+        }
+      } else if (file.equals(track)) {
+        crossfade(ready);
+      }
+    }));
+  }
+
+  /**
+   * Fade out the music. Must be called on the JavaFX thread.
+   */
+  public void stop() {
+    track = null;
+    if (current != null) {
+      crossfade(null);
+    }
+  }
+
+  /**
+   * Fade from the current player to another
+   * @param player the player to fade in, or null to fade to silence
+   */
+  private void crossfade(MediaPlayer player) {
+    if (player == current) {
+      return;
+    }
+    if (fade != null) {
+      fade.stop();
+      if (fadingOut != null && fadingOut != player) {
+        fadingOut.stop();
+      }
+    }
+    var previous = current;
+    fadingOut = previous;
+    current = player;
+    if (player != null) {
+      logger.info("Playing background music: {}", track);
+    }
+
+    var start = new KeyFrame(Duration.ZERO);
+    var end = new KeyFrame(CROSSFADE);
+    if (player != null) {
+      if (player.getStatus() != MediaPlayer.Status.PLAYING) {
+        player.setVolume(0);
+        player.play();
+      }
+      start = new KeyFrame(Duration.ZERO, new KeyValue(player.volumeProperty(), player.getVolume()));
+      end = new KeyFrame(CROSSFADE, new KeyValue(player.volumeProperty(), 1));
+    }
+    fade = new Timeline(start, end);
+    if (previous != null) {
+      fade.getKeyFrames().addAll(
+          new KeyFrame(Duration.ZERO, new KeyValue(previous.volumeProperty(), previous.getVolume())),
+          new KeyFrame(CROSSFADE, new KeyValue(previous.volumeProperty(), 0)));
+      fade.setOnFinished(event -> {
+        //stopped players stay ready to be played again
+        previous.stop();
+        fadingOut = null;
+      });
+    }
+    fade.play();
+  }
+
+  /**
+   * Create a player for a track on the loader thread
+   * @param file the track in the music resources
+   * @return completed with the player once it is ready, or exceptionally if it cannot be played
+   */
+  private CompletableFuture<MediaPlayer> prepare(String file) {
+    var ready = new CompletableFuture<MediaPlayer>();
+    loader.execute(() -> {
+      var resource = Music.class.getResource("/music/" + file);
+      if (resource == null) {
+        logger.warn("Unable to find background music {}", file);
+        ready.completeExceptionally(new IllegalArgumentException(file));
+        return;
+      }
+      try {
+        var player = new MediaPlayer(new Media(resource.toExternalForm()));
+        player.setCycleCount(MediaPlayer.INDEFINITE);
+        player.setOnReady(() -> {
+          logger.debug("Background music {} ready", file);
+          ready.complete(player);
+        });
+        player.setOnError(() -> {
+          logger.error("Unable to play background music {}: {}", file, player.getError());
+          players.remove(file);
+          ready.completeExceptionally(player.getError());
+        });
+      } catch (Exception e) {
+        logger.error("Unable to load background music {}: {}", file, e.getMessage());
+        ready.completeExceptionally(e);
+      }
+    });
+    return ready;
+  }
+
+}
@@ -0,0 +1,404 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.application.Platform;
+import javafx.scene.media.AudioClip;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * SoundEffects plays the game's sound effects from AudioClips, which are decoded once and kept in
+ * memory so an effect starts playing straight away.
+ * <br>
+ * Only a few effects play at once. When every voice is busy, a new effect takes the voice of the
+ * lowest priority effect playing, unless that effect is more important, in which case the new
+ * effect is dropped. Each effect is also rate limited, so the same effect triggered many times in
+ * quick succession is only played once.
+ * <br>
+ * Effects are posted from anywhere in the game and mixed together once per frame on the JavaFX
+ * thread, so the several effects of a single move are handled as one batch: the same effect posted
+ * twice in a batch is played once, the batch is played highest priority first, and anything beyond
+ * the number of voices is dropped. Counts of merged and dropped effects are kept.
+ * <br>
+ * Posting an effect allocates nothing: clips are looked up by file name and pending effects and
+ * voices are kept in fixed arrays. An effect which fails to load is skipped without turning off the
+ * others.
+ * <br>
+ * Clips are decoded on a background thread, never while a lock is held, so posting and mixing
+ * never wait for a decode. An effect posted before its clip is decoded is posted again once it is.
+ */
+public class SoundEffects {
+
+  private static final Logger logger = LogManager.getLogger(SoundEffects.class);
+
+  /**
+   * The most effects played at once. Set with the tetrecs.voices system property.
+   */
+  private static final int VOICES = Math.max(1, Integer.getInteger("tetrecs.voices", 4));
+
+  /**
+   * The shortest time between two plays of the same effect, in milliseconds
+   */
+  private static final long MIN_INTERVAL = 40;
+
+  /**
+   * How long an effect is assumed to play for when its length is not known, in milliseconds
+   */
+  private static final long DEFAULT_LENGTH = 1000;
+
+  /**
+   * The effects loaded at startup, and their priorities. Higher priority effects take voices from
+   * lower priority ones.
+   */
+  private static final String[] EFFECTS = {
+      "explode.wav", "lifelose.wav", "lifegain.wav", "level.wav", "clear.wav", "message.wav",
+      "place.wav", "fail.wav", "pling.wav", "rotate.wav", "transition.wav"
+  };
+  private static final int[] PRIORITIES = {4, 4, 3, 3, 2, 2, 1, 1, 1, 0, 0};
+
+  private static SoundEffects instance;
+
+  /**
+   * Effects by file name, completed with the effect once decoded, or with null if it could not be
+   * loaded
+   */
+  private final Map<String, CompletableFuture<Effect>> effects = new ConcurrentHashMap<>();
+
+  /**
+   * Decodes the clips
+   */
+  private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+    var thread = new Thread(runnable, "sound-loader");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * The effect playing in each voice, or null if the voice is free
+   */
+  private final Effect[] voices = new Effect[VOICES];
+
+  /**
+   * When the effect in each voice finishes, in nanoseconds
+   */
+  private final long[] endsAt = new long[VOICES];
+
+  /**
+   * Effects posted since the last batch was mixed
+   */
+  private Effect[] pending = new Effect[EFFECTS.length];
+  private int pendingCount = 0;
+
+  /**
+   * Whether a batch has been scheduled on the JavaFX thread
+   */
+  private boolean scheduled = false;
+  private final Runnable mixer = this::mix;
+
+  private long posted = 0;
+  private long played = 0;
+  private long merged = 0;
+  private long dropped = 0;
+
+  /**
+   * A sound effect and its clip
+   */
+  private static class Effect {
+    private final String file;
+    private final AudioClip clip;
+    private final int priority;
+    private final long length;
+    private long playedAt = Long.MIN_VALUE / 2;
+    private boolean posted = false;
+
+    private Effect(String file, AudioClip clip, int priority, long length) {
+      this.file = file;
+      this.clip = clip;
+      this.priority = priority;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Get the sound effects shared by the whole game
+   * @return the sound effects
+   */
+  public static synchronized SoundEffects getInstance() {
+    if (instance == null) {
+      instance = new SoundEffects();
+    }
+    return instance;
+  }
+
+  /**
+   * Decode every sound effect on a background thread, so none are decoded when first played
+   */
+  public static void preload() {
+    var effects = getInstance();
+    var loading = new CompletableFuture<?>[EFFECTS.length];
+    for (var i = 0; i < EFFECTS.length; i++) {
+      loading[i] = effects.load(EFFECTS[i]);
+    }
+    CompletableFuture.allOf(loading)
+        .thenRun(() -> logger.info("Loaded {} sound effects", EFFECTS.length));
+  }
+
+  /**
+   * Post a sound effect to be played with the next batch. May be called from any thread.
+   * @param file the sound effect in the sounds resources
+   */
+  public void post(String file) {
+    var loading = load(file);
+    var effect = loading.getNow(null);
+    if (effect == null) {
+      if (!loading.isDone()) {
+        loading.thenAccept(this::post);
+      }
+      return;
+    }
+    post(effect);
+  }
+
+  /**
+   * Post a decoded sound effect to be played with the next batch
+   * @param effect the effect, or null if it could not be loaded
+   */
+  private void post(Effect effect) {
+    if (effect == null) {
+      return;
+    }
+    synchronized (this) {
+      posted++;
+      if (effect.posted) {
+        merged++;
+        return;
+      }
+      effect.posted = true;
+      if (pendingCount == pending.length) {
+        pending = Arrays.copyOf(pending, pending.length * 2);
+      }
+      pending[pendingCount++] = effect;
+      if (scheduled) {
+        return;
+      }
+      scheduled = true;
+    }
+    Platform.runLater(mixer);
+  }
+
+  /**
+   * Play the effects posted since the last batch, highest priority first
+   */
+  private synchronized void mix() {
+    scheduled = false;
+    //sort by priority, keeping the order posted otherwise
+    for (var i = 1; i < pendingCount; i++) {
+      var effect = pending[i];
+      var j = i - 1;
+      while (j >= 0 && pending[j].priority < effect.priority) {
+        pending[j + 1] = pending[j];
+        j--;
+      }
+      pending[j + 1] = effect;
+    }
+    var now = System.nanoTime();
+    for (var i = 0; i < pendingCount; i++) {
+      var effect = pending[i];
+      pending[i] = null;
+      effect.posted = false;
+      if (i >= VOICES) {
+        logger.debug("Dropping {}, too many effects at once", effect.file);
+        dropped++;
+      } else if ((now - effect.playedAt) / 1000000 < MIN_INTERVAL) {
+        logger.debug("Merging {}, played too recently", effect.file);
+        merged++;
+      } else {
+        var voice = voiceFor(effect, now);
+        if (voice < 0) {
+          logger.debug("Dropping {}, no voice free", effect.file);
+          dropped++;
+        } else {
+          voices[voice] = effect;
+          endsAt[voice] = now + effect.length * 1000000;
+          effect.playedAt = now;
+          played++;
+          logger.debug("Playing audio {}", effect.file);
+          effect.clip.play();
+        }
+      }
+    }
+    pendingCount = 0;
+  }
+
+  /**
+   * Get the number of effects posted
+   * @return the number posted
+   */
+  public synchronized long getPosted() {
+    return posted;
+  }
+
+  /**
+   * Get the number of effects played
+   * @return the number played
+   */
+  public synchronized long getPlayed() {
+    return played;
+  }
+
+  /**
+   * Get the number of effects merged into another play of the same effect, because it was posted
+   * twice in a batch or played too recently
+   * @return the number merged
+   */
+  public synchronized long getMerged() {
+    return merged;
+  }
+
+  /**
+   * Get the number of effects dropped, because too many were posted at once or every voice was
+   * playing something more important
+   * @return the number dropped
+   */
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Stop every sound effect playing
+   */
+  public void stopAll() {
+    synchronized (this) {
+      for (var voice = 0; voice < voices.length; voice++) {
+        if (voices[voice] != null) {
+          voices[voice].clip.stop();
+          voices[voice] = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Find a voice to play an effect in, freeing finished voices and stealing the lowest priority one
+   * if none are free
+   * @param effect the effect to play
+   * @param now the time now, in nanoseconds
+   * @return the voice, or -1 if every voice is playing something more important
+   */
+  private int voiceFor(Effect effect, long now) {
+    var lowest = -1;
+    for (var voice = 0; voice < voices.length; voice++) {
+      if (voices[voice] == null || endsAt[voice] - now <= 0) {
+        voices[voice] = null;
+        return voice;
+      }
+      //the lowest priority voice, and the one which finishes soonest of those
+      if (lowest < 0 || voices[voice].priority < voices[lowest].priority
+          || (voices[voice].priority == voices[lowest].priority
+              && endsAt[voice] < endsAt[lowest])) {
+        lowest = voice;
+      }
+    }
+    var stolen = voices[lowest];
+    if (stolen.priority > effect.priority) {
+      return -1;
+    }
+    logger.debug("Stopping {} to play {}", stolen.file, effect.file);
+    //stopping a clip stops every play of it, so free all of its voices
+    stolen.clip.stop();
+    for (var voice = 0; voice < voices.length; voice++) {
+      if (voices[voice] == stolen) {
+        voices[voice] = null;
+      }
+    }
+    return lowest;
+  }
+
+  /**
+   * Get an effect, starting to decode it on the loader thread if this is the first time it is asked
+   * for
+   * @param file the sound effect in the sounds resources
+   * @return the effect, once decoded
+   */
+  private CompletableFuture<Effect> load(String file) {
+    var effect = effects.get(file);
+    if (effect != null) {
+      return effect;
+    }
+    //a missing effect is remembered too, so it is only reported once
+    return effects.computeIfAbsent(file,
+        name -> CompletableFuture.supplyAsync(() -> decode(name), loader));
+  }
+
+  /**
+   * Decode a sound effect. Run on the loader thread.
+   * @param file the sound effect in the sounds resources
+   * @return the effect, or null if it could not be loaded
+   */
+  private static Effect decode(String file) {
+    var resource = SoundEffects.class.getResource("/sounds/" + file);
+    if (resource == null) {
+      logger.error("Unable to find sound effect {}", file);
+      return null;
+    }
+    try {
+      var clip = new AudioClip(resource.toExternalForm());
+      var priority = 1;
+      for (var i = 0; i < EFFECTS.length; i++) {
+        if (EFFECTS[i].equals(file)) {
+          priority = PRIORITIES[i];
+        }
+      }
+      clip.setPriority(priority);
+      return new Effect(file, clip, priority, length(file));
+    } catch (Exception e) {
+      logger.error("Unable to load sound effect {}, skipping it: {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Work out how long a WAV sound effect plays for from its header
+   * @param file the sound effect in the sounds resources
+   * @return the length in milliseconds, or DEFAULT_LENGTH if it is not a WAV file
+   */
+  private static long length(String file) {
+    try (InputStream stream = SoundEffects.class.getResourceAsStream("/sounds/" + file)) {
+      if (stream == null) {
+        return DEFAULT_LENGTH;
+      }
+      var input = new DataInputStream(stream);
+      var header = new byte[12];
+      input.readFully(header);
+      if (header[0] != 'R' || header[1] != 'I' || header[8] != 'W' || header[9] != 'A') {
+        return DEFAULT_LENGTH;
+      }
+      long byteRate = 0;
+      var id = new byte[4];
+      while (true) {
+        input.readFully(id);
+        long size = Integer.reverseBytes(input.readInt()) & 0xFFFFFFFFL;
+        if (id[0] == 'f' && id[1] == 'm' && id[2] == 't') {
+          input.skipNBytes(8);
+          byteRate = Integer.reverseBytes(input.readInt()) & 0xFFFFFFFFL;
+          input.skipNBytes(size - 12 + (size & 1));
+        } else if (id[0] == 'd' && id[1] == 'a' && id[2] == 't' && id[3] == 'a') {
+          return byteRate == 0 ? DEFAULT_LENGTH : size * 1000 / byteRate;
+        } else {
+          input.skipNBytes(size + (size & 1));
+        }
+      }
+    } catch (IOException e) {
+      return DEFAULT_LENGTH;
+    }
+  }
+
+}
@@ -0,0 +1,41 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The Threads class creates the executors used for running one task per connection or client.
+ * <br>
+ * When running on a Java version with virtual threads, a virtual thread is used per task. Otherwise
+ * a cached pool of daemon threads is used instead.
+ */
+public class Threads {
+
+  private static final Logger logger = LogManager.getLogger(Threads.class);
+
+  /**
+   * Create an executor which runs every submitted task on its own thread
+   * @param name the name prefix used for platform threads
+   * @return the executor
+   */
+  public static ExecutorService newPerTaskExecutor(String name) {
+    try {
+      //use virtual threads when the runtime supports them
+      var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      logger.debug("Using virtual threads for {}", name);
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      logger.debug("Virtual threads unavailable, using platform threads for {}", name);
+    }
+    var counter = new AtomicInteger();
+    return Executors.newCachedThreadPool(runnable -> {
+      var thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+}
@@ -0,0 +1,118 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that delta BOARD messages rebuild the same board as full snapshots
+ */
+class BoardStatusEncoderTest {
+
+  /**
+   * Apply a BOARD message to a board, the way the server does
+   * @param board the board the server holds
+   * @param message the message
+   * @return the board after the message
+   */
+  private static int[] apply(int[] board, String message) {
+    var tokens = message.substring("BOARD ".length()).trim().split("\\s+");
+    if (tokens[0].equals("DELTA")) {
+      var updated = board.clone();
+      for (int i = 1; i < tokens.length; i++) {
+        var colon = tokens[i].indexOf(':');
+        updated[Integer.parseInt(tokens[i].substring(0, colon))] =
+            Integer.parseInt(tokens[i].substring(colon + 1));
+      }
+      return updated;
+    }
+    var full = new int[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      full[i] = Integer.parseInt(tokens[i]);
+    }
+    return full;
+  }
+
+  private static int[] values(Grid grid) {
+    var values = new int[grid.getCols() * grid.getRows()];
+    for (int x = 0; x < grid.getCols(); x++) {
+      for (int y = 0; y < grid.getRows(); y++) {
+        values[x * grid.getRows() + y] = grid.get(x, y);
+      }
+    }
+    return values;
+  }
+
+  @Test
+  void unchangedBoardIsNotSent() {
+    var grid = new Grid(5, 5);
+    var encoder = new BoardStatusEncoder(true);
+    assertTrue(encoder.encode(grid).startsWith("BOARD "));
+    assertNull(encoder.encode(grid));
+    grid.set(2, 3, 4);
+    assertTrue(encoder.encode(grid) != null);
+    assertNull(encoder.encode(grid));
+  }
+
+  @Test
+  void deltaMatchesFullSnapshots() {
+    var random = new Random(26);
+    var grid = new Grid(5, 5);
+    var delta = new BoardStatusEncoder(true);
+    var full = new BoardStatusEncoder(false);
+    var fromDelta = new int[25];
+    var fromFull = new int[25];
+    var deltas = 0;
+    for (int move = 0; move < 5000; move++) {
+      //change a few cells, or sometimes none
+      var changes = random.nextInt(4);
+      for (int i = 0; i < changes; i++) {
+        grid.set(random.nextInt(5), random.nextInt(5), random.nextInt(16));
+      }
+      var deltaMessage = delta.encode(grid);
+      var fullMessage = full.encode(grid);
+      assertTrue((deltaMessage == null) == (fullMessage == null));
+      if (deltaMessage == null) {
+        continue;
+      }
+      assertFalse(fullMessage.contains("DELTA"));
+      if (deltaMessage.contains("DELTA")) {
+        deltas++;
+      }
+      fromDelta = apply(fromDelta, deltaMessage);
+      fromFull = apply(fromFull, fullMessage);
+      assertArrayEquals(values(grid), fromFull);
+      assertArrayEquals(fromFull, fromDelta);
+    }
+    assertTrue(deltas > 0);
+  }
+
+  @Test
+  void fullSnapshotIsSentPeriodically() {
+    var grid = new Grid(5, 5);
+    var encoder = new BoardStatusEncoder(true);
+    assertFalse(encoder.encode(grid).contains("DELTA"));
+    for (int i = 0; i < BoardStatusEncoder.FULL_SNAPSHOT_INTERVAL; i++) {
+      grid.set(0, 0, i % 2 + 1);
+      assertTrue(encoder.encode(grid).contains("DELTA"));
+    }
+    grid.set(0, 0, 5);
+    assertFalse(encoder.encode(grid).contains("DELTA"));
+  }
+
+  @Test
+  void resetSendsFullSnapshot() {
+    var grid = new Grid(5, 5);
+    var encoder = new BoardStatusEncoder(true);
+    encoder.encode(grid);
+    encoder.reset();
+    var message = encoder.encode(grid);
+    assertFalse(message.contains("DELTA"));
+    assertArrayEquals(values(grid), apply(new int[25], message));
+  }
+
+}
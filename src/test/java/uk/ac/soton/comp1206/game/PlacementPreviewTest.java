@@ -0,0 +1,127 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that previews agree with playing the piece on a copy of the grid and clearing its lines the
+ * way the game does
+ */
+class PlacementPreviewTest {
+
+  private static final int COLS = 5;
+  private static final int ROWS = 5;
+
+  private static Grid copy(Grid grid) {
+    var copy = new Grid(grid.getCols(), grid.getRows());
+    for (int x = 0; x < grid.getCols(); x++) {
+      for (int y = 0; y < grid.getRows(); y++) {
+        copy.set(x, y, grid.get(x, y));
+      }
+    }
+    return copy;
+  }
+
+  @Test
+  void matchesPlayingThePiece() {
+    var random = new Random(49);
+    var grid = new Grid(COLS, ROWS);
+    var preview = new PlacementPreview(grid);
+    var fitted = 0;
+    var clearing = 0;
+    for (int board = 0; board < 20000; board++) {
+      //mostly full boards, so that lines are often cleared
+      var density = random.nextDouble();
+      for (int x = 0; x < COLS; x++) {
+        for (int y = 0; y < ROWS; y++) {
+          grid.set(x, y, random.nextDouble() < density ? 1 + random.nextInt(GamePiece.PIECES) : 0);
+        }
+      }
+      var piece = GamePiece.createPiece(random.nextInt(GamePiece.PIECES), random.nextInt(4));
+      var x = random.nextInt(COLS + 2) - 1;
+      var y = random.nextInt(ROWS + 2) - 1;
+      var multiplier = 1 + random.nextInt(5);
+      var before = copy(grid);
+
+      var played = copy(grid);
+      var fits = played.playPiece(piece, x, y);
+      assertEquals(fits, preview.evaluate(piece, x, y, multiplier));
+      assertEquals(fits, preview.fits());
+      //the grid itself is never changed
+      for (int i = 0; i < COLS; i++) {
+        for (int j = 0; j < ROWS; j++) {
+          assertEquals(before.get(i, j), grid.get(i, j));
+        }
+      }
+      if (!fits) {
+        assertEquals(0, preview.getScore());
+        for (int i = 0; i < COLS; i++) {
+          for (int j = 0; j < ROWS; j++) {
+            assertFalse(preview.isPlaced(i, j));
+            assertFalse(preview.isCleared(i, j));
+          }
+        }
+        continue;
+      }
+      fitted++;
+
+      //clear full columns and rows, as Game.afterPiece does
+      var lines = 0;
+      var cleared = new boolean[COLS][ROWS];
+      for (int i = 0; i < COLS; i++) {
+        var full = true;
+        for (int j = 0; j < ROWS; j++) {
+          full &= played.get(i, j) != 0;
+        }
+        if (full) {
+          lines++;
+          for (int j = 0; j < ROWS; j++) {
+            cleared[i][j] = true;
+          }
+        }
+      }
+      for (int j = 0; j < ROWS; j++) {
+        var full = true;
+        for (int i = 0; i < COLS; i++) {
+          full &= played.get(i, j) != 0;
+        }
+        if (full) {
+          lines++;
+          for (int i = 0; i < COLS; i++) {
+            cleared[i][j] = true;
+          }
+        }
+      }
+      var blocks = 0;
+      for (int i = 0; i < COLS; i++) {
+        for (int j = 0; j < ROWS; j++) {
+          assertEquals(before.get(i, j) == 0 && played.get(i, j) != 0, preview.isPlaced(i, j));
+          assertEquals(cleared[i][j], preview.isCleared(i, j));
+          if (cleared[i][j]) {
+            blocks++;
+          }
+        }
+      }
+      assertEquals(lines, preview.getLines());
+      assertEquals(blocks, preview.getBlocks());
+      assertEquals(Game.score(lines, blocks, multiplier), preview.getScore());
+      if (lines > 0) {
+        clearing++;
+      }
+    }
+    assertTrue(fitted > 1000);
+    assertTrue(clearing > 100);
+  }
+
+  @Test
+  void noPieceDoesNotFit() {
+    var preview = new PlacementPreview(new Grid(COLS, ROWS));
+    assertFalse(preview.evaluate(null, 2, 2, 1));
+    assertEquals(0, preview.getScore());
+  }
+
+}
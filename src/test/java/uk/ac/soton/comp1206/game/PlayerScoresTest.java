@@ -0,0 +1,114 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import javafx.collections.ListChangeListener;
+import org.javatuples.Triplet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that merging scores keeps the list sorted, and that the change events describe the merge
+ */
+class PlayerScoresTest {
+
+  private static List<Triplet<String, Integer, String>> sorted(
+      List<Triplet<String, Integer, String>> scores) {
+    var expected = new ArrayList<>(scores);
+    expected.sort(Comparator.comparing(Triplet<String, Integer, String>::getValue1,
+        Comparator.reverseOrder()).thenComparing(Triplet::getValue0));
+    return expected;
+  }
+
+  /**
+   * Keep a copy of a list up to date by replaying its change events
+   * @param scores the list to copy
+   * @return the copy
+   */
+  private static List<Triplet<String, Integer, String>> mirror(PlayerScores scores) {
+    var mirror = new ArrayList<Triplet<String, Integer, String>>();
+    scores.addListener((ListChangeListener<Triplet<String, Integer, String>>) change -> {
+      while (change.next()) {
+        var from = change.getFrom();
+        for (int i = 0; i < change.getRemovedSize(); i++) {
+          mirror.remove(from);
+        }
+        mirror.addAll(from, change.getAddedSubList());
+      }
+    });
+    return mirror;
+  }
+
+  @Test
+  void mergeMatchesSortedList() {
+    var random = new Random(31);
+    var scores = new PlayerScores();
+    var mirror = mirror(scores);
+    var events = new int[1];
+    scores.addListener((ListChangeListener<Triplet<String, Integer, String>>) change -> events[0]++);
+
+    var latest = new ArrayList<Triplet<String, Integer, String>>();
+    for (int round = 0; round < 2000; round++) {
+      //players join, leave, score and lose lives between rounds
+      var next = new ArrayList<Triplet<String, Integer, String>>();
+      for (Triplet<String, Integer, String> score : latest) {
+        var roll = random.nextInt(10);
+        if (roll == 0) {
+          continue;
+        } else if (roll < 4) {
+          next.add(score.setAt1(score.getValue1() + random.nextInt(3) * 10));
+        } else if (roll == 4) {
+          next.add(score.setAt2(String.valueOf(random.nextInt(4))));
+        } else {
+          next.add(score);
+        }
+      }
+      if (next.size() < 12 && random.nextInt(3) == 0) {
+        next.add(new Triplet<>("player" + random.nextInt(20), random.nextInt(5) * 10, "3"));
+      }
+      //one score per player, as the server sends
+      var names = new HashSet<String>();
+      next.removeIf(score -> !names.add(score.getValue0()));
+      latest = next;
+
+      var before = events[0];
+      scores.merge(latest);
+      assertEquals(sorted(latest), new ArrayList<>(scores));
+      assertEquals(new ArrayList<>(scores), mirror);
+      assertTrue(events[0] - before <= 1);
+    }
+  }
+
+  @Test
+  void oneEventPerMerge() {
+    var scores = new PlayerScores();
+    var events = new int[1];
+    scores.addListener((ListChangeListener<Triplet<String, Integer, String>>) change -> events[0]++);
+    scores.merge(List.of(new Triplet<>("a", 10, "3"), new Triplet<>("b", 20, "3"),
+        new Triplet<>("c", 30, "3")));
+    assertEquals(1, events[0]);
+    scores.merge(List.of(new Triplet<>("a", 40, "3"), new Triplet<>("c", 30, "2")));
+    assertEquals(2, events[0]);
+    assertEquals(List.of(new Triplet<>("a", 40, "3"), new Triplet<>("c", 30, "2")),
+        new ArrayList<>(scores));
+  }
+
+  @Test
+  void unchangedScoresFireNothing() {
+    var scores = new PlayerScores();
+    var latest = List.of(new Triplet<>("a", 10, "3"), new Triplet<>("b", 10, "3"));
+    scores.merge(latest);
+    var events = new int[1];
+    scores.addListener((ListChangeListener<Triplet<String, Integer, String>>) change -> events[0]++);
+    scores.merge(latest);
+    assertEquals(0, events[0]);
+    assertEquals(List.of(new Triplet<>("a", 10, "3"), new Triplet<>("b", 10, "3")),
+        new ArrayList<>(scores));
+  }
+
+}
@@ -0,0 +1,47 @@
+package uk.ac.soton.comp1206.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that binary boards are applied as their text form, and that malformed boards are rejected
+ */
+class BinaryProtocolTest {
+
+  @Test
+  void deltaUpdatesTheBoard() {
+    var board = new int[25];
+    var full = BinaryProtocol.encode("BOARD 1 2 3 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 15 ");
+    board = BinaryProtocol.applyBoard(full, board);
+    board = BinaryProtocol.applyBoard(BinaryProtocol.encode("BOARD DELTA 1:7 24:0"), board);
+    var expected = new int[25];
+    expected[0] = 1;
+    expected[1] = 7;
+    expected[2] = 3;
+    assertArrayEquals(expected, board);
+  }
+
+  @Test
+  void deltaOutsideTheBoardIsIgnored() {
+    var board = new int[25];
+    //index 4294967295, which reads as -1
+    var negative = new byte[] {0x02, 0x01, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F,
+        0x05};
+    assertArrayEquals(new int[25], BinaryProtocol.applyBoard(negative, board));
+    var beyond = new byte[] {0x02, 0x01, 0x19, 0x05};
+    assertArrayEquals(new int[25], BinaryProtocol.applyBoard(beyond, board));
+  }
+
+  @Test
+  void malformedBoardIsRejected() {
+    //a board claiming 2147483647 cells
+    var huge = new byte[] {0x01, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0x11};
+    assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.applyBoard(huge, new int[25]));
+    var truncated = new byte[] {0x02, 0x02, 0x01, 0x05};
+    assertThrows(IllegalArgumentException.class,
+        () -> BinaryProtocol.applyBoard(truncated, new int[25]));
+  }
+
+}
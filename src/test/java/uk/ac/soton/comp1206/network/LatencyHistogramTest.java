@@ -0,0 +1,58 @@
+package uk.ac.soton.comp1206.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the latency histogram's percentiles against the exact values of a sorted list
+ */
+class LatencyHistogramTest {
+
+  @Test
+  void percentilesAreWithinBucketError() {
+    var random = new Random(29);
+    var histogram = new LatencyHistogram();
+    var values = new long[20000];
+    for (int i = 0; i < values.length; i++) {
+      //spread over several orders of magnitude, from microseconds to seconds
+      values[i] = (long) Math.exp(random.nextDouble() * Math.log(5_000_000));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9, 100}) {
+      var exact = values[(int) Math.ceil(values.length * percentile / 100.0) - 1];
+      var estimate = histogram.getPercentile(percentile);
+      assertTrue(estimate >= exact, "p" + percentile + " below " + exact + ": " + estimate);
+      assertTrue(estimate <= exact + exact / 16 + 1,
+          "p" + percentile + " too far above " + exact + ": " + estimate);
+    }
+    assertEquals(values[values.length - 1], histogram.getMax());
+    assertEquals(values.length, histogram.getCount());
+  }
+
+  @Test
+  void smallValuesAreExact() {
+    var histogram = new LatencyHistogram();
+    for (long value = 0; value < 64; value++) {
+      histogram.record(value);
+    }
+    assertEquals(31, histogram.getPercentile(50));
+    assertEquals(63, histogram.getPercentile(100));
+  }
+
+  @Test
+  void resetClearsEverything() {
+    var histogram = new LatencyHistogram();
+    histogram.record(1234);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(99));
+    assertEquals(0, histogram.getMax());
+  }
+
+}
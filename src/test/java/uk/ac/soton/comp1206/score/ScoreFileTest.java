@@ -0,0 +1,110 @@
+package uk.ac.soton.comp1206.score;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that score files read back exactly what was written
+ */
+class ScoreFileTest {
+
+  @TempDir
+  Path directory;
+
+  private static void assertSameEntry(ScoreEntry expected, ScoreEntry actual) {
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(expected.getScore(), actual.getScore());
+    assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    assertEquals(expected.getMode(), actual.getMode());
+  }
+
+  @Test
+  void roundTrip() throws IOException {
+    var random = new Random(35);
+    var names = List.of("alice", "bob", "Zoë", "名前", "a name with spaces", "");
+    var entries = new ArrayList<ScoreEntry>();
+    //enough records to fill the write buffer more than once
+    for (int i = 0; i < 5000; i++) {
+      entries.add(new ScoreEntry(names.get(random.nextInt(names.size())), random.nextInt(10000),
+          random.nextLong(), random.nextInt(2)));
+    }
+    entries.sort((x, y) -> Integer.compare(y.getScore(), x.getScore()));
+    var file = directory.resolve("scores.1.dat");
+    ScoreFile.write(file, 1234, entries.iterator());
+
+    var read = new ScoreFile(file);
+    assertEquals(entries.size(), read.size());
+    assertEquals(1234, read.getSequence());
+    for (int i = 0; i < entries.size(); i++) {
+      assertSameEntry(entries.get(i), read.get(i));
+      assertEquals(entries.get(i).getScore(), read.getScore(i));
+    }
+    var index = 0;
+    for (ScoreEntry entry : read) {
+      assertSameEntry(entries.get(index++), entry);
+    }
+    assertEquals(entries.size(), index);
+    for (int score = -1; score <= 10001; score += 7) {
+      var atLeast = 0;
+      for (ScoreEntry entry : entries) {
+        if (entry.getScore() >= score) {
+          atLeast++;
+        }
+      }
+      assertEquals(atLeast, read.countAtLeast(score));
+    }
+  }
+
+  @Test
+  void emptyFile() throws IOException {
+    var file = directory.resolve("scores.1.dat");
+    ScoreFile.write(file, 0, List.<ScoreEntry>of().iterator());
+    var read = new ScoreFile(file);
+    assertEquals(0, read.size());
+    assertEquals(0, read.countAtLeast(0));
+    assertThrows(IndexOutOfBoundsException.class, () -> read.get(0));
+  }
+
+  @Test
+  void damagedFileIsRejected() throws IOException {
+    var file = directory.resolve("scores.1.dat");
+    ScoreFile.write(file, 7, List.of(new ScoreEntry("alice", 50, 1000, ScoreEntry.CHALLENGE),
+        new ScoreEntry("bob", 40, 1001, ScoreEntry.CHALLENGE)).iterator());
+    var bytes = Files.readAllBytes(file);
+
+    var truncated = directory.resolve("truncated.dat");
+    Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+    assertThrows(IOException.class, () -> new ScoreFile(truncated));
+
+    var text = directory.resolve("text.dat");
+    Files.writeString(text, "alice:50\nbob:40\n", StandardCharsets.UTF_8);
+    assertThrows(IOException.class, () -> new ScoreFile(text));
+  }
+
+  @Test
+  void importsLegacyText() throws IOException {
+    var text = directory.resolve("scores.txt");
+    Files.writeString(text, "bob:40\nnot a score\nalice:50\ncarol:x\n",
+        StandardCharsets.UTF_8);
+    var file = directory.resolve("scores.1.dat");
+    ScoreFile.importText(text, file);
+
+    var read = new ScoreFile(file);
+    assertEquals(0, read.getSequence());
+    assertEquals(2, read.size());
+    assertSameEntry(new ScoreEntry("alice", 50, 0, ScoreEntry.CHALLENGE), read.get(0));
+    assertSameEntry(new ScoreEntry("bob", 40, 0, ScoreEntry.CHALLENGE), read.get(1));
+  }
+
+}
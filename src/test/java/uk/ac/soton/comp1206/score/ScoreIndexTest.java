@@ -0,0 +1,98 @@
+package uk.ac.soton.comp1206.score;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the score index against a sorted list of the same scores
+ */
+class ScoreIndexTest {
+
+  /**
+   * Add a score to a list kept highest first, after any equal scores, the slow way
+   * @param sorted the list
+   * @param entry the score
+   */
+  private static void insert(List<ScoreEntry> sorted, ScoreEntry entry) {
+    var index = 0;
+    while (index < sorted.size() && sorted.get(index).getScore() >= entry.getScore()) {
+      index++;
+    }
+    sorted.add(index, entry);
+  }
+
+  @Test
+  void matchesSortedList() {
+    var random = new Random(34);
+    var index = new ScoreIndex();
+    var sorted = new ArrayList<ScoreEntry>();
+    for (int i = 0; i < 3000; i++) {
+      //a narrow range of scores, so there are plenty of ties
+      var entry = new ScoreEntry("player" + i, random.nextInt(200), i, ScoreEntry.CHALLENGE);
+      index.add(entry);
+      insert(sorted, entry);
+
+      if (i % 100 != 0) {
+        continue;
+      }
+      assertEquals(sorted.size(), index.size());
+      for (int j = 0; j < sorted.size(); j++) {
+        assertSame(sorted.get(j), index.get(j));
+      }
+      for (int score = -1; score <= 200; score++) {
+        var atLeast = 0;
+        while (atLeast < sorted.size() && sorted.get(atLeast).getScore() >= score) {
+          atLeast++;
+        }
+        assertEquals(atLeast, index.countAtLeast(score));
+        assertEquals(atLeast + 1, index.rankOf(score));
+        assertEquals(100.0 * (sorted.size() - atLeast) / sorted.size(), index.percentile(score),
+            1e-9);
+      }
+    }
+    var from = random.nextInt(sorted.size());
+    assertEquals(sorted.subList(from, Math.min(from + 50, sorted.size())), index.range(from, 50));
+    assertEquals(sorted.subList(0, 10), index.top(10));
+    assertEquals(sorted, new ArrayList<>(index.range(0, Integer.MAX_VALUE)));
+  }
+
+  @Test
+  void iteratesFromAnyPosition() {
+    var random = new Random(340);
+    var index = new ScoreIndex();
+    var sorted = new ArrayList<ScoreEntry>();
+    for (int i = 0; i < 500; i++) {
+      var entry = new ScoreEntry("player" + i, random.nextInt(50), i, ScoreEntry.CHALLENGE);
+      index.add(entry);
+      insert(sorted, entry);
+    }
+    for (int from = 0; from <= sorted.size(); from += 7) {
+      var iterator = index.iterator(from);
+      for (int j = from; j < sorted.size(); j++) {
+        assertSame(sorted.get(j), iterator.next());
+      }
+      assertFalse(iterator.hasNext());
+    }
+    var entries = new ArrayList<ScoreEntry>();
+    index.forEach(entries::add);
+    assertEquals(sorted, entries);
+  }
+
+  @Test
+  void emptyIndex() {
+    var index = new ScoreIndex();
+    assertEquals(0, index.size());
+    assertEquals(1, index.rankOf(100));
+    assertEquals(100, index.percentile(100));
+    assertEquals(List.of(), index.top(10));
+    assertThrows(IndexOutOfBoundsException.class, () -> index.get(0));
+  }
+
+}
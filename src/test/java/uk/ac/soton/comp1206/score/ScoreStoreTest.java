@@ -0,0 +1,178 @@
+package uk.ac.soton.comp1206.score;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.soton.comp1206.score.ScoreWriter.Durability;
+
+/**
+ * Tests that the score store survives being reopened and crashes part way through a write
+ */
+class ScoreStoreTest {
+
+  @TempDir
+  Path directory;
+
+  private static List<Integer> values(List<Pair<String, Integer>> scores) {
+    var values = new ArrayList<Integer>();
+    for (Pair<String, Integer> score : scores) {
+      values.add(score.getValue());
+    }
+    return values;
+  }
+
+  /**
+   * Check the store's ranks and percentiles against a sorted list of its scores
+   * @param store the store
+   * @param expected every score in the store
+   */
+  private static void assertRanks(ScoreStore store, List<Integer> expected) {
+    var sorted = new ArrayList<>(expected);
+    sorted.sort(Comparator.reverseOrder());
+    assertEquals(sorted, values(store.getTopScores(Integer.MAX_VALUE)));
+    for (int score = -1; score <= 1001; score++) {
+      var atLeast = 0;
+      for (int value : sorted) {
+        if (value >= score) {
+          atLeast++;
+        }
+      }
+      assertEquals(atLeast + 1, store.getRank(score));
+      assertEquals(100.0 * (sorted.size() - atLeast) / sorted.size(), store.getPercentile(score),
+          1e-9);
+    }
+  }
+
+  @Test
+  void scoresSurviveReopening() {
+    var random = new Random(33);
+    var expected = new ArrayList<Integer>();
+    var store = new ScoreStore(directory, Durability.SHUTDOWN);
+    //the default scores
+    values(store.getTopScores(Integer.MAX_VALUE)).forEach(expected::add);
+    for (int i = 0; i < 250; i++) {
+      var score = random.nextInt(1000);
+      store.addScore("player" + i, score);
+      expected.add(score);
+    }
+    assertRanks(store, expected);
+    store.close();
+
+    //scores from the snapshot and scores added since are ranked together
+    store = new ScoreStore(directory, Durability.SHUTDOWN);
+    assertRanks(store, expected);
+    for (int i = 0; i < 50; i++) {
+      var score = random.nextInt(1000);
+      store.addScore("later" + i, score);
+      expected.add(score);
+    }
+    assertRanks(store, expected);
+    assertEquals(50, values(store.getScores(expected.size() - 50, 100)).size());
+    store.close();
+  }
+
+  @Test
+  void partlyWrittenScoreIsDiscarded() throws IOException {
+    var log = directory.resolve(ScoreStore.LOG_FILE);
+    var whole = "1 1000 0 alice:50\n2 1001 0 bob:70\n";
+    Files.writeString(log, whole + "3 1002 0 carol:9", StandardCharsets.UTF_8);
+
+    var store = new ScoreStore(directory, Durability.SHUTDOWN);
+    assertEquals(List.of(new Pair<>("bob", 70), new Pair<>("alice", 50)), store.getTopScores(10));
+    assertEquals(whole, Files.readString(log, StandardCharsets.UTF_8));
+
+    //new scores carry on from the last whole entry
+    store.addScore("dave", 60);
+    store.close();
+    store = new ScoreStore(directory, Durability.SHUTDOWN);
+    assertEquals(List.of(new Pair<>("bob", 70), new Pair<>("dave", 60), new Pair<>("alice", 50)),
+        store.getTopScores(10));
+    store.close();
+  }
+
+  @Test
+  void logEntriesInTheSnapshotAreNotCountedTwice() throws IOException {
+    //a crash after writing the snapshot but before emptying the log
+    var entries = List.of(new ScoreEntry("bob", 70, 1001, ScoreEntry.CHALLENGE),
+        new ScoreEntry("alice", 50, 1000, ScoreEntry.CHALLENGE));
+    ScoreFile.write(directory.resolve("scores.1.dat"), 2, entries.iterator());
+    Files.writeString(directory.resolve(ScoreStore.LOG_FILE),
+        "1 1000 0 alice:50\n2 1001 0 bob:70\n3 1002 0 carol:90\n", StandardCharsets.UTF_8);
+
+    var store = new ScoreStore(directory, Durability.SHUTDOWN);
+    assertEquals(3, store.size());
+    assertEquals(List.of(new Pair<>("carol", 90), new Pair<>("bob", 70), new Pair<>("alice", 50)),
+        store.getTopScores(10));
+    assertEquals(90, store.getHighScore());
+    store.close();
+  }
+
+  /**
+   * Get the names of the snapshots in the score directory
+   * @return the file names, sorted
+   * @throws IOException if the directory cannot be listed
+   */
+  private List<String> snapshotNames() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString())
+          .filter(name -> name.endsWith(".dat")).sorted().toList();
+    }
+  }
+
+  @Test
+  void compactionWritesANewGeneration() throws IOException {
+    Files.writeString(directory.resolve(ScoreStore.LOG_FILE), "1 1000 0 alice:50\n",
+        StandardCharsets.UTF_8);
+    var store = new ScoreStore(directory, Durability.SHUTDOWN);
+    store.close();
+    assertEquals(List.of("scores.1.dat"), snapshotNames());
+    assertEquals("", Files.readString(directory.resolve(ScoreStore.LOG_FILE)));
+
+    //each compaction writes a new file rather than renaming over the mapped one
+    store = new ScoreStore(directory, Durability.SHUTDOWN);
+    store.addScore("bob", 70);
+    store.close();
+    assertEquals(List.of("scores.2.dat"), snapshotNames());
+
+    store = new ScoreStore(directory, Durability.SHUTDOWN);
+    assertEquals(List.of(new Pair<>("bob", 70), new Pair<>("alice", 50)), store.getTopScores(10));
+    store.close();
+  }
+
+  @Test
+  void damagedSnapshotFallsBackToAnOlderOne() throws IOException {
+    ScoreFile.write(directory.resolve("scores.3.dat"), 1,
+        List.of(new ScoreEntry("alice", 50, 1000, ScoreEntry.CHALLENGE)).iterator());
+    Files.writeString(directory.resolve("scores.4.dat"), "damaged", StandardCharsets.UTF_8);
+
+    var store = new ScoreStore(directory, Durability.SHUTDOWN);
+    assertEquals(List.of(new Pair<>("alice", 50)), store.getTopScores(10));
+    assertTrue(Files.exists(directory.resolve("scores.4.dat.bad")));
+    store.addScore("bob", 70);
+    store.close();
+    //the next generation is above the damaged one
+    assertEquals(List.of("scores.5.dat"), snapshotNames());
+  }
+
+  @Test
+  void legacyScoresAreImported() throws IOException {
+    Files.writeString(directory.resolve(ScoreStore.LEGACY_FILE), "bob:40\nalice:50\n",
+        StandardCharsets.UTF_8);
+    var store = new ScoreStore(directory, Durability.SHUTDOWN);
+    assertEquals(List.of(new Pair<>("alice", 50), new Pair<>("bob", 40)), store.getTopScores(10));
+    store.close();
+    assertEquals(List.of("scores.1.dat"), snapshotNames());
+  }
+
+}
@@ -0,0 +1,196 @@
+package uk.ac.soton.comp1206.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that games written to a telemetry log read back column by column, and that the analytics
+ * aggregate every whole game whatever the window size
+ */
+class TelemetryLogTest {
+
+  @TempDir
+  Path directory;
+
+  /**
+   * A game as it was played: one row of values per move, and its final score and level
+   */
+  private record Game(int[][] moves, int finalScore, int finalLevel) {
+  }
+
+  /**
+   * Play a game with random moves, recording its telemetry
+   * @param random the random moves
+   * @param moves the number of moves
+   * @param finalScore the final score, which tells the games apart
+   * @param telemetry the telemetry to record into
+   * @param clock the clock the telemetry is timed with, in nanoseconds
+   * @return the values each move should be recorded with
+   */
+  private static Game play(Random random, int moves, int finalScore, GameTelemetry telemetry,
+      long[] clock) {
+    var rows = new ArrayList<int[]>();
+    while (rows.size() < moves) {
+      var piece = random.nextInt(TelemetryAnalytics.PIECES);
+      var turns = random.nextInt(6);
+      var think = random.nextInt(20000);
+      var level = random.nextInt(TelemetryAnalytics.MAX_LEVEL + 5);
+      var delay = 2500 + random.nextInt(10000);
+      var score = random.nextInt(100000);
+      telemetry.startMove();
+      telemetry.rotated(turns);
+      clock[0] += think * 1000000L;
+      var roll = random.nextInt(4);
+      if (roll == 0) {
+        telemetry.expired(piece, level, delay, score);
+        rows.add(new int[] {piece, -1, -1, turns, 0, 0, level, think, delay, score});
+      } else {
+        var x = random.nextInt(5);
+        var y = random.nextInt(5);
+        var linesCleared = random.nextInt(4);
+        var blocksCleared = linesCleared * 5;
+        telemetry.placed(piece, x, y, level, delay);
+        if (roll == 1 && rows.size() + 2 <= moves) {
+          //the timer runs out between placing the piece and clearing its lines
+          var next = random.nextInt(TelemetryAnalytics.PIECES);
+          telemetry.expired(next, level, delay, score);
+          rows.add(new int[] {next, -1, -1, turns, 0, 0, level, think, delay, score});
+        }
+        telemetry.cleared(linesCleared, blocksCleared, score);
+        rows.add(new int[] {piece, x, y, turns, linesCleared, blocksCleared, level, think, delay,
+            score});
+      }
+    }
+    return new Game(rows.toArray(new int[0][]), finalScore, random.nextInt(12));
+  }
+
+  /**
+   * Read every value of every move in a game
+   * @param game the game
+   * @return one row of values per move
+   */
+  private static int[][] read(GameRecord game) {
+    var moves = new int[game.getMoves()][];
+    for (int move = 0; move < moves.length; move++) {
+      moves[move] = new int[] {game.getPiece(move), game.getX(move), game.getY(move),
+          game.getRotations(move), game.getLines(move), game.getBlocks(move), game.getLevel(move),
+          game.getThinkTime(move), game.getDelay(move), game.getScore(move)};
+    }
+    return moves;
+  }
+
+  /**
+   * Write games to a telemetry log
+   * @param file the log file
+   * @param sizes the number of moves in each game
+   * @return the games written
+   */
+  private static List<Game> write(Path file, int... sizes) {
+    var random = new Random(38);
+    var log = new TelemetryLog(file);
+    var games = new ArrayList<Game>();
+    for (int i = 0; i < sizes.length; i++) {
+      var clock = new long[1];
+      var telemetry = new GameTelemetry(() -> clock[0]);
+      var game = play(random, sizes[i], i * 1000, telemetry, clock);
+      assertEquals(sizes[i], telemetry.getMoves());
+      log.record(telemetry, game.finalScore(), game.finalLevel());
+      games.add(game);
+    }
+    log.close();
+    return games;
+  }
+
+  @Test
+  void gamesReadBackColumnByColumn() throws IOException {
+    var file = directory.resolve(TelemetryLog.FILE);
+    var sizes = new int[60];
+    var random = new Random(380);
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = 1 + random.nextInt(8);
+    }
+    //a game larger than the window
+    sizes[25] = 40;
+    var started = System.currentTimeMillis();
+    var games = write(file, sizes);
+    var ended = System.currentTimeMillis();
+
+    //tear the last block, as a crash part way through a write would
+    var torn = new GameTelemetry();
+    torn.expired(1, 1, 1000, 0);
+    var block = torn.toBlock(0, 0, 0);
+    try (var channel = Files.newByteChannel(file, StandardOpenOption.APPEND)) {
+      channel.write(block.limit(block.limit() - 3));
+    }
+
+    for (int window : new int[] {256, 1000, 1 << 20}) {
+      var analytics = new TelemetryAnalytics(file, window);
+      var read = analytics.aggregate(ArrayList<Game>::new, (list, game) -> {
+        assertTrue(game.getEndedAt() >= started && game.getEndedAt() <= ended);
+        list.add(new Game(read(game), game.getFinalScore(), game.getFinalLevel()));
+      }, List::addAll);
+      read.sort(Comparator.comparingInt(Game::finalScore));
+      assertEquals(games.size(), read.size());
+      for (int i = 0; i < games.size(); i++) {
+        assertEquals(games.get(i).finalScore(), read.get(i).finalScore());
+        assertEquals(games.get(i).finalLevel(), read.get(i).finalLevel());
+        assertArrayEquals(games.get(i).moves(), read.get(i).moves());
+      }
+    }
+  }
+
+  @Test
+  void aggregatesMatchTheGamesPlayed() throws IOException {
+    var file = directory.resolve(TelemetryLog.FILE);
+    var sizes = new int[200];
+    Arrays.fill(sizes, 6);
+    sizes[100] = 50;
+    var games = write(file, sizes);
+
+    var sums = new long[TelemetryAnalytics.MAX_LEVEL + 1];
+    var counts = new long[TelemetryAnalytics.MAX_LEVEL + 1];
+    var heatmap = new long[5][5];
+    var placed = new long[TelemetryAnalytics.PIECES];
+    var played = new long[TelemetryAnalytics.PIECES];
+    for (Game game : games) {
+      sums[game.finalLevel()] += game.finalScore();
+      counts[game.finalLevel()]++;
+      for (int[] move : game.moves()) {
+        played[move[0]]++;
+        if (move[1] >= 0) {
+          placed[move[0]]++;
+          heatmap[move[1]][move[2]]++;
+        }
+      }
+    }
+
+    for (int window : new int[] {300, 1 << 20}) {
+      var analytics = new TelemetryAnalytics(file, window);
+      var averages = analytics.averageScoreByLevel();
+      for (int level = 0; level <= TelemetryAnalytics.MAX_LEVEL; level++) {
+        assertEquals(counts[level] == 0 ? Double.NaN : (double) sums[level] / counts[level],
+            averages[level], 1e-9);
+      }
+      assertArrayEquals(heatmap, analytics.placementHeatmap(5, 5));
+      var survival = analytics.pieceSurvival();
+      for (int piece = 0; piece < TelemetryAnalytics.PIECES; piece++) {
+        assertEquals(played[piece] == 0 ? Double.NaN : (double) placed[piece] / played[piece],
+            survival[piece], 1e-9);
+      }
+    }
+  }
+
+}